@@ -0,0 +1,77 @@
+package com.google;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * A class used to write synthetic catalogs in the videos.txt format.
+ *
+ * <p>Catalogs are generated from a fixed seed and cached in the temporary directory, so every
+ * benchmark run with the same size reads exactly the same file.
+ */
+final class CatalogGenerator {
+
+  private static final String[] WORDS = {
+      "amazing", "cats", "funny", "dogs", "life", "at", "google", "video", "about", "nothing",
+      "another", "cat", "best", "of", "cooking", "travel", "music", "live", "tutorial", "java",
+      "review", "unboxing", "the", "new", "old", "top", "ten", "moments", "daily", "vlog",
+  };
+  private static final int TAG_COUNT = 1000;
+
+  private CatalogGenerator() {
+  }
+
+  /**
+   * Returns a catalog with the given number of videos, generating it on first use.
+   */
+  static Path catalog(int videos) throws IOException {
+    Path path = Path.of(System.getProperty("java.io.tmpdir"), "videos-" + videos + ".txt");
+    if (!Files.exists(path)) {
+      Path partial = Files.createTempFile(path.getParent(), "videos-", ".part");
+      try (BufferedWriter writer = Files.newBufferedWriter(partial)) {
+        write(writer, videos);
+      }
+      Files.move(partial, path);
+    }
+    return path;
+  }
+
+  /** Returns the id of the n-th generated video. */
+  static String videoId(int n) {
+    return "video_" + n + "_id";
+  }
+
+  /** Returns one of the generated tags. */
+  static String tag(int n) {
+    return "#tag" + (n % TAG_COUNT);
+  }
+
+  private static void write(BufferedWriter writer, int videos) throws IOException {
+    Random random = new Random(42);
+    StringBuilder line = new StringBuilder();
+    for (int i = 0; i < videos; i++) {
+      line.setLength(0);
+      int words = 2 + random.nextInt(5);
+      for (int w = 0; w < words; w++) {
+        if (w > 0) {
+          line.append(' ');
+        }
+        String word = WORDS[random.nextInt(WORDS.length)];
+        line.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+      }
+      line.append(' ').append(i).append(" | ").append(videoId(i)).append(" | ");
+      int tags = random.nextInt(4);
+      for (int t = 0; t < tags; t++) {
+        if (t > 0) {
+          line.append(", ");
+        }
+        // Skew tags so a few of them are very common, like real catalogs.
+        line.append(tag((int) Math.abs(random.nextGaussian() * TAG_COUNT / 8)));
+      }
+      writer.append(line).append('\n');
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the queries and player commands against a loaded library.
+ *
+ * <p>Searches call the library directly, as {@link VideoPlayer#searchVideos} waits for the
+ * user to pick a result on stdin. Player output goes to a discarding sink.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryBenchmark {
+
+  // Size of the playlist that videos are added to and removed from.
+  private static final int PLAYLIST_SIZE = 10_000;
+
+  @Param({"10000", "1000000", "10000000"})
+  int videos;
+
+  @Param({"cooking", "cats 12"})
+  String searchTerm;
+
+  private VideoLibrary library;
+  private VideoPlayer player;
+  private int nextVideo;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    library = new VideoLibrary(CatalogGenerator.catalog(videos));
+    player = new VideoPlayer(library, new BufferedOutput(Writer.nullWriter()));
+    player.createPlaylist("benchmark");
+    for (int i = 0; i < playlistSize(); i++) {
+      player.addVideoToPlaylist("benchmark", CatalogGenerator.videoId(i));
+    }
+  }
+
+  @Benchmark
+  public List<Video> searchVideos() {
+    return library.findByTitle(searchTerm);
+  }
+
+  @Benchmark
+  public List<Video> searchVideosWithTag() {
+    return library.findByTag(CatalogGenerator.tag(nextVideo++));
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public void showAllVideos() {
+    player.showAllVideos();
+  }
+
+  @Benchmark
+  public void playRandomVideo() {
+    player.playRandomVideo();
+  }
+
+  /**
+   * Adds a video to a large playlist and removes it again.
+   */
+  @Benchmark
+  public void playlistAddAndRemove() {
+    int size = playlistSize();
+    int added = nextVideo++ % (videos - size) + size;
+    player.addVideoToPlaylist("benchmark", CatalogGenerator.videoId(added));
+    player.removeFromPlaylist("benchmark", CatalogGenerator.videoId(added));
+  }
+
+  private int playlistSize() {
+    return Math.min(PLAYLIST_SIZE, videos / 2);
+  }
+}
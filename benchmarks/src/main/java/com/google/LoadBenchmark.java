@@ -0,0 +1,89 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how long it takes to build a {@link VideoLibrary} from a catalog file.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoadBenchmark {
+
+  @Param({"10000", "1000000", "10000000"})
+  int videos;
+
+  private Path catalog;
+  private Path compiled;
+
+  @Setup
+  public void setUp() throws IOException {
+    catalog = CatalogGenerator.catalog(videos);
+    compiled = catalog.resolveSibling(catalog.getFileName() + ".bin");
+    if (!Files.exists(compiled)) {
+      CatalogCompiler.compile(catalog, compiled);
+    }
+  }
+
+  @Benchmark
+  public VideoLibrary loadSequential() {
+    return new VideoLibrary(catalog, 1);
+  }
+
+  @Benchmark
+  public VideoLibrary loadParallel() {
+    return new VideoLibrary(catalog, Runtime.getRuntime().availableProcessors());
+  }
+
+  @Benchmark
+  public VideoLibrary loadCompiled() {
+    return new VideoLibrary(compiled);
+  }
+
+  /**
+   * The Scanner and regex based load VideoLibrary used to do, kept as a baseline.
+   */
+  @Benchmark
+  public HashMap<String, Video> loadScannerBaseline() throws IOException {
+    HashMap<String, Video> videos = new HashMap<>();
+    try (Scanner scanner = new Scanner(catalog.toFile())) {
+      while (scanner.hasNextLine()) {
+        String[] split = scanner.nextLine().split("\\|");
+        String title = split[0].strip();
+        String id = split[1].strip();
+        List<String> tags;
+        if (split.length > 2) {
+          tags = Arrays.stream(split[2].split(",")).map(String::strip).collect(
+              Collectors.toList());
+        } else {
+          tags = new ArrayList<>();
+        }
+        videos.put(id, new Video(title, id, tags));
+      }
+    }
+    return videos;
+  }
+}
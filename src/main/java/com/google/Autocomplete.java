@@ -0,0 +1,545 @@
+package com.google;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class used to complete a prefix to the titles and tags of the catalog.
+ *
+ * <p>Completions are kept sorted, ignoring case and accents, in one shared char array, so every
+ * prefix is a contiguous range of them and the range is the node of an implicit trie. Nodes with
+ * many completions have their best ones precomputed, smaller nodes are ranked by scanning them.
+ * A lookup therefore takes two binary searches and a bounded amount of work, and allocates
+ * nothing. Chars are folded one by one with {@link TextAnalyzer#fold(char)}, which keeps the
+ * length of a prefix.
+ *
+ * <p>A tag ranks by the number of videos carrying it and a title by the number of videos with
+ * that title, completions which rank the same are sorted alphabetically.
+ *
+ * <p>The arrays are buffers, so the completions a compiled catalog holds, written by
+ * {@link #writeTo}, are read where they are mapped instead of being built on every open.
+ */
+class Autocomplete {
+
+  /** The most completions a lookup returns. */
+  static final int MAX_RESULTS = 10;
+  // Nodes with more completions than this have their best ones precomputed.
+  private static final int SCAN_MAX = 64;
+  private static final int[] NO_COMPLETIONS = new int[0];
+
+  // Completion i is chars[starts[i]] up to chars[starts[i + 1]].
+  private final CharBuffer chars;
+  private final IntBuffer starts;
+  private final IntBuffer weights;
+  // Open addressing from the range of a large node to its best completions in tops.
+  private final LongBuffer nodes;
+  private final IntBuffer slots;
+  private final IntBuffer tops;
+  // Only set on an overlay, see withChanges: the completions of the videos added to and
+  // removed from the catalog these completions were built for.
+  private final Autocomplete added;
+  private final Autocomplete removed;
+
+  /**
+   * Builds the completions for the titles of the videos and the tags in the index.
+   */
+  Autocomplete(List<Video> videos, TagIndex tags) {
+    // Every title and tag is copied once into one buffer and sorted by its number there, so no
+    // object is kept per title.
+    Map<String, int[]> postings = tags.getPostings();
+    Texts texts = new Texts(videos.size() + postings.size());
+    for (Video video : videos) {
+      texts.add(video.getTitle(), 1);
+    }
+    for (Map.Entry<String, int[]> tag : postings.entrySet()) {
+      texts.add(tag.getKey(), tag.getValue().length);
+    }
+    int[] order = new int[texts.count];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // Titles in title order are mostly sorted already, which the sort takes advantage of.
+    IntSort.sort(order, texts::compare);
+
+    // Completions differing only in case are merged, adding up their weights and keeping the
+    // first text of each group.
+    int[] kept = new int[order.length];
+    int[] merged = new int[order.length];
+    int count = 0;
+    int length = 0;
+    for (int text : order) {
+      if (count > 0 && texts.compare(kept[count - 1], text) == 0) {
+        merged[count - 1] += texts.weights[text];
+      } else {
+        kept[count] = text;
+        merged[count++] = texts.weights[text];
+        length += texts.length(text);
+      }
+    }
+    char[] chars = new char[length];
+    int[] starts = new int[count + 1];
+    for (int i = 0; i < count; i++) {
+      int text = kept[i];
+      System.arraycopy(texts.chars, texts.starts[text], chars, starts[i], texts.length(text));
+      starts[i + 1] = starts[i] + texts.length(text);
+    }
+    this.chars = CharBuffer.wrap(chars);
+    this.starts = IntBuffer.wrap(starts);
+    this.weights = IntBuffer.wrap(Arrays.copyOf(merged, count));
+
+    HashMap<Long, int[]> best = new HashMap<>();
+    precompute(0, count, 0, best);
+    int capacity = Integer.highestOneBit(Math.max(1, best.size()) * 2) * 2;
+    long[] nodes = new long[capacity];
+    Arrays.fill(nodes, -1);
+    this.nodes = LongBuffer.wrap(nodes);
+    this.slots = IntBuffer.allocate(capacity);
+    this.tops = IntBuffer.allocate(best.size() * MAX_RESULTS);
+    int slot = 0;
+    for (Map.Entry<Long, int[]> node : best.entrySet()) {
+      int at = find(node.getKey());
+      this.nodes.put(at, node.getKey());
+      slots.put(at, slot);
+      tops.put(slot, node.getValue());
+      slot += MAX_RESULTS;
+    }
+    this.added = null;
+    this.removed = null;
+  }
+
+  /**
+   * Reads completions written by {@link #writeTo} in place.
+   * @param completions The bytes written, big-endian
+   */
+  Autocomplete(ByteBuffer completions) {
+    int count = completions.getInt(0);
+    int length = completions.getInt(4);
+    int capacity = completions.getInt(8);
+    int topCount = completions.getInt(12);
+    int at = 16;
+    this.nodes = completions.slice(at, capacity * 8).asLongBuffer();
+    at += capacity * 8;
+    this.slots = completions.slice(at, capacity * 4).asIntBuffer();
+    at += capacity * 4;
+    this.tops = completions.slice(at, topCount * 4).asIntBuffer();
+    at += topCount * 4;
+    this.starts = completions.slice(at, (count + 1) * 4).asIntBuffer();
+    at += (count + 1) * 4;
+    this.weights = completions.slice(at, count * 4).asIntBuffer();
+    at += count * 4;
+    this.chars = completions.slice(at, length * 2).asCharBuffer();
+    this.added = null;
+    this.removed = null;
+  }
+
+  private Autocomplete(Autocomplete base, Autocomplete added, Autocomplete removed) {
+    this.chars = base.chars;
+    this.starts = base.starts;
+    this.weights = base.weights;
+    this.nodes = base.nodes;
+    this.slots = base.slots;
+    this.tops = base.tops;
+    this.added = added;
+    this.removed = removed;
+  }
+
+  /**
+   * Returns the number of bytes {@link #writeTo} writes.
+   */
+  long byteSize() {
+    return 16 + nodes.capacity() * 12L + tops.capacity() * 4L + starts.capacity() * 4L
+        + weights.capacity() * 4L + chars.capacity() * 2L;
+  }
+
+  /**
+   * Writes the completions, big-endian, to be read in place by
+   * {@link #Autocomplete(ByteBuffer)}. Only completions which are not an overlay can be
+   * written.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(weights.capacity());
+    out.writeInt(chars.capacity());
+    out.writeInt(nodes.capacity());
+    out.writeInt(tops.capacity());
+    for (int i = 0; i < nodes.capacity(); i++) {
+      out.writeLong(nodes.get(i));
+    }
+    writeInts(slots, out);
+    writeInts(tops, out);
+    writeInts(starts, out);
+    writeInts(weights, out);
+    for (int i = 0; i < chars.capacity(); i++) {
+      out.writeChar(chars.get(i));
+    }
+  }
+
+  private static void writeInts(IntBuffer values, DataOutput out) throws IOException {
+    for (int i = 0; i < values.capacity(); i++) {
+      out.writeInt(values.get(i));
+    }
+  }
+
+  /**
+   * Returns the completions of the catalog these were built for after some videos were added
+   * and others removed, sharing all arrays with them.
+   *
+   * <p>Only completions of the changed videos change weight, and there are few of them. A
+   * lookup ranks those on their own and takes the rest from the precomputed best completions,
+   * scanning the prefix only if one of those changed weight.
+   * @param added Completions of the added videos
+   * @param removed Completions of the removed videos, which must have been in the catalog
+   */
+  Autocomplete withChanges(Autocomplete added, Autocomplete removed) {
+    if (added.size() == 0 && removed.size() == 0) {
+      return this;
+    }
+    return new Autocomplete(this, added, removed);
+  }
+
+  /**
+   * Finds the best completions of the prefix, ignoring case and accents.
+   * @param results Receives the completions best first, at most {@link #MAX_RESULTS} of them
+   * @return The number of completions found
+   */
+  int complete(CharSequence prefix, int[] results) {
+    int limit = Math.min(results.length, MAX_RESULTS);
+    int from = bound(prefix, false);
+    int to = bound(prefix, true);
+    if (added != null) {
+      int addedFrom = added.bound(prefix, false);
+      int addedTo = added.bound(prefix, true);
+      int removedFrom = removed.bound(prefix, false);
+      int removedTo = removed.bound(prefix, true);
+      if (addedFrom < addedTo || removedFrom < removedTo) {
+        return completeChanged(from, to, addedFrom, addedTo, removedFrom, removedTo, results,
+            limit);
+      }
+    }
+    return completeUnchanged(from, to, results, limit);
+  }
+
+  private int completeUnchanged(int from, int to, int[] results, int limit) {
+    if (from == to || limit == 0) {
+      return 0;
+    }
+    if (to - from > SCAN_MAX) {
+      int slot = slots.get(find(range(from, to)));
+      int found = 0;
+      while (found < limit && tops.get(slot + found) >= 0) {
+        results[found] = tops.get(slot + found);
+        found++;
+      }
+      return found;
+    }
+    return best(from, to, NO_COMPLETIONS, results, limit);
+  }
+
+  /**
+   * Completes a prefix some added or removed completions start with. Completions only found in
+   * the added ones are numbered after the completions of this instance.
+   */
+  private int completeChanged(int from, int to, int addedFrom, int addedTo, int removedFrom,
+      int removedTo, int[] results, int limit) {
+    int most = addedTo - addedFrom + removedTo - removedFrom + limit;
+    // Candidates are ranked by weight, then alphabetically by their key: the position of an
+    // own completion, or the insertion point of an added one which sorts before the own
+    // completion at that point, in the upper half.
+    int[] ids = new int[most];
+    int[] candidateWeights = new int[most];
+    long[] keys = new long[most];
+    int[] changed = new int[most];
+    int count = 0;
+    int changes = 0;
+    for (int i = addedFrom; i < addedTo; i++) {
+      int own = search(added, i);
+      int removedAt = removed.search(added, i);
+      int weight =
+          added.weights.get(i) - (removedAt >= 0 ? removed.weights.get(removedAt) : 0);
+      if (own >= 0) {
+        changed[changes++] = own;
+        weight += weights.get(own);
+      }
+      if (weight > 0) {
+        ids[count] = own >= 0 ? own : size() + i;
+        keys[count] = own >= 0 ? key(own) : (long) (-own - 1) << 32 | i;
+        candidateWeights[count++] = weight;
+      }
+    }
+    for (int i = removedFrom; i < removedTo; i++) {
+      if (added.search(removed, i) >= 0) {
+        // Already ranked with the added completions.
+        continue;
+      }
+      int own = search(removed, i);
+      changed[changes++] = own;
+      int weight = weights.get(own) - removed.weights.get(i);
+      if (weight > 0) {
+        ids[count] = own;
+        keys[count] = key(own);
+        candidateWeights[count++] = weight;
+      }
+    }
+
+    // The best unchanged completions, which the precomputed ones are unless one of them
+    // changed weight.
+    Arrays.sort(changed, 0, changes);
+    changed = Arrays.copyOf(changed, changes);
+    int[] unchanged = new int[limit];
+    int found = completeUnchanged(from, to, unchanged, limit);
+    for (int i = 0; i < found; i++) {
+      if (Arrays.binarySearch(changed, unchanged[i]) >= 0) {
+        found = best(from, to, changed, unchanged, limit);
+        break;
+      }
+    }
+    for (int i = 0; i < found; i++) {
+      ids[count] = unchanged[i];
+      keys[count] = key(unchanged[i]);
+      candidateWeights[count++] = weights.get(unchanged[i]);
+    }
+
+    // Selection sort, there are only a few candidates.
+    int sorted = 0;
+    for (; sorted < limit && sorted < count; sorted++) {
+      int best = sorted;
+      for (int i = sorted + 1; i < count; i++) {
+        if (candidateWeights[i] > candidateWeights[best]
+            || candidateWeights[i] == candidateWeights[best] && keys[i] < keys[best]) {
+          best = i;
+        }
+      }
+      results[sorted] = ids[best];
+      ids[best] = ids[sorted];
+      candidateWeights[best] = candidateWeights[sorted];
+      keys[best] = keys[sorted];
+    }
+    return sorted;
+  }
+
+  /** Returns the text of a completion found by {@link #complete}. */
+  String label(int completion) {
+    if (completion >= size()) {
+      return added.label(completion - size());
+    }
+    return chars.subSequence(starts.get(completion), starts.get(completion + 1)).toString();
+  }
+
+  /** Returns the number of distinct completions. */
+  int size() {
+    return weights.capacity();
+  }
+
+  /**
+   * Stores the best completions of every large node below the one holding the range, whose
+   * completions all share their first depth characters.
+   */
+  private void precompute(int from, int to, int depth, HashMap<Long, int[]> best) {
+    if (to - from <= SCAN_MAX) {
+      return;
+    }
+    // A chain of nodes with a single child shares one range.
+    if (!best.containsKey(range(from, to))) {
+      int[] top = new int[MAX_RESULTS];
+      Arrays.fill(top, -1);
+      best(from, to, NO_COMPLETIONS, top, MAX_RESULTS);
+      best.put(range(from, to), top);
+    }
+    // Completions ending at this depth sort first, the rest are grouped by their next char.
+    int child = from;
+    while (child < to && starts.get(child + 1) - starts.get(child) == depth) {
+      child++;
+    }
+    while (child < to) {
+      char c = fold(chars.get(starts.get(child) + depth));
+      int end = child + 1;
+      while (end < to && fold(chars.get(starts.get(end) + depth)) == c) {
+        end++;
+      }
+      precompute(child, end, depth + 1, best);
+      child = end;
+    }
+  }
+
+  /**
+   * Puts the best completions in the range into the results, keeping them sorted by inserting
+   * each candidate in place.
+   * @param skipped Sorted completions to leave out
+   */
+  private int best(int from, int to, int[] skipped, int[] results, int limit) {
+    int found = 0;
+    for (int i = from; i < to; i++) {
+      if (found == limit && !better(i, results[found - 1])
+          || skipped.length > 0 && Arrays.binarySearch(skipped, i) >= 0) {
+        continue;
+      }
+      int at = found < limit ? found++ : found - 1;
+      while (at > 0 && better(i, results[at - 1])) {
+        results[at] = results[at - 1];
+        at--;
+      }
+      results[at] = i;
+    }
+    return found;
+  }
+
+  /**
+   * Returns the position of the completion of the other instance among these completions, or
+   * (-(insertion point) - 1) if there is no equal one.
+   */
+  private int search(Autocomplete other, int completion) {
+    int low = 0;
+    int high = weights.capacity() - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int order = compare(middle, other, completion);
+      if (order < 0) {
+        low = middle + 1;
+      } else if (order > 0) {
+        high = middle - 1;
+      } else {
+        return middle;
+      }
+    }
+    return -low - 1;
+  }
+
+  /**
+   * Compares a completion with one of the other instance like the completions are sorted.
+   */
+  private int compare(int completion, Autocomplete other, int otherCompletion) {
+    int start = starts.get(completion);
+    int length = starts.get(completion + 1) - start;
+    int otherStart = other.starts.get(otherCompletion);
+    int otherLength = other.starts.get(otherCompletion + 1) - otherStart;
+    for (int i = 0; i < Math.min(length, otherLength); i++) {
+      int order =
+          Character.compare(fold(chars.get(start + i)), fold(other.chars.get(otherStart + i)));
+      if (order != 0) {
+        return order;
+      }
+    }
+    return Integer.compare(length, otherLength);
+  }
+
+  private boolean better(int completion, int other) {
+    return weights.get(completion) > weights.get(other)
+        || weights.get(completion) == weights.get(other) && completion < other;
+  }
+
+  /**
+   * Returns the first completion which sorts after the prefix, or after everything starting
+   * with the prefix if past is true.
+   */
+  private int bound(CharSequence prefix, boolean past) {
+    int low = 0;
+    int high = weights.capacity();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      int order = compare(middle, prefix);
+      if (order < 0 || past && order == 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Compares a completion cut to the length of the prefix with the prefix, ignoring case and
+   * accents.
+   */
+  private int compare(int completion, CharSequence prefix) {
+    int start = starts.get(completion);
+    int length = starts.get(completion + 1) - start;
+    for (int i = 0; i < prefix.length(); i++) {
+      if (i == length) {
+        return -1;
+      }
+      int order = Character.compare(fold(chars.get(start + i)), fold(prefix.charAt(i)));
+      if (order != 0) {
+        return order;
+      }
+    }
+    return 0;
+  }
+
+  private int find(long range) {
+    int mask = nodes.capacity() - 1;
+    int at = BinaryCatalog.spread(Long.hashCode(range)) & mask;
+    while (nodes.get(at) != -1 && nodes.get(at) != range) {
+      at = (at + 1) & mask;
+    }
+    return at;
+  }
+
+  private static long key(int completion) {
+    return (long) completion << 32 | 0xffffffffL;
+  }
+
+  private static long range(int from, int to) {
+    return (long) from << 32 | to;
+  }
+
+  private static char fold(char c) {
+    return TextAnalyzer.fold(c);
+  }
+
+  /**
+   * A class used to collect the texts to complete in one char array while building.
+   */
+  private static class Texts {
+    private char[] chars;
+    private final int[] starts;
+    private final int[] weights;
+    private int count;
+
+    Texts(int capacity) {
+      this.chars = new char[Math.max(16, capacity * 16)];
+      this.starts = new int[capacity + 1];
+      this.weights = new int[capacity];
+    }
+
+    void add(String text, int weight) {
+      int end = starts[count] + text.length();
+      if (end > chars.length) {
+        chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+      }
+      text.getChars(0, text.length(), chars, starts[count]);
+      weights[count] = weight;
+      starts[++count] = end;
+    }
+
+    int length(int text) {
+      return starts[text + 1] - starts[text];
+    }
+
+    /**
+     * Compares two texts char by char, ignoring case and accents.
+     */
+    int compare(int a, int b) {
+      int aStart = starts[a];
+      int bStart = starts[b];
+      int length = Math.min(length(a), length(b));
+      for (int i = 0; i < length; i++) {
+        char x = chars[aStart + i];
+        char y = chars[bStart + i];
+        if (x != y) {
+          int order = Character.compare(fold(x), fold(y));
+          if (order != 0) {
+            return order;
+          }
+        }
+      }
+      return Integer.compare(length(a), length(b));
+    }
+  }
+}
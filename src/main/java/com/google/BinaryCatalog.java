@@ -0,0 +1,302 @@
+package com.google;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * A class used to read a catalog compiled by {@link CatalogCompiler}.
+ *
+ * <p>The file is memory-mapped and read in place, nothing is parsed. All numbers are big-endian
+ * ints and all offsets are relative to the start of the file, which limits it to 2GB:
+ * <ul>
+ *   <li>header: magic, version, then the counts and section offsets listed below
+ *   <li>records: one fixed-width record per video in title order, the position of a record
+ *       being the video's ordinal. A record holds the string offset and length of the title and
+ *       of the id, and the start and count of its entries in the tag references
+ *   <li>tag references: the tag ids of every video, in record order
+ *   <li>tag table: string offset and length of every distinct tag, the position being its id
+ *   <li>tag index: normalized tag string, postings start and count, sorted by normalized tag
+ *   <li>postings: the sorted ordinals of the videos carrying each normalized tag
+ *   <li>id index: open-addressing hash table of ordinal + 1 by the id's hash code, 0 if empty
+ *   <li>key starts: the start of the key of every title in the keys, in record order, then the
+ *       end of the last one
+ *   <li>title index: the trigram postings of the keys, as written by {@link TitleIndex#writeTo}
+ *   <li>completions: the titles and tags to complete, as written by
+ *       {@link Autocomplete#writeTo}
+ *   <li>keys: the {@link TextAnalyzer} keys of the titles one after the other, as big-endian
+ *       UTF-16 chars, so title searches read them in place instead of analyzing every title
+ *   <li>strings: UTF-8 text referenced by offset and length relative to this section
+ * </ul>
+ */
+class BinaryCatalog {
+
+  static final int MAGIC = 0x59544342; // "YTCB"
+  static final int VERSION = 5;
+
+  // Header fields, by byte offset.
+  static final int VIDEO_COUNT = 8;
+  static final int TAG_COUNT = 12;
+  static final int TAG_KEY_COUNT = 16;
+  static final int ID_SLOTS = 20;
+  static final int RECORDS = 24;
+  static final int TAG_REFS = 28;
+  static final int TAG_TABLE = 32;
+  static final int TAG_INDEX = 36;
+  static final int POSTINGS = 40;
+  static final int ID_INDEX = 44;
+  static final int STRINGS = 48;
+  static final int KEY_STARTS = 52;
+  static final int KEYS = 56;
+  static final int TITLE_INDEX = 60;
+  static final int COMPLETIONS = 64;
+  static final int HEADER_SIZE = 68;
+
+  // Ints per record and per entry of the tag table and tag index.
+  static final int RECORD_INTS = 6;
+  static final int TAG_INTS = 2;
+  static final int TAG_KEY_INTS = 4;
+
+  private final ByteBuffer buffer;
+  private final int videoCount;
+  private final int tagKeyCount;
+  private final int idSlots;
+  private final int records;
+  private final int tagRefs;
+  private final int tagIndex;
+  private final int postings;
+  private final int idIndex;
+  private final int strings;
+  private final int keyStarts;
+  private final int keys;
+  private final int titleIndex;
+  private final int completions;
+  // Ids in the global TagDictionary by the id of the tag in this file, looked up once on open.
+  private final int[] tagIds;
+
+  private BinaryCatalog(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+      throw new IOException("Not a binary catalog");
+    }
+    if (buffer.getInt(4) != VERSION) {
+      throw new IOException("Unsupported binary catalog version " + buffer.getInt(4));
+    }
+    this.videoCount = buffer.getInt(VIDEO_COUNT);
+    this.tagKeyCount = buffer.getInt(TAG_KEY_COUNT);
+    this.idSlots = buffer.getInt(ID_SLOTS);
+    this.records = buffer.getInt(RECORDS);
+    this.tagRefs = buffer.getInt(TAG_REFS);
+    this.tagIndex = buffer.getInt(TAG_INDEX);
+    this.postings = buffer.getInt(POSTINGS);
+    this.idIndex = buffer.getInt(ID_INDEX);
+    this.strings = buffer.getInt(STRINGS);
+    this.keyStarts = buffer.getInt(KEY_STARTS);
+    this.keys = buffer.getInt(KEYS);
+    this.titleIndex = buffer.getInt(TITLE_INDEX);
+    this.completions = buffer.getInt(COMPLETIONS);
+    int tagTable = buffer.getInt(TAG_TABLE);
+    this.tagIds = new int[buffer.getInt(TAG_COUNT)];
+    for (int i = 0; i < tagIds.length; i++) {
+      int entry = tagTable + i * TAG_INTS * 4;
+      String tag = string(buffer.getInt(entry), buffer.getInt(entry + 4));
+      tagIds[i] = TagDictionary.global().idOf(tag);
+    }
+  }
+
+  /**
+   * Returns whether the file starts like a binary catalog.
+   */
+  static boolean isBinary(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      ByteBuffer magic = ByteBuffer.allocate(4);
+      return channel.read(magic, 0) == 4 && magic.getInt(0) == MAGIC;
+    }
+  }
+
+  /**
+   * Maps a binary catalog file.
+   */
+  static BinaryCatalog open(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Binary catalog larger than 2GB: " + path);
+      }
+      // The mapping stays valid after the channel is closed.
+      return new BinaryCatalog(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /** Returns the number of videos. */
+  int size() {
+    return videoCount;
+  }
+
+  /**
+   * Returns the video with the ordinal, a new instance on every call.
+   */
+  Video video(int ordinal) {
+    return new Video(title(ordinal), videoId(ordinal), tagIds(ordinal));
+  }
+
+  /** Returns the title of the video with the ordinal. */
+  String title(int ordinal) {
+    int record = records + ordinal * RECORD_INTS * 4;
+    return string(buffer.getInt(record), buffer.getInt(record + 4));
+  }
+
+  /** Returns the id of the video with the ordinal. */
+  String videoId(int ordinal) {
+    int record = records + ordinal * RECORD_INTS * 4;
+    return string(buffer.getInt(record + 8), buffer.getInt(record + 12));
+  }
+
+  /**
+   * Returns the ids of the tags of the video with the ordinal in the global
+   * {@link TagDictionary}.
+   */
+  int[] tagIds(int ordinal) {
+    int record = records + ordinal * RECORD_INTS * 4;
+    int refs = tagRefs + buffer.getInt(record + 16) * 4;
+    int[] videoTags = new int[buffer.getInt(record + 20)];
+    for (int i = 0; i < videoTags.length; i++) {
+      videoTags[i] = tagIds[buffer.getInt(refs + i * 4)];
+    }
+    return videoTags;
+  }
+
+  /**
+   * Returns the keys of the titles one after the other, read in place from the mapping.
+   */
+  CharSequence keyText() {
+    int length = buffer.getInt(keyStarts + videoCount * 4);
+    return buffer.slice(keys, length * 2).asCharBuffer();
+  }
+
+  /**
+   * Returns the start of the key of every title in the key text, and the end of the last one.
+   */
+  int[] keyStarts() {
+    int[] starts = new int[videoCount + 1];
+    buffer.slice(keyStarts, starts.length * 4).asIntBuffer().get(starts);
+    return starts;
+  }
+
+  /**
+   * Returns the title index written by the compiler, to be read in place by
+   * {@link TitleIndex#TitleIndex(java.util.List, CharSequence, int[], ByteBuffer)}.
+   */
+  ByteBuffer titleIndex() {
+    return buffer.slice(titleIndex, completions - titleIndex);
+  }
+
+  /**
+   * Returns the completions written by the compiler, to be read in place by
+   * {@link Autocomplete#Autocomplete(ByteBuffer)}.
+   */
+  ByteBuffer completions() {
+    return buffer.slice(completions, keys - completions);
+  }
+
+  /**
+   * Returns all videos in title order, the position of a video being its ordinal.
+   */
+  Video[] videos() {
+    Video[] videos = new Video[videoCount];
+    for (int i = 0; i < videoCount; i++) {
+      videos[i] = video(i);
+    }
+    return videos;
+  }
+
+  /**
+   * Returns the ordinal of the video with the id, or -1 if there is none.
+   */
+  int ordinalOf(String videoId) {
+    if (idSlots == 0) {
+      return -1;
+    }
+    byte[] key = videoId.getBytes(StandardCharsets.UTF_8);
+    int mask = idSlots - 1;
+    for (int slot = spread(videoId.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int ordinal = buffer.getInt(idIndex + slot * 4) - 1;
+      if (ordinal < 0) {
+        return -1;
+      }
+      int record = records + ordinal * RECORD_INTS * 4;
+      if (bytesEqual(key, buffer.getInt(record + 8), buffer.getInt(record + 12))) {
+        return ordinal;
+      }
+    }
+  }
+
+  /**
+   * Returns the sorted ordinals of the videos carrying the tag, ignoring case, accents and a missing '#'.
+   */
+  int[] postings(String tag) {
+    String key = TextAnalyzer.tag(tag);
+    int low = 0;
+    int high = tagKeyCount - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int entry = tagIndex + middle * TAG_KEY_INTS * 4;
+      int compare = string(buffer.getInt(entry), buffer.getInt(entry + 4)).compareTo(key);
+      if (compare == 0) {
+        return ints(buffer.getInt(entry + 8), buffer.getInt(entry + 12));
+      } else if (compare < 0) {
+        low = middle + 1;
+      } else {
+        high = middle - 1;
+      }
+    }
+    return new int[0];
+  }
+
+  /**
+   * Returns the prebuilt postings of every normalized tag.
+   */
+  HashMap<String, int[]> tagPostings() {
+    HashMap<String, int[]> all = new HashMap<>(tagKeyCount * 4 / 3 + 1);
+    for (int i = 0; i < tagKeyCount; i++) {
+      int entry = tagIndex + i * TAG_KEY_INTS * 4;
+      all.put(string(buffer.getInt(entry), buffer.getInt(entry + 4)),
+          ints(buffer.getInt(entry + 8), buffer.getInt(entry + 12)));
+    }
+    return all;
+  }
+
+  /**
+   * Spreads the bits of a hash code the same way when writing and reading the id index.
+   */
+  static int spread(int hash) {
+    return hash ^ (hash >>> 16);
+  }
+
+  private int[] ints(int start, int count) {
+    int[] values = new int[count];
+    buffer.slice(postings + start * 4, count * 4).asIntBuffer().get(values);
+    return values;
+  }
+
+  private String string(int offset, int length) {
+    byte[] bytes = new byte[length];
+    buffer.get(strings + offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private boolean bytesEqual(byte[] key, int offset, int length) {
+    if (key.length != length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (buffer.get(strings + offset + i) != key[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
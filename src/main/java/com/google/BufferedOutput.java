@@ -0,0 +1,87 @@
+package com.google;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * A class used to collect output in memory and write it out in large chunks.
+ *
+ * <p>Text is appended to a single reused {@link StringBuilder} without any locking, and only
+ * reaches the target when the buffer fills up or {@link #flush()} is called. Instances are
+ * not thread-safe.
+ */
+class BufferedOutput implements Output {
+
+  // Buffered characters that trigger a write to the target.
+  private static final int DEFAULT_CHUNK = 64 * 1024;
+  private static final String LINE_SEPARATOR = System.lineSeparator();
+
+  private final Appendable target;
+  private final int chunk;
+  private final StringBuilder buffer;
+
+  /**
+   * Creates an output writing to the target, e.g. System.out or a Writer.
+   */
+  BufferedOutput(Appendable target) {
+    this(target, DEFAULT_CHUNK);
+  }
+
+  BufferedOutput(Appendable target, int chunk) {
+    this.target = target;
+    this.chunk = chunk;
+    this.buffer = new StringBuilder(chunk + 256);
+  }
+
+  @Override
+  public Output print(CharSequence text) {
+    buffer.append(text);
+    return flushIfFull();
+  }
+
+  @Override
+  public Output print(char c) {
+    buffer.append(c);
+    return flushIfFull();
+  }
+
+  @Override
+  public Output println(CharSequence text) {
+    buffer.append(text).append(LINE_SEPARATOR);
+    return flushIfFull();
+  }
+
+  @Override
+  public Output println() {
+    buffer.append(LINE_SEPARATOR);
+    return flushIfFull();
+  }
+
+  @Override
+  public void flush() {
+    try {
+      if (buffer.length() > 0) {
+        target.append(buffer);
+        buffer.setLength(0);
+      }
+      if (target instanceof Flushable) {
+        ((Flushable) target).flush();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private Output flushIfFull() {
+    if (buffer.length() >= chunk) {
+      try {
+        target.append(buffer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      buffer.setLength(0);
+    }
+    return this;
+  }
+}
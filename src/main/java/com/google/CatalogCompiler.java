@@ -0,0 +1,223 @@
+package com.google;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A class used to compile a text catalog into the binary format read by {@link BinaryCatalog}.
+ *
+ * <p>Usage: {@code java com.google.CatalogCompiler videos.txt videos.bin}
+ */
+class CatalogCompiler {
+
+  private final ByteArrayOutputStream strings = new ByteArrayOutputStream();
+  // Offsets of the strings written once and referenced many times, like tags.
+  private final HashMap<String, Integer> interned = new HashMap<>();
+
+  public static void main(String[] args) throws IOException {
+    if (args.length != 2) {
+      System.out.println("Usage: CatalogCompiler <text catalog> <binary catalog>");
+      return;
+    }
+    System.out.println(compile(Path.of(args[0]), Path.of(args[1])));
+  }
+
+  /**
+   * Compiles a text catalog, later lines winning over earlier ones with the same id.
+   * @return The statistics of reading the text catalog
+   */
+  static CatalogLoader compile(Path source, Path target) throws IOException {
+    HashMap<String, Video> videos = new HashMap<>();
+    CatalogLoader loader = new CatalogLoader();
+    loader.load(source, video -> videos.put(video.getVideoId(), video));
+    compile(videos.values().toArray(new Video[0]), target);
+    return loader;
+  }
+
+  /**
+   * Writes the videos as a binary catalog. The file is written next to the target and then
+   * moved over it, so readers never see a partly written catalog.
+   * @param videos Videos with distinct ids, in any order
+   */
+  static void compile(Video[] videos, Path target) throws IOException {
+    Video[] sorted = new TitleOrder(Arrays.asList(videos)).toArray();
+    Path absolute = target.toAbsolutePath();
+    Path temp =
+        Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+    try {
+      try (DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+        new CatalogCompiler().write(sorted, out);
+      }
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private void write(Video[] videos, DataOutputStream out) throws IOException {
+    // Records and tag references, collecting the distinct tags on the way.
+    HashMap<String, Integer> tagIds = new HashMap<>();
+    List<String> tags = new ArrayList<>();
+    int[] records = new int[videos.length * BinaryCatalog.RECORD_INTS];
+    int refCount = 0;
+    for (Video video : videos) {
+      refCount += video.getTags().size();
+    }
+    int[] refs = new int[refCount];
+    refCount = 0;
+    for (int i = 0; i < videos.length; i++) {
+      int record = i * BinaryCatalog.RECORD_INTS;
+      byte[] title = videos[i].getTitle().getBytes(StandardCharsets.UTF_8);
+      byte[] id = videos[i].getVideoId().getBytes(StandardCharsets.UTF_8);
+      records[record] = append(title);
+      records[record + 1] = title.length;
+      records[record + 2] = append(id);
+      records[record + 3] = id.length;
+      records[record + 4] = refCount;
+      records[record + 5] = videos[i].getTags().size();
+      for (String tag : videos[i].getTags()) {
+        refs[refCount++] = tagIds.computeIfAbsent(tag, t -> {
+          tags.add(t);
+          return tags.size() - 1;
+        });
+      }
+    }
+
+    // Tag index sorted by normalized tag, so a tag can be found by binary search.
+    TagIndex tagPostings = new TagIndex(Arrays.asList(videos));
+    TreeMap<String, int[]> tagIndex = new TreeMap<>(tagPostings.getPostings());
+    int postingCount = 0;
+    for (int[] postings : tagIndex.values()) {
+      postingCount += postings.length;
+    }
+
+    // Id index with at most half of the slots used, so probe sequences stay short.
+    int idSlots = videos.length == 0 ? 0 : Integer.highestOneBit(videos.length * 2 - 1) << 1;
+    int[] idIndex = new int[idSlots];
+    for (int i = 0; i < videos.length; i++) {
+      int slot = BinaryCatalog.spread(videos[i].getVideoId().hashCode()) & (idSlots - 1);
+      while (idIndex[slot] != 0) {
+        slot = (slot + 1) & (idSlots - 1);
+      }
+      idIndex[slot] = i + 1;
+    }
+
+    // Title keys packed one after the other, like the ones a title index computes.
+    StringBuilder keys = new StringBuilder(videos.length * 32);
+    int[] keyStarts = new int[videos.length + 1];
+    for (int i = 0; i < videos.length; i++) {
+      TextAnalyzer.appendKey(videos[i].getTitle(), keys);
+      keyStarts[i + 1] = keys.length();
+    }
+    // The trigram postings and the completions, built once here instead of on every open.
+    TitleIndex titleIndex = new TitleIndex(Arrays.asList(videos), keys.toString(), keyStarts);
+    Autocomplete completions = new Autocomplete(Arrays.asList(videos), tagPostings);
+
+    int[] tagTable = new int[tags.size() * BinaryCatalog.TAG_INTS];
+    for (int i = 0; i < tags.size(); i++) {
+      byte[] tag = tags.get(i).getBytes(StandardCharsets.UTF_8);
+      tagTable[i * BinaryCatalog.TAG_INTS] = intern(tags.get(i), tag);
+      tagTable[i * BinaryCatalog.TAG_INTS + 1] = tag.length;
+    }
+    int[] tagKeys = new int[tagIndex.size() * BinaryCatalog.TAG_KEY_INTS];
+    int entry = 0;
+    int postingStart = 0;
+    for (Map.Entry<String, int[]> tag : tagIndex.entrySet()) {
+      byte[] key = tag.getKey().getBytes(StandardCharsets.UTF_8);
+      tagKeys[entry++] = intern(tag.getKey(), key);
+      tagKeys[entry++] = key.length;
+      tagKeys[entry++] = postingStart;
+      tagKeys[entry++] = tag.getValue().length;
+      postingStart += tag.getValue().length;
+    }
+
+    long recordsOffset = BinaryCatalog.HEADER_SIZE;
+    long refsOffset = recordsOffset + records.length * 4L;
+    long tagTableOffset = refsOffset + refs.length * 4L;
+    long tagIndexOffset = tagTableOffset + tagTable.length * 4L;
+    long postingsOffset = tagIndexOffset + tagKeys.length * 4L;
+    long idIndexOffset = postingsOffset + postingCount * 4L;
+    long keyStartsOffset = idIndexOffset + idIndex.length * 4L;
+    long titleIndexOffset = keyStartsOffset + keyStarts.length * 4L;
+    long completionsOffset = titleIndexOffset + titleIndex.byteSize();
+    long keysOffset = completionsOffset + completions.byteSize();
+    long stringsOffset = keysOffset + keys.length() * 2L;
+    if (stringsOffset + strings.size() > Integer.MAX_VALUE) {
+      throw new IOException("Catalog too large for the binary format");
+    }
+
+    out.writeInt(BinaryCatalog.MAGIC);
+    out.writeInt(BinaryCatalog.VERSION);
+    out.writeInt(videos.length);
+    out.writeInt(tags.size());
+    out.writeInt(tagIndex.size());
+    out.writeInt(idSlots);
+    out.writeInt((int) recordsOffset);
+    out.writeInt((int) refsOffset);
+    out.writeInt((int) tagTableOffset);
+    out.writeInt((int) tagIndexOffset);
+    out.writeInt((int) postingsOffset);
+    out.writeInt((int) idIndexOffset);
+    out.writeInt((int) stringsOffset);
+    out.writeInt((int) keyStartsOffset);
+    out.writeInt((int) keysOffset);
+    out.writeInt((int) titleIndexOffset);
+    out.writeInt((int) completionsOffset);
+    writeInts(records, out);
+    writeInts(refs, out);
+    writeInts(tagTable, out);
+    writeInts(tagKeys, out);
+    for (int[] postings : tagIndex.values()) {
+      writeInts(postings, out);
+    }
+    writeInts(idIndex, out);
+    writeInts(keyStarts, out);
+    titleIndex.writeTo(out);
+    completions.writeTo(out);
+    out.writeChars(keys.toString());
+    strings.writeTo(out);
+  }
+
+  /**
+   * Appends the bytes to the string section.
+   * @return Their offset in the section
+   */
+  private int append(byte[] bytes) {
+    int offset = strings.size();
+    strings.write(bytes, 0, bytes.length);
+    return offset;
+  }
+
+  /**
+   * Appends the bytes of the string unless the same string was appended by this method before.
+   * @return Their offset in the section
+   */
+  private int intern(String string, byte[] bytes) {
+    Integer offset = interned.get(string);
+    if (offset == null) {
+      offset = append(bytes);
+      interned.put(string, offset);
+    }
+    return offset;
+  }
+
+  private static void writeInts(int[] values, DataOutputStream out) throws IOException {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+package com.google;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A class used to hold a run of videos sorted by title together with the indexes over them.
+ *
+ * <p>The position of a video in the run is its ordinal in every index of the layer. Layers never
+ * change once built, apart from the playable set which follows the flags of the videos, so a
+ * large layer can be shared by many versions of the catalog.
+ *
+ * <p>The videos are either heap objects, or flyweight views of a {@link ColumnStore} whose tag
+ * postings are already built.
+ *
+ * <p>The fuzzy index of a large layer is built in the background, so a new catalog is served at
+ * once; fuzzy searches scan the titles until the index is ready.
+ */
+class CatalogLayer {
+
+  // Layers with more videos than this build their fuzzy index in the background.
+  private static final int FUZZY_BACKGROUND_MIN = 1 << 14;
+  private static final ExecutorService FUZZY_BUILDER = Executors.newSingleThreadExecutor(
+      runnable -> {
+        Thread thread = new Thread(runnable, "fuzzy-index-builder");
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /** A layer without videos. */
+  static final CatalogLayer EMPTY = new CatalogLayer(Map.of(), TitleOrder.ofSorted(new Video[0]));
+
+  // Exactly one of byId and columns is set.
+  private final Map<String, Video> byId;
+  private final ColumnStore columns;
+  private final TitleOrder titleOrder;
+  private final List<Video> titleView;
+  private final TitleIndex titleIndex;
+  private final TagIndex tagIndex;
+  private final Autocomplete autocomplete;
+  private final PlayableSet playable;
+  // Null until built, see fuzzyMatches.
+  private volatile FuzzyIndex fuzzyIndex;
+
+  /**
+   * Builds a layer of heap videos.
+   * @param byId The videos keyed by id, owned by the layer from now on
+   * @param titleOrder The same videos in title order
+   */
+  CatalogLayer(Map<String, Video> byId, TitleOrder titleOrder) {
+    this.byId = Collections.unmodifiableMap(byId);
+    this.columns = null;
+    this.titleOrder = titleOrder;
+    this.titleView = titleOrder.asList();
+    this.titleIndex = new TitleIndex(titleView);
+    this.tagIndex = new TagIndex(titleView);
+    this.autocomplete = new Autocomplete(titleView, tagIndex);
+    this.playable = new PlayableSet(titleView);
+    buildFuzzyIndex();
+  }
+
+  /**
+   * Builds a layer of a column store, whose videos are already in title order and whose
+   * indexes are already built. The title index and the completions are read where they are
+   * mapped, and the playable set starts out without arrays, so no video is looked at.
+   */
+  CatalogLayer(ColumnStore columns) {
+    this.byId = null;
+    this.columns = columns;
+    this.titleOrder = null;
+    this.titleView = columns.asList();
+    this.titleIndex = new TitleIndex(titleView, columns.keyText(), columns.keyStarts(),
+        columns.titleIndex());
+    this.tagIndex = new TagIndex(titleView, columns.tagPostings());
+    this.autocomplete = new Autocomplete(columns.completions());
+    this.playable = new PlayableSet(titleView, columns.flaggedOrdinals());
+    buildFuzzyIndex();
+  }
+
+  /** Returns the number of videos. */
+  int size() {
+    return titleView.size();
+  }
+
+  /** Returns the video with the ordinal. */
+  Video get(int ordinal) {
+    return titleView.get(ordinal);
+  }
+
+  /** Returns a read-only view of the videos in title order. */
+  List<Video> getVideos() {
+    return titleView;
+  }
+
+  /** Returns the videos keyed by id, or null if they are views of a column store. */
+  Map<String, Video> getVideosById() {
+    return byId;
+  }
+
+  /** Returns the video with the id, or null if there is none. */
+  Video getVideo(String videoId) {
+    return columns == null ? byId.get(videoId) : columns.getVideo(videoId);
+  }
+
+  /** Returns the ordinal of the video with the id, or -1 if there is none. */
+  int ordinalOf(String videoId) {
+    if (columns != null) {
+      Video video = columns.getVideo(videoId);
+      return video == null ? -1 : columns.ordinalOf(video);
+    }
+    Video video = byId.get(videoId);
+    return video == null ? -1 : titleOrder.indexOf(video);
+  }
+
+  /**
+   * Returns the ordinal of the video, or -1 if this exact video is not in the layer.
+   */
+  int ordinalOf(Video video) {
+    if (columns != null) {
+      return columns.ordinalOf(video);
+    }
+    int ordinal = titleOrder.indexOf(video);
+    return ordinal >= 0 && titleOrder.get(ordinal).equals(video) ? ordinal : -1;
+  }
+
+  /**
+   * Returns the number of videos sorting before the video, which need not be in the layer.
+   */
+  int insertionPoint(Video video) {
+    int index = Collections.binarySearch(titleView, video);
+    return index >= 0 ? index : -index - 1;
+  }
+
+  TitleIndex getTitleIndex() {
+    return titleIndex;
+  }
+
+  TagIndex getTagIndex() {
+    return tagIndex;
+  }
+
+  Autocomplete getAutocomplete() {
+    return autocomplete;
+  }
+
+  /**
+   * Returns the fuzzy matches of the term, see {@link FuzzyIndex#matches}. They are scanned
+   * for if the index is still being built.
+   */
+  long[] fuzzyMatches(String term) {
+    FuzzyIndex index = fuzzyIndex;
+    if (index == null) {
+      return FuzzyIndex.scan(titleView, titleIndex.getKeyText(), titleIndex.getKeyStarts(), term);
+    }
+    return index.matches(term);
+  }
+
+  /**
+   * Builds the fuzzy index, from the title keys of the title index when they are kept.
+   */
+  private void buildFuzzyIndex() {
+    Runnable build = () -> fuzzyIndex = new FuzzyIndex(titleView, titleIndex.getKeyText(),
+        titleIndex.getKeyStarts());
+    if (size() > FUZZY_BACKGROUND_MIN) {
+      FUZZY_BUILDER.execute(build);
+    } else {
+      build.run();
+    }
+  }
+
+  PlayableSet getPlayable() {
+    return playable;
+  }
+}
@@ -0,0 +1,588 @@
+package com.google;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * A class used to read the pipe-delimited video catalog.
+ *
+ * <p>Plain files are memory-mapped window by window, anything else (for example a resource
+ * packed in a jar) is streamed through a channel. Lines are split by a hand-written tokenizer
+ * instead of {@code String.split}, and tags are mapped to their ids in the {@link TagDictionary}
+ * straight from the bytes, so the only allocations per line are the video and its strings.
+ *
+ * <p>Large files can also be split into line-aligned byte ranges that are parsed in parallel on
+ * a {@link ForkJoinPool}, see {@link #loadParallel(Path, int, Map)}.
+ */
+class CatalogLoader {
+
+  // Size of a single memory-mapped window of a catalog file.
+  private static final int MAP_WINDOW = 64 << 20;
+  // Size of the read buffer used for streamed catalogs.
+  private static final int STREAM_BUFFER = 1 << 20;
+  // Number of ranges handed to each worker, so uneven ranges still balance out.
+  private static final int RANGES_PER_WORKER = 4;
+  // Ranges are never split smaller than this.
+  private static final int MIN_RANGE = 1 << 16;
+
+  // Holds a copy of the line currently being tokenized.
+  private byte[] line = new byte[256];
+  // Holds the tag ids of the line currently being tokenized.
+  private int[] tagIds = new int[16];
+  private final TagCache tags = new TagCache();
+  private long lineCount;
+  private long videoCount;
+  private long elapsedNanos;
+
+  /**
+   * Returns the file behind a classpath resource, or null if it is missing or not a plain file,
+   * for example because it is packed in a jar.
+   */
+  static Path resourcePath(String resource) {
+    URL url = CatalogLoader.class.getResource(resource);
+    if (url == null || !"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return Path.of(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Loads a catalog from the classpath, whether it lives in a directory or inside a jar.
+   * @param resource Absolute resource name, e.g. "/videos.txt"
+   * @param sink Receives every parsed video in file order
+   * @return false if the resource does not exist
+   */
+  boolean loadResource(String resource, Consumer<Video> sink) throws IOException {
+    URL url = CatalogLoader.class.getResource(resource);
+    if (url == null) {
+      return false;
+    }
+    Path path = resourcePath(resource);
+    if (path != null) {
+      load(path, sink);
+      return true;
+    }
+    try (InputStream in = url.openStream()) {
+      load(Channels.newChannel(in), sink);
+    }
+    return true;
+  }
+
+  /**
+   * Loads a catalog file by memory-mapping it.
+   */
+  void load(Path path, Consumer<Video> sink) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      load(channel, 0, channel.size(), sink);
+    }
+    elapsedNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Loads the part of a catalog file which changed since it was last loaded, and moves the mark
+   * to the end of the file.
+   *
+   * <p>If the part up to the mark is unchanged, which is checked with its length and checksum,
+   * only the lines appended after it are read. Otherwise the whole file is read again. An
+   * appended last line without a newline is most likely still being written, so it is left
+   * after the mark and read once it is complete.
+   * @param path The catalog file
+   * @param mark How much of the file was loaded before, updated to the new end of the file
+   * @param sink Receives the videos read, in file order
+   * @return Whether nothing, only appended lines or the whole file was read
+   */
+  Change loadChanges(Path path, Mark mark, Consumer<Video> sink) throws IOException {
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      // Everything is read up to the size seen now, even if the file keeps growing.
+      long size = channel.size();
+      CRC32 crc = new CRC32();
+      Change change = Change.REWRITTEN;
+      if (mark.length > 0 && mark.lineAligned && size >= mark.length
+          && checksum(channel, 0, mark.length, crc) == mark.crc) {
+        size = lastLineEnd(channel, mark.length, size);
+        change = size == mark.length ? Change.UNCHANGED : Change.APPENDED;
+      } else {
+        crc.reset();
+      }
+      if (change != Change.UNCHANGED) {
+        long from = change == Change.APPENDED ? mark.length : 0;
+        load(channel, from, size, sink);
+        mark.moveTo(channel, size, checksum(channel, from, size, crc));
+      }
+      elapsedNanos += System.nanoTime() - start;
+      return change;
+    }
+  }
+
+  /**
+   * Parses [from, to) of the file window by window, from must be the start of a line.
+   */
+  private void load(FileChannel channel, long from, long to, Consumer<Video> sink)
+      throws IOException {
+    long position = from;
+    while (position < to) {
+      int length = (int) Math.min(MAP_WINDOW, to - position);
+      ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+      int consumed = parseLines(window, 0, length, sink);
+      if (position + length == to) {
+        // Last line without a trailing newline.
+        if (consumed < length) {
+          parseLine(window, consumed, length, sink);
+        }
+        consumed = length;
+      } else if (consumed == 0) {
+        throw new IOException("Catalog line longer than " + MAP_WINDOW + " bytes");
+      }
+      position += consumed;
+    }
+  }
+
+  /**
+   * Adds [from, to) of the file to the checksum.
+   * @return The checksum so far
+   */
+  private static long checksum(FileChannel channel, long from, long to, CRC32 crc)
+      throws IOException {
+    for (long position = from; position < to; position += MAP_WINDOW) {
+      int length = (int) Math.min(MAP_WINDOW, to - position);
+      crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+    }
+    return crc.getValue();
+  }
+
+  /**
+   * What {@link #loadChanges(Path, Mark, Consumer)} found in the file.
+   */
+  enum Change {
+    /** The file is the same as when it was last loaded, nothing was read. */
+    UNCHANGED,
+    /** Lines were appended to the file, only those were read. */
+    APPENDED,
+    /** The file was rewritten or loaded for the first time, all of it was read. */
+    REWRITTEN
+  }
+
+  /**
+   * A class used to remember how much of a catalog file has been loaded.
+   */
+  static class Mark {
+    private long length;
+    private long crc;
+    // False if the last line loaded had no newline yet and might still be written to.
+    private boolean lineAligned;
+
+    /** Returns the number of bytes loaded from the start of the file. */
+    long getLength() {
+      return length;
+    }
+
+    private void moveTo(FileChannel channel, long size, long crc) throws IOException {
+      this.length = size;
+      this.crc = crc;
+      ByteBuffer last = ByteBuffer.allocate(1);
+      this.lineAligned = size == 0 || channel.read(last, size - 1) == 1 && last.get(0) == '\n';
+    }
+  }
+
+  /**
+   * Returns the end of the last line in [from, to) which ends with a newline, or from if there
+   * is none.
+   */
+  private static long lastLineEnd(FileChannel channel, long from, long to) throws IOException {
+    ByteBuffer probe = ByteBuffer.allocate(8192);
+    for (long end = to; end > from; ) {
+      int length = (int) Math.min(probe.capacity(), end - from);
+      probe.clear().limit(length);
+      while (probe.hasRemaining()) {
+        if (channel.read(probe, end - length + probe.position()) < 0) {
+          return from;
+        }
+      }
+      for (int i = length - 1; i >= 0; i--) {
+        if (probe.get(i) == '\n') {
+          return end - length + i + 1;
+        }
+      }
+      end -= length;
+    }
+    return from;
+  }
+
+  /**
+   * Loads a catalog file by parsing line-aligned byte ranges in parallel.
+   *
+   * <p>Each range is parsed into its own list, and the lists are merged into the index in file
+   * order, so a later line still wins over an earlier one with the same id.
+   * @param path The catalog file
+   * @param parallelism Number of worker threads to use
+   * @param index Receives the parsed videos keyed by id
+   */
+  void loadParallel(Path path, int parallelism, Map<String, Video> index) throws IOException {
+    loadParallel(path, parallelism, index, null);
+  }
+
+  /**
+   * Loads a catalog file in parallel like {@link #loadParallel(Path, int, Map)}, and sets the
+   * mark to the end of the file so later changes can be loaded with
+   * {@link #loadChanges(Path, Mark, Consumer)}.
+   */
+  void loadParallel(Path path, int parallelism, Map<String, Video> index, Mark mark)
+      throws IOException {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+    }
+    long start = System.nanoTime();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long[] bounds = splitRanges(channel, parallelism);
+      List<RangeTask> tasks = new ArrayList<>();
+      for (int i = 0; i + 1 < bounds.length; i++) {
+        if (bounds[i] < bounds[i + 1]) {
+          tasks.add(new RangeTask(channel, bounds[i], bounds[i + 1]));
+        }
+      }
+      ForkJoinPool pool = new ForkJoinPool(parallelism);
+      try {
+        pool.submit(() -> RecursiveTask.invokeAll(tasks)).join();
+      } finally {
+        pool.shutdown();
+      }
+      for (RangeTask task : tasks) {
+        for (Video video : task.join()) {
+          index.put(video.getVideoId(), video);
+        }
+        lineCount += task.loader.lineCount;
+        videoCount += task.loader.videoCount;
+      }
+      if (mark != null) {
+        long size = bounds[bounds.length - 1];
+        mark.moveTo(channel, size, checksum(channel, 0, size, new CRC32()));
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    elapsedNanos += System.nanoTime() - start;
+  }
+
+  /**
+   * Splits the file into ranges which all start at the beginning of a line.
+   * @return Range boundaries, the first being 0 and the last the file size
+   */
+  private static long[] splitRanges(FileChannel channel, int parallelism) throws IOException {
+    long size = channel.size();
+    long count = Math.max(1, Math.min((long) parallelism * RANGES_PER_WORKER, size / MIN_RANGE));
+    count = Math.max(count, size / MAP_WINDOW + 1);
+    long[] bounds = new long[(int) count + 1];
+    ByteBuffer probe = ByteBuffer.allocate(8192);
+    for (int i = 1; i < count; i++) {
+      long target = Math.max(size * i / count, bounds[i - 1]);
+      bounds[i] = nextLineStart(channel, target, probe);
+    }
+    bounds[(int) count] = size;
+    return bounds;
+  }
+
+  /**
+   * Returns the offset of the first line starting at or after the given position.
+   */
+  private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe)
+      throws IOException {
+    long size = channel.size();
+    long scan = position - 1;
+    while (scan >= 0 && scan < size) {
+      probe.clear();
+      int read = channel.read(probe, scan);
+      if (read <= 0) {
+        break;
+      }
+      for (int i = 0; i < read; i++) {
+        if (probe.get(i) == '\n') {
+          return scan + i + 1;
+        }
+      }
+      scan += read;
+    }
+    return position <= 0 ? 0 : size;
+  }
+
+  /**
+   * Parses one line-aligned byte range of a catalog file into its own list.
+   */
+  private static class RangeTask extends RecursiveTask<List<Video>> {
+
+    // ForkJoinTask is serializable, but tasks only ever run in the pool that loads the file.
+    private static final long serialVersionUID = 1L;
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+    // Each range gets its own loader so line buffers and counters are never shared.
+    private final CatalogLoader loader = new CatalogLoader();
+
+    RangeTask(FileChannel channel, long start, long end) {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected List<Video> compute() {
+      List<Video> videos = new ArrayList<>();
+      Consumer<Video> sink = videos::add;
+      try {
+        int length = (int) (end - start);
+        ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        int consumed = loader.parseLines(window, 0, length, sink);
+        if (consumed < length) {
+          loader.parseLine(window, consumed, length, sink);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return videos;
+    }
+  }
+
+  /**
+   * Loads a catalog by streaming it from the given channel.
+   */
+  void load(ReadableByteChannel channel, Consumer<Video> sink) throws IOException {
+    long start = System.nanoTime();
+    ByteBuffer buffer = ByteBuffer.allocate(STREAM_BUFFER);
+    while (channel.read(buffer) != -1) {
+      int consumed = parseLines(buffer, 0, buffer.position(), sink);
+      if (consumed == 0 && !buffer.hasRemaining()) {
+        // A single line fills the buffer, grow it.
+        ByteBuffer bigger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        bigger.put(buffer);
+        buffer = bigger;
+      } else {
+        compact(buffer, consumed);
+      }
+    }
+    if (buffer.position() > 0) {
+      parseLine(buffer, 0, buffer.position(), sink);
+    }
+    elapsedNanos += System.nanoTime() - start;
+  }
+
+  /** Returns the number of lines read so far. */
+  long getLineCount() {
+    return lineCount;
+  }
+
+  /** Returns the number of videos produced so far. */
+  long getVideoCount() {
+    return videoCount;
+  }
+
+  /** Returns the time spent loading in nanoseconds. */
+  long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /** Returns the load throughput in lines per second. */
+  double getLinesPerSecond() {
+    return elapsedNanos == 0 ? 0 : lineCount * 1_000_000_000.0 / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Loaded %d videos from %d lines in %d ms (%.0f lines/s)",
+        videoCount, lineCount, elapsedNanos / 1_000_000, getLinesPerSecond());
+  }
+
+  /**
+   * Parses every complete line in [from, to) of the buffer.
+   * @return The number of bytes consumed, ending just after the last newline.
+   */
+  int parseLines(ByteBuffer buffer, int from, int to, Consumer<Video> sink) {
+    int lineStart = from;
+    for (int i = from; i < to; i++) {
+      if (buffer.get(i) == '\n') {
+        parseLine(buffer, lineStart, i, sink);
+        lineStart = i + 1;
+      }
+    }
+    return lineStart - from;
+  }
+
+  /**
+   * Tokenizes a single "title | id | tag, tag" line in [from, to) of the buffer.
+   */
+  void parseLine(ByteBuffer buffer, int from, int to, Consumer<Video> sink) {
+    lineCount++;
+    int length = to - from;
+    if (line.length < length) {
+      line = new byte[Math.max(length, line.length * 2)];
+    }
+    buffer.get(from, line, 0, length);
+    Video video = parseVideo(line, 0, length);
+    if (video != null) {
+      videoCount++;
+      sink.accept(video);
+    }
+  }
+
+  /**
+   * Tokenizes a single "title | id | tag, tag" line held in a byte array.
+   * @return The parsed video, or null for blank or malformed lines.
+   */
+  Video parseVideo(byte[] bytes, int from, int to) {
+    int titleEnd = indexOf(bytes, '|', from, to);
+    if (titleEnd < 0) {
+      return null;
+    }
+    int idEnd = indexOf(bytes, '|', titleEnd + 1, to);
+    if (idEnd < 0) {
+      idEnd = to;
+    }
+    String title = field(bytes, from, titleEnd);
+    String id = field(bytes, titleEnd + 1, idEnd);
+    if (id.isEmpty()) {
+      return null;
+    }
+    int tagCount = 0;
+    if (idEnd < to) {
+      // Only the third field holds tags, anything after another pipe is ignored.
+      int tagsEnd = indexOf(bytes, '|', idEnd + 1, to);
+      if (tagsEnd < 0) {
+        tagsEnd = to;
+      }
+      int tagStart = idEnd + 1;
+      while (tagStart <= tagsEnd) {
+        int comma = indexOf(bytes, ',', tagStart, tagsEnd);
+        int tagEnd = comma < 0 ? tagsEnd : comma;
+        int start = trimStart(bytes, tagStart, tagEnd);
+        int end = trimEnd(bytes, start, tagEnd);
+        if (start < end) {
+          if (tagCount == tagIds.length) {
+            tagIds = Arrays.copyOf(tagIds, tagCount * 2);
+          }
+          tagIds[tagCount++] = tags.idOf(bytes, start, end);
+        }
+        tagStart = tagEnd + 1;
+      }
+    }
+    return new Video(title, id, Arrays.copyOf(tagIds, tagCount));
+  }
+
+  private static int indexOf(byte[] bytes, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (bytes[i] == c) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Decodes the field in [from, to) with surrounding whitespace removed.
+   */
+  private static String field(byte[] bytes, int from, int to) {
+    from = trimStart(bytes, from, to);
+    to = trimEnd(bytes, from, to);
+    return from == to ? "" : new String(bytes, from, to - from, StandardCharsets.UTF_8);
+  }
+
+  private static int trimStart(byte[] bytes, int from, int to) {
+    while (from < to && (bytes[from] & 0xff) <= ' ') {
+      from++;
+    }
+    return from;
+  }
+
+  private static int trimEnd(byte[] bytes, int from, int to) {
+    while (to > from && (bytes[to - 1] & 0xff) <= ' ') {
+      to--;
+    }
+    return to;
+  }
+
+  private static void compact(ByteBuffer buffer, int consumed) {
+    buffer.flip();
+    buffer.position(consumed);
+    buffer.compact();
+  }
+
+  /**
+   * A class used to find the id of a tag from its bytes, so a tag seen before by this loader
+   * costs neither a String nor a lookup in the shared {@link TagDictionary}.
+   */
+  private static class TagCache {
+
+    private byte[][] keys = new byte[64][];
+    private int[] ids = new int[64];
+    private int size;
+
+    int idOf(byte[] bytes, int from, int to) {
+      int mask = keys.length - 1;
+      int slot = hash(bytes, from, to) & mask;
+      for (byte[] key = keys[slot]; key != null; key = keys[slot]) {
+        if (Arrays.equals(key, 0, key.length, bytes, from, to)) {
+          return ids[slot];
+        }
+        slot = (slot + 1) & mask;
+      }
+      String tag = new String(bytes, from, to - from, StandardCharsets.UTF_8);
+      int id = TagDictionary.global().idOf(tag);
+      keys[slot] = Arrays.copyOfRange(bytes, from, to);
+      ids[slot] = id;
+      // Keeps at most half of the slots used.
+      if (++size * 2 > keys.length) {
+        grow();
+      }
+      return id;
+    }
+
+    private void grow() {
+      byte[][] oldKeys = keys;
+      int[] oldIds = ids;
+      keys = new byte[oldKeys.length * 2][];
+      ids = new int[oldKeys.length * 2];
+      int mask = keys.length - 1;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          int slot = hash(oldKeys[i], 0, oldKeys[i].length) & mask;
+          while (keys[slot] != null) {
+            slot = (slot + 1) & mask;
+          }
+          keys[slot] = oldKeys[i];
+          ids[slot] = oldIds[i];
+        }
+      }
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+      int hash = 0;
+      for (int i = from; i < to; i++) {
+        hash = 31 * hash + bytes[i];
+      }
+      return hash ^ (hash >>> 16);
+    }
+  }
+}
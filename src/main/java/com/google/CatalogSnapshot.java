@@ -0,0 +1,533 @@
+package com.google;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A class used to represent one version of the catalog together with its indexes.
+ *
+ * <p>Snapshots never change once built. Readers use whichever snapshot is current without
+ * copying or locking, while writers derive a new snapshot and publish it in one atomic step.
+ * The only mutable part is the set of playable videos, which follows the flags of the videos.
+ *
+ * <p>The catalog is a large base {@link CatalogLayer}, shared by every snapshot derived from
+ * it, plus the changes made since it was built: a small layer of the added videos and the
+ * ordinals of the removed base videos. An edit only rebuilds the small layer, and a search
+ * runs on both layers and merges their results by title order. Once the changes grow past
+ * {@link #MAX_CHANGES} they are merged into a new base, which takes time in proportion to the
+ * catalog and is done in the background by the {@link VideoLibrary}.
+ *
+ * <p>The base videos are either heap objects, or flyweight views of a {@link ColumnStore}. A
+ * column base keeps no object per video, merging changes into it makes a heap base of views.
+ */
+class CatalogSnapshot {
+
+  /** The most videos added or removed since the base was built before they are merged. */
+  static final int MAX_CHANGES = 1024;
+  private static final int[] NO_ORDINALS = new int[0];
+
+  private final long version;
+  private final CatalogLayer base;
+  private final CatalogLayer added;
+  // Sorted ordinals of the base videos removed or replaced since the base was built.
+  private final int[] removed;
+  private final Set<String> removedIds;
+  // The number of base videos sorting before each added video, by its ordinal.
+  private final int[] insertions;
+  private final List<Video> titleView;
+  // The completions, and those of the removed base videos they take away, built on first use
+  // so an edit does not pay for them. The latter carry over to later snapshots until more base
+  // videos are removed.
+  private volatile Autocomplete autocomplete;
+  private volatile Autocomplete removedCompletions;
+
+  /**
+   * Builds the first snapshot of a freshly loaded catalog.
+   */
+  CatalogSnapshot(Map<String, Video> videos) {
+    this(1, new CatalogLayer(new HashMap<>(videos), new TitleOrder(videos.values())));
+  }
+
+  /**
+   * Builds the first snapshot of a column store, whose videos are already in title order and
+   * whose tag index is already built.
+   */
+  CatalogSnapshot(ColumnStore columns) {
+    this(1, new CatalogLayer(columns));
+  }
+
+  private CatalogSnapshot(long version, CatalogLayer base) {
+    this(version, base, CatalogLayer.EMPTY, NO_ORDINALS, Set.of(), null);
+  }
+
+  /**
+   * @param removedCompletions Completions of the removed base videos, or null to build them
+   *     when needed
+   */
+  private CatalogSnapshot(long version, CatalogLayer base, CatalogLayer added, int[] removed,
+      Set<String> removedIds, Autocomplete removedCompletions) {
+    this.version = version;
+    this.base = base;
+    this.added = added;
+    this.removed = removed;
+    this.removedIds = removedIds;
+    this.removedCompletions = removedCompletions;
+    this.insertions = new int[added.size()];
+    for (int i = 0; i < insertions.length; i++) {
+      insertions[i] = base.insertionPoint(added.get(i));
+    }
+    if (added.size() == 0 && removed.length == 0) {
+      this.titleView = base.getVideos();
+      this.autocomplete = base.getAutocomplete();
+    } else {
+      this.titleView = new Merged();
+    }
+  }
+
+  /**
+   * Returns the next version of the catalog with the video added, replacing any video with the
+   * same id.
+   */
+  CatalogSnapshot withVideo(Video video) {
+    return withChanges(List.of(video), List.of());
+  }
+
+  /**
+   * Returns the next version of the catalog without the video with the id, or this snapshot
+   * if there is no such video.
+   */
+  CatalogSnapshot withoutVideo(String videoId) {
+    return getVideo(videoId) == null ? this : withChanges(List.of(), List.of(videoId));
+  }
+
+  /**
+   * Returns the next version of the catalog with the videos added, each replacing any video
+   * with the same id, and then the videos with the ids removed. This costs in proportion to
+   * the changes since the base was built, see {@link #needsMerge}.
+   */
+  CatalogSnapshot withChanges(Collection<Video> videos, Collection<String> videoIds) {
+    return withChanges(version + 1, videos, videoIds);
+  }
+
+  private CatalogSnapshot withChanges(long version, Collection<Video> videos,
+      Collection<String> videoIds) {
+    HashMap<String, Video> addedById = new HashMap<>(added.getVideosById());
+    int[] gone = Arrays.copyOf(removed, removed.length + videos.size() + videoIds.size());
+    int count = removed.length;
+    Set<String> goneIds = new HashSet<>(removedIds);
+    for (Video video : videos) {
+      if (addedById.put(video.getVideoId(), video) == null) {
+        count = remove(video.getVideoId(), gone, count, goneIds);
+      }
+    }
+    for (String videoId : videoIds) {
+      if (addedById.remove(videoId) == null) {
+        count = remove(videoId, gone, count, goneIds);
+      }
+    }
+    CatalogLayer layer = addedById.isEmpty() ? CatalogLayer.EMPTY
+        : new CatalogLayer(addedById, new TitleOrder(addedById.values()));
+    if (count == removed.length) {
+      // No more base videos are removed, so neither are more completions.
+      return new CatalogSnapshot(version, base, layer, removed, removedIds, removedCompletions);
+    }
+    Arrays.sort(gone, 0, count);
+    gone = Arrays.copyOf(gone, count);
+    return new CatalogSnapshot(version, base, layer, gone, goneIds, null);
+  }
+
+  /**
+   * Notes the base video with the id as removed, if there is one which is not already.
+   * @return The new number of removed ordinals
+   */
+  private int remove(String videoId, int[] gone, int count, Set<String> goneIds) {
+    int ordinal = base.ordinalOf(videoId);
+    if (ordinal >= 0 && goneIds.add(videoId)) {
+      gone[count++] = ordinal;
+    }
+    return count;
+  }
+
+  /**
+   * Returns the next version of the catalog holding exactly the given videos.
+   * @param videos The videos keyed by id, owned by the snapshot from now on
+   */
+  CatalogSnapshot withVideos(HashMap<String, Video> videos) {
+    return new CatalogSnapshot(version + 1,
+        new CatalogLayer(videos, new TitleOrder(videos.values())));
+  }
+
+  /**
+   * Returns whether so many videos were added or removed since the base was built that they
+   * should be merged into a new base, see {@link #mergeChanges}.
+   */
+  boolean needsMerge() {
+    return added.size() + removed.length > MAX_CHANGES;
+  }
+
+  /**
+   * Builds a new base holding the videos of this snapshot. This costs in proportion to the
+   * size of the catalog, and changes nothing, so it can run while other snapshots are derived.
+   */
+  CatalogLayer mergeChanges() {
+    Video[] videos = new Video[size()];
+    int next = 0;
+    int gone = 0;
+    int extra = 0;
+    for (int ordinal = 0; ordinal < base.size(); ordinal++) {
+      if (gone < removed.length && removed[gone] == ordinal) {
+        gone++;
+        continue;
+      }
+      while (extra < added.size() && insertions[extra] <= ordinal) {
+        videos[next++] = added.get(extra++);
+      }
+      videos[next++] = base.get(ordinal);
+    }
+    while (extra < added.size()) {
+      videos[next++] = added.get(extra++);
+    }
+    HashMap<String, Video> byId = new HashMap<>(videos.length * 4 / 3 + 1);
+    for (Video video : videos) {
+      byId.put(video.getVideoId(), video);
+    }
+    return new CatalogLayer(byId, TitleOrder.ofSorted(videos));
+  }
+
+  /**
+   * Returns this version of the catalog on top of a base merged from an earlier snapshot, with
+   * the changes made since that snapshot as the only changes.
+   * @param merged The snapshot the base was merged from
+   * @param mergedBase The base returned by {@link #mergeChanges} of that snapshot
+   * @return The same version of the catalog, or null if that snapshot has a different base,
+   *     for example since the whole catalog was reloaded
+   */
+  CatalogSnapshot rebase(CatalogSnapshot merged, CatalogLayer mergedBase) {
+    if (merged.base != base) {
+      return null;
+    }
+    Map<String, Video> then = merged.added.getVideosById();
+    Map<String, Video> now = added.getVideosById();
+    List<Video> addedSince = new ArrayList<>();
+    List<String> removedSince = new ArrayList<>();
+    for (Video video : now.values()) {
+      if (then.get(video.getVideoId()) != video) {
+        addedSince.add(video);
+      }
+    }
+    for (String videoId : then.keySet()) {
+      if (!now.containsKey(videoId)) {
+        removedSince.add(videoId);
+      }
+    }
+    for (int ordinal : removed) {
+      String videoId = base.get(ordinal).getVideoId();
+      // A replaced video is replaced again by adding its successor.
+      if (!merged.isRemoved(ordinal) && !now.containsKey(videoId)) {
+        removedSince.add(videoId);
+      }
+    }
+    return new CatalogSnapshot(version, mergedBase).withChanges(version, addedSince,
+        removedSince);
+  }
+
+  /** Returns the version, which grows by one with every change to the catalog. */
+  long getVersion() {
+    return version;
+  }
+
+  /** Returns the number of videos. */
+  int size() {
+    return titleView.size();
+  }
+
+  /** Returns the video with the id, or null if it is not in this snapshot. */
+  Video getVideo(String videoId) {
+    Video video = added.getVideo(videoId);
+    if (video != null || removedIds.contains(videoId)) {
+      return video;
+    }
+    return base.getVideo(videoId);
+  }
+
+  /** Returns a read-only view of all videos sorted by title. */
+  List<Video> getVideosByTitle() {
+    return titleView;
+  }
+
+  /**
+   * Returns the videos whose titles contain the term, see {@link TitleIndex#search}.
+   */
+  List<Video> findByTitle(String term) {
+    return merge(base.getTitleIndex().matches(term), added.getTitleIndex().matches(term));
+  }
+
+  /**
+   * Returns the best playable matches for the term, see {@link TitleIndex#rank}. Each layer
+   * ranks its own videos, and the two rankings are merged.
+   */
+  List<Video> findByTitle(String term, PageCursor after, int limit) {
+    PlayableSet playable = base.getPlayable();
+    List<Video> own = base.getTitleIndex().rank(term, after, limit,
+        ordinal -> playable.contains(ordinal) && !isRemoved(ordinal));
+    if (added.size() == 0) {
+      return own;
+    }
+    List<Video> extra =
+        added.getTitleIndex().rank(term, after, limit, added.getPlayable()::contains);
+    List<Video> results = new ArrayList<>(Math.min(limit, own.size() + extra.size()));
+    int i = 0;
+    int j = 0;
+    int ownScore = i < own.size() ? TitleIndex.score(term, own.get(i).getTitle()) : 0;
+    int extraScore = j < extra.size() ? TitleIndex.score(term, extra.get(j).getTitle()) : 0;
+    while (results.size() < limit && (i < own.size() || j < extra.size())) {
+      boolean takeOwn = j == extra.size() || i < own.size() && (ownScore > extraScore
+          || ownScore == extraScore && own.get(i).compareTo(extra.get(j)) < 0);
+      if (takeOwn) {
+        results.add(own.get(i++));
+        ownScore = i < own.size() ? TitleIndex.score(term, own.get(i).getTitle()) : 0;
+      } else {
+        results.add(extra.get(j++));
+        extraScore = j < extra.size() ? TitleIndex.score(term, extra.get(j).getTitle()) : 0;
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Returns the videos with a title close to the term, see {@link FuzzyIndex#search}.
+   */
+  List<Video> findByTitleFuzzy(String term) {
+    long[] own = base.fuzzyMatches(term);
+    long[] extra = added.size() == 0 ? new long[0] : added.fuzzyMatches(term);
+    List<Video> results = new ArrayList<>(own.length + extra.length);
+    int j = 0;
+    for (long match : own) {
+      int ordinal = (int) match;
+      if (isRemoved(ordinal)) {
+        continue;
+      }
+      // Matches are ordered by distance, then by title.
+      while (j < extra.length && (extra[j] >>> 32 < match >>> 32
+          || extra[j] >>> 32 == match >>> 32 && insertions[(int) extra[j]] <= ordinal)) {
+        results.add(added.get((int) extra[j++]));
+      }
+      results.add(base.get(ordinal));
+    }
+    while (j < extra.length) {
+      results.add(added.get((int) extra[j++]));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the videos carrying the tag, see {@link TagIndex#search}.
+   */
+  List<Video> findByTag(String tag) {
+    return merge(base.getTagIndex().postings(tag), added.getTagIndex().postings(tag));
+  }
+
+  /**
+   * Returns the videos matching the query, in title order.
+   */
+  List<Video> findByTags(TagQuery query) {
+    return merge(query.evaluate(base.getTagIndex()).toArray(),
+        query.evaluate(added.getTagIndex()).toArray());
+  }
+
+  /**
+   * Returns the completions of the titles and tags of this snapshot.
+   */
+  Autocomplete getAutocomplete() {
+    Autocomplete completions = autocomplete;
+    if (completions == null) {
+      // Two threads may both build them, the results are equal.
+      completions = base.getAutocomplete().withChanges(added.getAutocomplete(),
+          getRemovedCompletions());
+      autocomplete = completions;
+    }
+    return completions;
+  }
+
+  private Autocomplete getRemovedCompletions() {
+    Autocomplete completions = removedCompletions;
+    if (completions == null) {
+      List<Video> gone = new ArrayList<>(removed.length);
+      for (int ordinal : removed) {
+        gone.add(base.get(ordinal));
+      }
+      completions = new Autocomplete(gone, new TagIndex(gone));
+      removedCompletions = completions;
+    }
+    return completions;
+  }
+
+  /**
+   * Returns a uniformly random video which is not flagged, or null if all videos are flagged.
+   */
+  Video getRandomPlayableVideo() {
+    PlayableSet own = base.getPlayable();
+    PlayableSet extra = added.getPlayable();
+    while (true) {
+      int ownSize = own.size();
+      int extraSize = extra.size();
+      if (ownSize + extraSize == 0) {
+        return null;
+      }
+      // Picking a layer by its share of the playable videos, and then a video of it, is
+      // uniform. Removed base videos are drawn again.
+      if (ThreadLocalRandom.current().nextInt(ownSize + extraSize) < extraSize) {
+        int ordinal = extra.randomOrdinal();
+        if (ordinal >= 0) {
+          return added.get(ordinal);
+        }
+      } else {
+        int ordinal = own.randomOrdinal();
+        if (ordinal >= 0 && !isRemoved(ordinal)) {
+          return base.get(ordinal);
+        }
+        if (countPlayable() == 0) {
+          return null;
+        }
+      }
+    }
+  }
+
+  /** Returns the number of videos which are not flagged. */
+  int countPlayable() {
+    PlayableSet own = base.getPlayable();
+    int count = own.size() + added.getPlayable().size();
+    for (int ordinal : removed) {
+      if (own.contains(ordinal)) {
+        count--;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Updates the playable set after the flag of the video changed. Videos which are not in
+   * this snapshot are ignored.
+   */
+  void setPlayable(Video video, boolean playable) {
+    setPlayable(List.of(video), playable);
+  }
+
+  /**
+   * Updates the playable set after the flags of the videos changed, locking each layer once.
+   */
+  void setPlayable(List<Video> videos, boolean playable) {
+    int[] own = new int[videos.size()];
+    int[] extra = new int[videos.size()];
+    int ownCount = 0;
+    int extraCount = 0;
+    for (Video video : videos) {
+      int ordinal = added.ordinalOf(video);
+      if (ordinal >= 0) {
+        extra[extraCount++] = ordinal;
+      } else if ((ordinal = base.ordinalOf(video)) >= 0) {
+        // Removed base videos are updated too, they are never returned anyway.
+        own[ownCount++] = ordinal;
+      }
+    }
+    if (playable) {
+      base.getPlayable().addAll(own, ownCount);
+      added.getPlayable().addAll(extra, extraCount);
+    } else {
+      base.getPlayable().removeAll(own, ownCount);
+      added.getPlayable().removeAll(extra, extraCount);
+    }
+  }
+
+  private boolean isRemoved(int ordinal) {
+    return removed.length > 0 && Arrays.binarySearch(removed, ordinal) >= 0;
+  }
+
+  /**
+   * Merges sorted ordinals of the base and of the added videos into videos in title order,
+   * leaving out removed base videos.
+   */
+  private List<Video> merge(int[] own, int[] extra) {
+    List<Video> results = new ArrayList<>(own.length + extra.length);
+    int j = 0;
+    int gone = 0;
+    for (int ordinal : own) {
+      while (gone < removed.length && removed[gone] < ordinal) {
+        gone++;
+      }
+      if (gone < removed.length && removed[gone] == ordinal) {
+        continue;
+      }
+      while (j < extra.length && insertions[extra[j]] <= ordinal) {
+        results.add(added.get(extra[j++]));
+      }
+      results.add(base.get(ordinal));
+    }
+    while (j < extra.length) {
+      results.add(added.get(extra[j++]));
+    }
+    return results;
+  }
+
+  /**
+   * The videos of both layers in title order, found by binary searches over the changes.
+   */
+  private class Merged extends AbstractList<Video> implements RandomAccess {
+    @Override
+    public Video get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      // The first added video at or after the index.
+      int low = 0;
+      int high = insertions.length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (position(middle) < index) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      if (low < insertions.length && position(low) == index) {
+        return added.get(low);
+      }
+      // Otherwise the base video with this many live base videos before it. The removed
+      // ordinals at or before it are those whose ordinal minus their rank is at most that.
+      int live = index - low;
+      int gone = 0;
+      high = removed.length;
+      while (gone < high) {
+        int middle = (gone + high) >>> 1;
+        if (removed[middle] - middle <= live) {
+          gone = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      return base.get(live + gone);
+    }
+
+    @Override
+    public int size() {
+      return base.size() - removed.length + added.size();
+    }
+
+    /** Returns the position of the added video with the ordinal. */
+    private int position(int ordinal) {
+      int point = insertions[ordinal];
+      int gone = Arrays.binarySearch(removed, point);
+      gone = gone >= 0 ? gone : -gone - 1;
+      return point - gone + ordinal;
+    }
+  }
+}
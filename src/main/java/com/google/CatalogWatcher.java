@@ -0,0 +1,105 @@
+package com.google;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A class used to reload a library whenever its catalog file changes.
+ *
+ * <p>The directory of the file is watched on a daemon thread. Events are collected until the
+ * file has been quiet for a moment, so a catalog written in several steps is reloaded once.
+ * A reload which fails is logged, since the thread has no user to tell, and retried with the
+ * next change.
+ */
+class CatalogWatcher implements Closeable {
+
+  // How long the file must go without changes before it is reloaded.
+  private static final long QUIET_MILLIS = 200;
+  private static final System.Logger LOGGER = System.getLogger(CatalogWatcher.class.getName());
+
+  private final VideoLibrary library;
+  private final Path fileName;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /**
+   * Starts watching the catalog file of the library.
+   * @throws IllegalArgumentException if the library was not loaded from a file
+   */
+  CatalogWatcher(VideoLibrary library) throws IOException {
+    Path catalog = library.getCatalogPath();
+    if (catalog == null) {
+      throw new IllegalArgumentException("Only a catalog loaded from a file can be watched");
+    }
+    catalog = catalog.toAbsolutePath();
+    this.library = library;
+    this.fileName = catalog.getFileName();
+    this.watchService = catalog.getFileSystem().newWatchService();
+    catalog.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+    this.thread = new Thread(this::watch, "catalog-watcher");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  private void watch() {
+    try {
+      while (true) {
+        boolean changed = drain(watchService.take());
+        WatchKey more;
+        while ((more = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          changed |= drain(more);
+        }
+        if (changed) {
+          reload();
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      // The watcher was closed.
+    }
+  }
+
+  /**
+   * Consumes the events of a key.
+   * @return Whether any of them may concern the catalog file
+   */
+  private boolean drain(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      // Lost events might have been about the catalog as well.
+      if (event.kind() == OVERFLOW || fileName.equals(event.context())) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+
+  private void reload() {
+    try {
+      library.reload();
+    } catch (IOException e) {
+      // The next change to the file triggers another attempt.
+      LOGGER.log(System.Logger.Level.WARNING,
+          "Couldn't reload " + library.getCatalogPath() + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Stops watching the catalog file.
+   */
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+}
@@ -0,0 +1,179 @@
+package com.google;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class used to keep a whole catalog in columns outside the heap.
+ *
+ * <p>Titles, ids and tag references stay in the memory-mapped {@link BinaryCatalog}. Videos are
+ * handed out as flyweight views which only hold the store and an ordinal, and decode their
+ * fields when asked. Views are created on demand and thrown away, so the heap holds no object
+ * per video.
+ *
+ * <p>Flags are rare, so they are kept in a sparse map by ordinal which every view of the same
+ * video reads. Looking up a flag is still a single read of a concurrent map.
+ */
+class ColumnStore {
+
+  private final BinaryCatalog catalog;
+  private final ConcurrentHashMap<Integer, String> flags = new ConcurrentHashMap<>();
+  private final List<Video> view = new Videos();
+
+  ColumnStore(BinaryCatalog catalog) {
+    this.catalog = catalog;
+  }
+
+  /** Returns the number of videos. */
+  int size() {
+    return catalog.size();
+  }
+
+  /** Returns a view of the video with the ordinal. */
+  Video get(int ordinal) {
+    return new View(ordinal);
+  }
+
+  /** Returns a view of the video with the id, or null if there is none. */
+  Video getVideo(String videoId) {
+    int ordinal = catalog.ordinalOf(videoId);
+    return ordinal < 0 ? null : new View(ordinal);
+  }
+
+  /**
+   * Returns the ordinal of the video, or -1 if it is not a view of this store.
+   */
+  int ordinalOf(Video video) {
+    if (video instanceof View && ((View) video).store() == this) {
+      return ((View) video).ordinal;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a read-only list of views of all videos in title order, the position of a video
+   * being its ordinal. Every call to get creates a new view.
+   */
+  List<Video> asList() {
+    return view;
+  }
+
+  /**
+   * Returns the keys of the titles prebuilt in the catalog, see {@link BinaryCatalog#keyText}.
+   */
+  CharSequence keyText() {
+    return catalog.keyText();
+  }
+
+  /**
+   * Returns where the key of every title starts in the key text, and where the last one ends.
+   */
+  int[] keyStarts() {
+    return catalog.keyStarts();
+  }
+
+  /**
+   * Returns the title index prebuilt in the catalog, see {@link BinaryCatalog#titleIndex}.
+   */
+  ByteBuffer titleIndex() {
+    return catalog.titleIndex();
+  }
+
+  /**
+   * Returns the completions prebuilt in the catalog, see {@link BinaryCatalog#completions}.
+   */
+  ByteBuffer completions() {
+    return catalog.completions();
+  }
+
+  /**
+   * Returns the ordinals of the flagged videos in ascending order.
+   */
+  int[] flaggedOrdinals() {
+    return flags.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+  }
+
+  /**
+   * Returns the tag postings prebuilt in the catalog.
+   */
+  HashMap<String, int[]> tagPostings() {
+    return catalog.tagPostings();
+  }
+
+  private class Videos extends AbstractList<Video> implements RandomAccess {
+    @Override
+    public Video get(int index) {
+      if (index < 0 || index >= catalog.size()) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return new View(index);
+    }
+
+    @Override
+    public int size() {
+      return catalog.size();
+    }
+  }
+
+  /**
+   * A class used to represent a video of the store without copying it onto the heap.
+   */
+  private class View extends Video {
+
+    private final int ordinal;
+
+    View(int ordinal) {
+      this.ordinal = ordinal;
+    }
+
+    private ColumnStore store() {
+      return ColumnStore.this;
+    }
+
+    @Override
+    String getTitle() {
+      return catalog.title(ordinal);
+    }
+
+    @Override
+    String getVideoId() {
+      return catalog.videoId(ordinal);
+    }
+
+    @Override
+    int[] getTagIds() {
+      return catalog.tagIds(ordinal);
+    }
+
+    @Override
+    public String getFlagReason() {
+      return flags.get(ordinal);
+    }
+
+    @Override
+    boolean flag(String reason) {
+      return flags.putIfAbsent(ordinal, reason) == null;
+    }
+
+    @Override
+    boolean allow() {
+      return flags.remove(ordinal) != null;
+    }
+
+    // Views of the same video are interchangeable.
+    @Override
+    public boolean equals(Object other) {
+      return other instanceof View && ((View) other).store() == store()
+          && ((View) other).ordinal == ordinal;
+    }
+
+    @Override
+    public int hashCode() {
+      return ordinal;
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.google;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -8,19 +10,52 @@ import java.util.List;
 class CommandParser {
 
   private final VideoPlayer videoPlayer;
+  // Shares the player's output so messages keep their order.
+  private final Output out;
 
   CommandParser(VideoPlayer videoPlayer) {
     this.videoPlayer = videoPlayer;
+    this.out = videoPlayer.getOutput();
+  }
+
+  /**
+   * Splits a line into the words of a command, at any whitespace.
+   */
+  static List<String> tokenize(CharSequence line) {
+    List<String> words = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i < line.length(); i++) {
+      if (Character.isWhitespace(line.charAt(i))) {
+        if (start >= 0) {
+          words.add(line.subSequence(start, i).toString());
+          start = -1;
+        }
+      } else if (start < 0) {
+        start = i;
+      }
+    }
+    if (start >= 0) {
+      words.add(line.subSequence(start, line.length()).toString());
+    }
+    // Backed by an array like the result of split, so a missing argument throws the
+    // ArrayIndexOutOfBoundsException the commands catch.
+    return Arrays.asList(words.toArray(new String[0]));
   }
 
   /**
    * Executes the given user command.
    */
   public void executeCommand(List<String> command) {
+    if (this.videoPlayer.isAwaitingAnswer()) {
+      // The line answers the question of the previous command instead of being a command.
+      this.videoPlayer.answer(String.join(" ", command));
+      return;
+    }
     if (command.isEmpty()) {
-      System.out.println(
+      out.println(
           "Please enter a valid command, " +
               "type HELP for a list of available commands.");
+      out.flush();
       return;
     }
 
@@ -29,13 +64,24 @@ class CommandParser {
         this.videoPlayer.numberOfVideos();
         break;
       case "SHOW_ALL_VIDEOS":
-        this.videoPlayer.showAllVideos();
+        if (command.size() == 1) {
+          this.videoPlayer.showAllVideos();
+          break;
+        }
+        try {
+          this.videoPlayer.showAllVideos(Integer.parseInt(command.get(1)),
+              command.size() > 2 ? command.get(2) : null);
+        } catch (NumberFormatException e) {
+          out.println(
+              "Please enter SHOW_ALL_VIDEOS command optionally followed by a "
+                  + "page size and a page token.");
+        }
         break;
       case "PLAY":
         try {
           this.videoPlayer.playVideo(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter PLAY command followed by video_id.");
+          out.println("Please enter PLAY command followed by video_id.");
         }
         break;
       case "PLAY_RANDOM":
@@ -57,7 +103,7 @@ class CommandParser {
         try {
           this.videoPlayer.createPlaylist(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter CREATE_PLAYLIST command followed by a " +
                   "playlist name.");
         }
@@ -66,7 +112,7 @@ class CommandParser {
         try {
           this.videoPlayer.addVideoToPlaylist(command.get(1), command.get(2));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter ADD_TO_PLAYLIST command followed by a "
                   + "playlist name and video_id to add.");
         }
@@ -75,7 +121,7 @@ class CommandParser {
         try {
           this.videoPlayer.removeFromPlaylist(command.get(1), command.get(2));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter REMOVE_FROM_PLAYLIST command followed by a "
                   + "playlist name and video_id to remove.");
         }
@@ -84,7 +130,7 @@ class CommandParser {
         try {
           this.videoPlayer.clearPlaylist(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter CLEAR_PLAYLIST command followed by a "
                   + "playlist name.");
         }
@@ -93,7 +139,7 @@ class CommandParser {
         try {
           this.videoPlayer.deletePlaylist(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter DELETE_PLAYLIST command followed by a " +
                   "playlist name.");
         }
@@ -102,7 +148,7 @@ class CommandParser {
         try {
           this.videoPlayer.showPlaylist(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SHOW_PLAYLIST command followed by a " +
+          out.println("Please enter SHOW_PLAYLIST command followed by a " +
               "playlist name.");
         }
         break;
@@ -113,19 +159,58 @@ class CommandParser {
         try {
           this.videoPlayer.searchVideos(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter SEARCH_VIDEOS command followed by a " +
+          out.println("Please enter SEARCH_VIDEOS command followed by a " +
               "search term.");
         }
         break;
+      case "SEARCH_VIDEOS_RANKED":
+        if (command.size() == 1) {
+          out.println("Please enter SEARCH_VIDEOS_RANKED command followed by a search term.");
+          break;
+        }
+        try {
+          this.videoPlayer.searchVideosRanked(command.get(1),
+              command.size() > 2 ? Integer.parseInt(command.get(2)) : 10,
+              command.size() > 3 ? command.get(3) : null);
+        } catch (NumberFormatException e) {
+          out.println(
+              "Please enter SEARCH_VIDEOS_RANKED command followed by a search term, "
+                  + "optionally a page size and a page token.");
+        }
+        break;
+      case "SEARCH_VIDEOS_FUZZY":
+        if (command.size() == 1) {
+          out.println("Please enter SEARCH_VIDEOS_FUZZY command followed by a search term.");
+          break;
+        }
+        this.videoPlayer.searchVideosFuzzy(String.join(" ", command.subList(1, command.size())));
+        break;
+      case "AUTOCOMPLETE":
+        if (command.size() == 1) {
+          out.println("Please enter AUTOCOMPLETE command followed by the start of a title or tag.");
+          break;
+        }
+        this.videoPlayer.autocomplete(String.join(" ", command.subList(1, command.size())));
+        break;
       case "SEARCH_VIDEOS_WITH_TAG":
         try {
           this.videoPlayer.searchVideosWithTag(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println(
+          out.println(
               "Please enter SEARCH_VIDEOS_WITH_TAG command followed by a " +
                   "video tag.");
         }
         break;
+      case "SEARCH_VIDEOS_WITH_TAGS":
+        if (command.size() == 1) {
+          out.println(
+              "Please enter SEARCH_VIDEOS_WITH_TAGS command followed by a " +
+                  "tag query.");
+          break;
+        }
+        this.videoPlayer.searchVideosWithTags(
+            String.join(" ", command.subList(1, command.size())));
+        break;
       case "FLAG_VIDEO":
         try {
           this.videoPlayer.flagVideo(command.get(1), command.get(2));
@@ -133,7 +218,7 @@ class CommandParser {
           try {
             this.videoPlayer.flagVideo(command.get(1));
           } catch (ArrayIndexOutOfBoundsException f) {
-            System.out.println("Please enter FLAG_VIDEO command followed by a" +
+            out.println("Please enter FLAG_VIDEO command followed by a" +
                 "video_id and an optional flag reason.");
           }
         }
@@ -142,19 +227,36 @@ class CommandParser {
         try {
           this.videoPlayer.allowVideo(command.get(1));
         } catch (ArrayIndexOutOfBoundsException e) {
-          System.out.println("Please enter ALLOW_VIDEO command followed by a " +
+          out.println("Please enter ALLOW_VIDEO command followed by a " +
               "video_id.");
         }
         break;
+      case "FLAG_VIDEOS":
+        try {
+          this.videoPlayer.flagVideos(command.get(1));
+        } catch (ArrayIndexOutOfBoundsException e) {
+          out.println("Please enter FLAG_VIDEOS command followed by a " +
+              "file of video_ids and optional flag reasons.");
+        }
+        break;
+      case "ALLOW_VIDEOS":
+        try {
+          this.videoPlayer.allowVideos(command.get(1));
+        } catch (ArrayIndexOutOfBoundsException e) {
+          out.println("Please enter ALLOW_VIDEOS command followed by a " +
+              "file of video_ids.");
+        }
+        break;
       case "HELP":
         this.getHelp();
         break;
       default:
-        System.out.println(
+        out.println(
             "Please enter a valid command, type HELP for a list of "
             + "available commands.");
         break;
     }
+    out.flush();
   }
 
   /**
@@ -164,7 +266,7 @@ class CommandParser {
     String helpText =
         "Available commands:\n"
             + "    NUMBER_OF_VIDEOS - Shows how many videos are in the library.\n"
-            + "    SHOW_ALL_VIDEOS - Lists all videos from the library.\n"
+            + "    SHOW_ALL_VIDEOS [<page_size> [<page_token>]] - Lists all videos from the library, optionally one page at a time.\n"
             + "    PLAY <video_id> - Plays specified video.\n"
             + "    PLAY_RANDOM - Plays a random video from the library.\n"
             + "    STOP - Stop the current video.\n"
@@ -179,11 +281,17 @@ class CommandParser {
             + "    SHOW_PLAYLIST <playlist_name> - List all the videos in this playlist.\n"
             + "    SHOW_ALL_PLAYLISTS - Display all the available playlists.\n"
             + "    SEARCH_VIDEOS <search_term> - Display all the videos whose titles contain the search_term.\n"
+            + "    SEARCH_VIDEOS_RANKED <search_term> [<page_size> [<page_token>]] - Display the best matches for the search_term first, 10 at a time by default.\n"
+            + "    SEARCH_VIDEOS_FUZZY <search_term> - Display all the videos whose titles have words within one or two typos of the words of the search_term, the closest first.\n"
+            + "    AUTOCOMPLETE <prefix> - Suggests titles and tags starting with the prefix.\n"
             + "    SEARCH_VIDEOS_WITH_TAG <tag_name> -Display all videos whose tags contains the provided tag.\n"
+            + "    SEARCH_VIDEOS_WITH_TAGS <tag_query> - Display all videos matching tags combined with AND, OR, NOT and parentheses.\n"
             + "    FLAG_VIDEO <video_id> <flag_reason> - Mark a video as flagged.\n"
             + "    ALLOW_VIDEO <video_id> - Removes a flag from a video.\n"
+            + "    FLAG_VIDEOS <file> - Flags every video in the file, one video_id and optional flag_reason per line.\n"
+            + "    ALLOW_VIDEOS <file> - Removes the flags from every video in the file, one video_id per line.\n"
             + "    HELP - Displays help.\n"
             + "    EXIT - Terminates the program execution.\n";
-    System.out.println(helpText);
+    out.println(helpText);
   }
 }
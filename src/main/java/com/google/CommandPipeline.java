@@ -0,0 +1,172 @@
+package com.google;
+
+import java.io.BufferedReader;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A class used to run the commands of one user through three stages on their own threads.
+ *
+ * <p>A reader splits the input into commands, an executor runs them one after the other, and a
+ * writer prints their output. The stages are connected by bounded queues, so a scripted batch is
+ * read ahead and its output written behind while commands run, and a slow stage holds the
+ * others back instead of piling up memory.
+ *
+ * <p>No stage ever blocks on the user in the middle of a command. A question like the one after
+ * a search is remembered by the player, and the next line is taken as its answer.
+ */
+class CommandPipeline {
+
+  private static final int QUEUE_CAPACITY = 1024;
+  private static final String PROMPT = "YT> ";
+  // Mark the end of the queues, compared by identity.
+  private static final List<String> END_OF_INPUT = new ArrayList<>();
+  private static final String END_OF_OUTPUT = new String();
+
+  private final BlockingQueue<List<String>> commands = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final BlockingQueue<String> output = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+  private final VideoPlayer videoPlayer;
+  private final CommandParser parser;
+  private volatile IOException writeFailure;
+
+  /**
+   * Creates a pipeline running its commands in a new session of the engine.
+   */
+  CommandPipeline(PlayerEngine engine) {
+    this.videoPlayer = engine.openSession(new BufferedOutput(new QueuedText()));
+    this.videoPlayer.setDeferredAnswers(true);
+    this.parser = new CommandParser(videoPlayer);
+  }
+
+  /**
+   * Returns where the output of the session is written to, for messages before the first
+   * command. Only safe to use from the thread calling {@link #run}.
+   */
+  Output getOutput() {
+    return videoPlayer.getOutput();
+  }
+
+  /**
+   * Runs the commands read from the input until EXIT or the end of the input.
+   * @param target Receives the output, flushed whenever the writer has caught up
+   */
+  void run(Reader input, Writer target) throws IOException, InterruptedException {
+    // The reader may be stuck waiting for input nobody will type, so it must not keep the JVM.
+    Thread reader = new Thread(() -> read(input), "command-reader");
+    reader.setDaemon(true);
+    Thread writer = new Thread(() -> write(target), "command-writer");
+    reader.start();
+    writer.start();
+    try {
+      execute();
+    } finally {
+      output.put(END_OF_OUTPUT);
+      writer.join();
+      reader.interrupt();
+    }
+    if (writeFailure != null) {
+      throw writeFailure;
+    }
+  }
+
+  private void execute() throws InterruptedException {
+    Output out = videoPlayer.getOutput();
+    out.print(PROMPT).flush();
+    while (true) {
+      List<String> command = commands.take();
+      if (command == END_OF_INPUT) {
+        out.println().flush();
+        return;
+      }
+      if (!videoPlayer.isAwaitingAnswer() && command.size() == 1
+          && command.get(0).equalsIgnoreCase("EXIT")) {
+        out.println("YouTube has now terminated its execution. Thank you and goodbye!").flush();
+        return;
+      }
+      parser.executeCommand(command);
+      if (!videoPlayer.isAwaitingAnswer()) {
+        out.print(PROMPT).flush();
+      }
+    }
+  }
+
+  private void read(Reader input) {
+    BufferedReader lines = new BufferedReader(input, 64 * 1024);
+    try {
+      try {
+        for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+          commands.put(CommandParser.tokenize(line));
+        }
+      } catch (IOException e) {
+        // Input that cannot be read any more has ended.
+      }
+      commands.put(END_OF_INPUT);
+    } catch (InterruptedException e) {
+      // The executor is done.
+    }
+  }
+
+  private void write(Writer target) {
+    try {
+      for (String text = output.take(); text != END_OF_OUTPUT; text = output.take()) {
+        if (writeFailure != null) {
+          // Keep draining, so the executor never waits for a writer that is gone.
+          continue;
+        }
+        try {
+          target.write(text);
+          // Flushing only once the queue is empty writes a batch in large chunks, while an
+          // interactive user still sees every answer as soon as it is ready.
+          if (output.isEmpty()) {
+            target.flush();
+          }
+        } catch (IOException e) {
+          writeFailure = e;
+        }
+      }
+      target.flush();
+    } catch (IOException e) {
+      writeFailure = e;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Hands the chunks written by the player's output to the writer.
+   */
+  private class QueuedText implements Appendable, Flushable {
+    @Override
+    public Appendable append(CharSequence text) throws IOException {
+      try {
+        output.put(text.toString());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while writing output");
+      }
+      return this;
+    }
+
+    @Override
+    public Appendable append(CharSequence text, int start, int end) throws IOException {
+      return append(text.subSequence(start, end));
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+      return append(String.valueOf(c));
+    }
+
+    @Override
+    public void flush() {
+      // The writer flushes when it catches up.
+    }
+  }
+}
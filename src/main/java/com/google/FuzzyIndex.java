@@ -0,0 +1,584 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A class used to find videos by the words of their titles, allowing for typos.
+ *
+ * <p>The distinct words of the title keys are kept sorted in one shared char array, like the
+ * completions of {@link Autocomplete}, so the words sharing a prefix are a contiguous range and
+ * the ranges form an implicit trie. A word of the term is looked up by walking that trie with
+ * one row of its edit distance table per char of the path, and a branch is left as soon as no
+ * row entry is close enough. Only the branches near the word are visited, instead of comparing
+ * it with every word or every title. The postings of the close words are gathered into one
+ * sorted list per word of the term and the lists are intersected, so a search only touches the
+ * titles holding a close word.
+ *
+ * <p>The index is built without a string per word: words are ranges of the packed title keys
+ * until they are sorted. Until it is built, {@link #scan} gives the same matches by comparing
+ * the term with every title.
+ *
+ * <p>The distance counts inserted, deleted and replaced chars, and two swapped neighbours as a
+ * single edit. Words of up to two chars have to match exactly, words of up to five chars may
+ * have one edit and longer words two.
+ */
+class FuzzyIndex {
+
+  private static final long[] NO_MATCHES = new long[0];
+
+  private final List<Video> videos;
+  // Word i is chars[starts[i]] up to chars[starts[i + 1]], and the ordinals of the titles
+  // holding it are ordinals[postings[i]] up to ordinals[postings[i + 1]], ascending.
+  private final char[] chars;
+  private final int[] starts;
+  private final int[] postings;
+  private final int[] ordinals;
+
+  /**
+   * Builds the index, the ordinal of a video being its position in the list.
+   */
+  FuzzyIndex(List<Video> videos) {
+    this(videos, null, null);
+  }
+
+  /**
+   * Builds the index from the keys of the titles, packed one after the other like those of a
+   * {@link TitleIndex}.
+   * @param keyText The keys, or null to compute them from the titles
+   * @param keyStarts The start of the key of every ordinal in the text, and the end of the last
+   */
+  FuzzyIndex(List<Video> videos, CharSequence keyText, int[] keyStarts) {
+    this.videos = videos;
+    if (keyText == null) {
+      StringBuilder text = new StringBuilder(videos.size() * 32);
+      keyStarts = new int[videos.size() + 1];
+      for (int i = 0; i < videos.size(); i++) {
+        TextAnalyzer.appendKey(videos.get(i).getTitle(), text);
+        keyStarts[i + 1] = text.length();
+      }
+      keyText = text.toString();
+    }
+    // Every distinct word gets an id in the order it is first seen, and every title lists the
+    // ids of its words once each. Words are only ranges of the key text until they are sorted.
+    Words words = new Words(keyText);
+    int[] last = new int[1024];
+    int[] wordIds = new int[Math.max(16, videos.size() * 4)];
+    int[] titles = new int[wordIds.length];
+    int count = 0;
+    for (int i = 0; i < videos.size(); i++) {
+      for (int at = keyStarts[i]; at < keyStarts[i + 1]; ) {
+        int end = at;
+        while (end < keyStarts[i + 1] && keyText.charAt(end) != ' ') {
+          end++;
+        }
+        int id = words.add(at, end);
+        at = end + 1;
+        if (id == last.length) {
+          last = Arrays.copyOf(last, id * 2);
+        }
+        if (last[id] == i + 1) {
+          continue;
+        }
+        last[id] = i + 1;
+        if (count == wordIds.length) {
+          wordIds = Arrays.copyOf(wordIds, count * 2);
+          titles = Arrays.copyOf(titles, count * 2);
+        }
+        wordIds[count] = id;
+        titles[count++] = i;
+      }
+    }
+
+    int[] sorted = new int[words.size()];
+    for (int i = 0; i < sorted.length; i++) {
+      sorted[i] = i;
+    }
+    IntSort.sort(sorted, words::compare);
+    int[] positions = new int[sorted.length];
+    int length = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      positions[sorted[i]] = i;
+      length += words.length(sorted[i]);
+    }
+    this.chars = new char[length];
+    this.starts = new int[sorted.length + 1];
+    for (int i = 0; i < sorted.length; i++) {
+      int start = words.start(sorted[i]);
+      for (int c = 0; c < words.length(sorted[i]); c++) {
+        chars[starts[i] + c] = keyText.charAt(start + c);
+      }
+      starts[i + 1] = starts[i] + words.length(sorted[i]);
+    }
+
+    // Titles were visited in ordinal order, so filling the postings in that order sorts them.
+    this.postings = new int[sorted.length + 1];
+    for (int i = 0; i < count; i++) {
+      postings[positions[wordIds[i]] + 1]++;
+    }
+    for (int i = 0; i < sorted.length; i++) {
+      postings[i + 1] += postings[i];
+    }
+    this.ordinals = new int[count];
+    int[] fill = Arrays.copyOf(postings, sorted.length);
+    for (int i = 0; i < count; i++) {
+      ordinals[fill[positions[wordIds[i]]]++] = titles[i];
+    }
+  }
+
+  /**
+   * Returns the videos whose titles have a word close to every word of the term, the closest
+   * first and in ordinal order if equally close. A term without words matches nothing.
+   */
+  List<Video> search(String term) {
+    long[] matches = matches(term);
+    List<Video> results = new ArrayList<>(matches.length);
+    for (long match : matches) {
+      results.add(videos.get((int) match));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the matches of the term, like {@link #search}, each with the total distance in the
+   * upper half and the ordinal in the lower half, so they sort in the order of the results.
+   */
+  long[] matches(String term) {
+    String[] terms = words(TextAnalyzer.key(term));
+    if (terms.length == 0) {
+      return NO_MATCHES;
+    }
+    // For every word of the term, the titles with a close word as sorted entries of the ordinal
+    // in the upper half and the distance in the lower half. Only the postings of the close
+    // words are touched, however large the catalog.
+    long[][] within = new long[terms.length][];
+    int smallest = 0;
+    for (int w = 0; w < terms.length; w++) {
+      within[w] = within(terms[w]);
+      if (within[w].length == 0) {
+        return NO_MATCHES;
+      }
+      if (within[w].length < within[smallest].length) {
+        smallest = w;
+      }
+    }
+    // Intersecting from the fewest titles keeps the running matches short, adding up the
+    // distances of the titles which stay.
+    long[] matches = within[smallest];
+    int count = matches.length;
+    for (int w = 0; w < terms.length && count > 0; w++) {
+      if (w != smallest) {
+        count = intersect(matches, count, within[w]);
+      }
+    }
+    return byDistance(matches, count);
+  }
+
+  /**
+   * Returns the matches of the term like {@link #matches}, by comparing it with every title
+   * instead of looking it up, for a catalog whose index is not built yet.
+   * @param keyText The keys of the titles packed like for the constructor, or null to compute
+   *     them from the titles
+   * @param keyStarts The start of the key of every ordinal in the text, and the end of the last
+   */
+  static long[] scan(List<Video> videos, CharSequence keyText, int[] keyStarts, String term) {
+    String[] terms = words(TextAnalyzer.key(term));
+    if (terms.length == 0) {
+      return NO_MATCHES;
+    }
+    // Three rows of the distance table per word of the term, reused for every title.
+    int[][][] rows = new int[terms.length][][];
+    for (int w = 0; w < terms.length; w++) {
+      rows[w] = new int[3][terms[w].length() + 1];
+    }
+    long[] matches = new long[16];
+    int count = 0;
+    for (int i = 0; i < videos.size(); i++) {
+      CharSequence key = keyText;
+      int from = keyText == null ? 0 : keyStarts[i];
+      int to = keyText == null ? 0 : keyStarts[i + 1];
+      if (keyText == null) {
+        key = TextAnalyzer.key(videos.get(i).getTitle());
+        to = key.length();
+      }
+      int total = 0;
+      for (int w = 0; w < terms.length && total >= 0; w++) {
+        int distance = closest(terms[w], key, from, to, rows[w]);
+        total = distance < 0 ? -1 : total + distance;
+      }
+      if (total >= 0) {
+        if (count == matches.length) {
+          matches = Arrays.copyOf(matches, count * 2);
+        }
+        matches[count++] = (long) i << 32 | total;
+      }
+    }
+    return byDistance(matches, count);
+  }
+
+  /** Returns the number of distinct words in the titles. */
+  int size() {
+    return starts.length - 1;
+  }
+
+  /**
+   * Returns the most edits a word of the term may be away from a word of a title.
+   */
+  static int maxDistance(int length) {
+    return length <= 2 ? 0 : length <= 5 ? 1 : 2;
+  }
+
+  private interface Match {
+    void accept(int word, int distance);
+  }
+
+  /**
+   * Finds the words at most max edits away from the term.
+   */
+  private void lookup(String term, int max, Match match) {
+    // No path more than max chars longer than the term is close enough, so the walk never goes
+    // deeper than that, and looks one char further at most.
+    int[][] rows = new int[term.length() + max + 2][term.length() + 1];
+    for (int i = 0; i <= term.length(); i++) {
+      rows[0][i] = i;
+    }
+    walk(term, max, 0, size(), 0, rows, match);
+  }
+
+  /**
+   * Visits the words in the range, which share their first depth chars, rows[depth] being the
+   * distances of that prefix to every prefix of the term.
+   */
+  private void walk(String term, int max, int from, int to, int depth, int[][] rows,
+      Match match) {
+    int child = from;
+    // A word which is the shared prefix itself sorts first.
+    if (child < to && starts[child + 1] - starts[child] == depth) {
+      int distance = rows[depth][term.length()];
+      if (distance <= max) {
+        match.accept(child, distance);
+      }
+      child++;
+    }
+    while (child < to) {
+      char c = chars[starts[child] + depth];
+      int end = end(child, to, depth, c);
+      if (step(term, depth, c, rows, starts[child]) <= max) {
+        walk(term, max, child, end, depth + 1, rows, match);
+      }
+      child = end;
+    }
+  }
+
+  /**
+   * Fills rows[depth + 1] for the path extended by the char, and returns its smallest entry.
+   * Since an entry is at most one more than an entry of the row before, no word below the path
+   * gets closer than that.
+   * @param start Start of a word below the path, which holds the chars of the path
+   */
+  private int step(String term, int depth, char c, int[][] rows, int start) {
+    int[] previous = rows[depth];
+    int[] row = rows[depth + 1];
+    row[0] = depth + 1;
+    int best = row[0];
+    for (int i = 1; i <= term.length(); i++) {
+      char t = term.charAt(i - 1);
+      int distance = Math.min(previous[i - 1] + (t == c ? 0 : 1),
+          Math.min(previous[i], row[i - 1]) + 1);
+      // Two swapped neighbours.
+      if (i > 1 && depth > 0 && term.charAt(i - 2) == c && t == chars[start + depth - 1]) {
+        distance = Math.min(distance, rows[depth - 1][i - 2] + 1);
+      }
+      row[i] = distance;
+      best = Math.min(best, distance);
+    }
+    return best;
+  }
+
+  /**
+   * Returns the first word in the range whose char at the depth comes after c. Every word of
+   * the range is longer than the depth.
+   */
+  private int end(int from, int to, int depth, char c) {
+    int low = from + 1;
+    int high = to;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (chars[starts[middle] + depth] <= c) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the titles with a word close to the word of the term, as sorted entries of the
+   * ordinal in the upper half and the distance in the lower half.
+   */
+  private long[] within(String word) {
+    int max = maxDistance(word.length());
+    Close close = new Close();
+    lookup(word, max, close);
+    int total = 0;
+    for (int i = 0; i < close.count; i++) {
+      total += postings[close.words[i] + 1] - postings[close.words[i]];
+    }
+    long[] entries = new long[total];
+    int next = 0;
+    for (int i = 0; i < close.count; i++) {
+      int found = close.words[i];
+      for (int p = postings[found]; p < postings[found + 1]; p++) {
+        entries[next++] = (long) ordinals[p] << 32 | close.distances[i];
+      }
+    }
+    if (close.count < 2) {
+      // The postings of a single word are sorted already.
+      return entries;
+    }
+    // A title holding several close words keeps the closest, which sorts first.
+    Arrays.sort(entries);
+    int kept = 0;
+    for (long entry : entries) {
+      if (kept == 0 || entries[kept - 1] >>> 32 != entry >>> 32) {
+        entries[kept++] = entry;
+      }
+    }
+    return kept == entries.length ? entries : Arrays.copyOf(entries, kept);
+  }
+
+  /**
+   * Keeps the matches whose titles are also in the other entries, adding up the distances.
+   * @return The new number of matches
+   */
+  private static int intersect(long[] matches, int count, long[] other) {
+    int kept = 0;
+    int j = 0;
+    for (int i = 0; i < count && j < other.length; i++) {
+      long ordinal = matches[i] >>> 32;
+      j = seek(other, j, ordinal);
+      if (j < other.length && other[j] >>> 32 == ordinal) {
+        matches[kept++] = matches[i] + (other[j] & 0xffffffffL);
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Returns the first entry from the position on whose ordinal is not below the given one.
+   * Galloping forward finds a near entry in a few steps and a far one in logarithmic time.
+   */
+  private static int seek(long[] entries, int from, long ordinal) {
+    int step = 1;
+    while (from + step < entries.length && entries[from + step] >>> 32 < ordinal) {
+      step <<= 1;
+    }
+    int low = from;
+    int high = Math.min(from + step, entries.length);
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (entries[middle] >>> 32 < ordinal) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Turns entries of the ordinal and the distance into matches of the distance and the
+   * ordinal, closest first and in ordinal order if equally close.
+   */
+  private static long[] byDistance(long[] entries, int count) {
+    long[] matches = new long[count];
+    for (int i = 0; i < count; i++) {
+      matches[i] = entries[i] << 32 | entries[i] >>> 32;
+    }
+    Arrays.sort(matches);
+    return matches;
+  }
+
+  /**
+   * Returns the distance from the word of the term to the closest word of the key in the
+   * range, or -1 if none is close enough.
+   */
+  private static int closest(String term, CharSequence key, int from, int to, int[][] rows) {
+    int max = maxDistance(term.length());
+    int best = -1;
+    for (int at = from; at < to; ) {
+      int end = at;
+      while (end < to && key.charAt(end) != ' ') {
+        end++;
+      }
+      if (Math.abs(end - at - term.length()) <= max) {
+        int distance = distance(term, key, at, end, max, rows);
+        if (distance <= max && (best < 0 || distance < best)) {
+          best = distance;
+        }
+      }
+      at = end + 1;
+    }
+    return best;
+  }
+
+  /**
+   * Returns the distance from the word of the term to the word of the key in the range,
+   * counted like the lookup does, or more than max if it is further.
+   */
+  private static int distance(String term, CharSequence key, int from, int to, int max,
+      int[][] rows) {
+    int[] before = rows[0];
+    int[] previous = rows[1];
+    int[] row = rows[2];
+    for (int i = 0; i <= term.length(); i++) {
+      previous[i] = i;
+    }
+    for (int at = from; at < to; at++) {
+      char c = key.charAt(at);
+      row[0] = at - from + 1;
+      int best = row[0];
+      for (int i = 1; i <= term.length(); i++) {
+        char t = term.charAt(i - 1);
+        int distance = Math.min(previous[i - 1] + (t == c ? 0 : 1),
+            Math.min(previous[i], row[i - 1]) + 1);
+        // Two swapped neighbours.
+        if (i > 1 && at > from && term.charAt(i - 2) == c && t == key.charAt(at - 1)) {
+          distance = Math.min(distance, before[i - 2] + 1);
+        }
+        row[i] = distance;
+        best = Math.min(best, distance);
+      }
+      if (best > max) {
+        return best;
+      }
+      int[] spare = before;
+      before = previous;
+      previous = row;
+      row = spare;
+    }
+    return previous[term.length()];
+  }
+
+  private static String[] words(String key) {
+    return key.isEmpty() ? new String[0] : key.split(" ");
+  }
+
+  /**
+   * A class used to collect the words a lookup finds, with their distances.
+   */
+  private static class Close implements Match {
+    private int[] words = new int[16];
+    private int[] distances = new int[16];
+    private int count;
+
+    @Override
+    public void accept(int word, int distance) {
+      if (count == words.length) {
+        words = Arrays.copyOf(words, count * 2);
+        distances = Arrays.copyOf(distances, count * 2);
+      }
+      words[count] = word;
+      distances[count++] = distance;
+    }
+  }
+
+  /**
+   * A class used to give every distinct word of the key text an id, in an open-addressing table
+   * over the range of its first occurrence, without a string per word.
+   */
+  private static class Words {
+    private final CharSequence text;
+    // The id + 1 of the word in every slot, 0 if the slot is empty.
+    private int[] slots = new int[1024];
+    private int[] hashes = new int[512];
+    private int[] starts = new int[512];
+    private int[] lengths = new int[512];
+    private int size;
+
+    Words(CharSequence text) {
+      this.text = text;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int start(int word) {
+      return starts[word];
+    }
+
+    int length(int word) {
+      return lengths[word];
+    }
+
+    /** Returns the id of the word in the range, giving it the next id if it is new. */
+    int add(int start, int end) {
+      int hash = 0;
+      for (int i = start; i < end; i++) {
+        hash = 31 * hash + text.charAt(i);
+      }
+      int mask = slots.length - 1;
+      int slot = BinaryCatalog.spread(hash) & mask;
+      for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+        int word = slots[slot] - 1;
+        if (hashes[word] == hash && equals(word, start, end)) {
+          return word;
+        }
+      }
+      if (size == starts.length) {
+        hashes = Arrays.copyOf(hashes, size * 2);
+        starts = Arrays.copyOf(starts, size * 2);
+        lengths = Arrays.copyOf(lengths, size * 2);
+      }
+      hashes[size] = hash;
+      starts[size] = start;
+      lengths[size] = end - start;
+      slots[slot] = ++size;
+      // At most half of the slots are used, so probe sequences stay short.
+      if (size * 2 > slots.length) {
+        grow();
+      }
+      return size - 1;
+    }
+
+    /** Compares two words like strings. */
+    int compare(int a, int b) {
+      int length = Math.min(lengths[a], lengths[b]);
+      for (int i = 0; i < length; i++) {
+        char x = text.charAt(starts[a] + i);
+        char y = text.charAt(starts[b] + i);
+        if (x != y) {
+          return x - y;
+        }
+      }
+      return lengths[a] - lengths[b];
+    }
+
+    private boolean equals(int word, int start, int end) {
+      if (lengths[word] != end - start) {
+        return false;
+      }
+      for (int i = 0; i < end - start; i++) {
+        if (text.charAt(starts[word] + i) != text.charAt(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void grow() {
+      slots = new int[slots.length * 2];
+      int mask = slots.length - 1;
+      for (int word = 0; word < size; word++) {
+        int slot = BinaryCatalog.spread(hashes[word]) & mask;
+        while (slots[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        slots[slot] = word + 1;
+      }
+    }
+  }
+}
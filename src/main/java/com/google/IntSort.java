@@ -0,0 +1,60 @@
+package com.google;
+
+/**
+ * A class used to sort ints in an order given by the caller, like the numbers of texts held in
+ * a shared array, without boxing them.
+ *
+ * <p>The sort is a merge sort, so equal ints keep their order. Halves which are already in
+ * order are not merged, so input which is mostly sorted takes close to linear time.
+ */
+class IntSort {
+
+  // Ranges this short are sorted by insertion.
+  private static final int INSERTION_MAX = 16;
+
+  /**
+   * An order of ints.
+   */
+  interface Order {
+    /** Compares two ints like a {@link java.util.Comparator}. */
+    int compare(int a, int b);
+  }
+
+  /**
+   * Sorts the values in the order.
+   */
+  static void sort(int[] values, Order order) {
+    sort(values, new int[values.length], 0, values.length, order);
+  }
+
+  private static void sort(int[] values, int[] scratch, int from, int to, Order order) {
+    if (to - from <= INSERTION_MAX) {
+      for (int i = from + 1; i < to; i++) {
+        int value = values[i];
+        int at = i;
+        while (at > from && order.compare(values[at - 1], value) > 0) {
+          values[at] = values[at - 1];
+          at--;
+        }
+        values[at] = value;
+      }
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    sort(values, scratch, from, middle, order);
+    sort(values, scratch, middle, to, order);
+    if (order.compare(values[middle - 1], values[middle]) <= 0) {
+      return;
+    }
+    System.arraycopy(values, from, scratch, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right == to || left < middle && order.compare(scratch[left], scratch[right]) <= 0) {
+        values[i] = scratch[left++];
+      } else {
+        values[i] = scratch[right++];
+      }
+    }
+  }
+}
@@ -0,0 +1,524 @@
+package com.google;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+/**
+ * A class used to make changes to some state durable, like the playlists or the flags.
+ *
+ * <p>Every change is a record of an operation and two strings, appended to a write-ahead log
+ * before it is reported to the user. Changes of concurrent sessions are committed in groups:
+ * whoever finds no write in progress writes and syncs everything appended so far while the
+ * others wait for that write, so a burst of changes costs one fsync instead of one each.
+ *
+ * <p>The log is split into numbered segments. Once a segment is full the next one is started,
+ * and the full one is folded into a snapshot of the state in the background. The snapshot holds
+ * the records which rebuild the state, so recovery reads one snapshot and the few segments
+ * written after it. A reopened journal keeps appending to its last segment while it has room.
+ *
+ * <p>The directory is synced whenever a file appears in it or is renamed into place, so a
+ * crash never loses a segment or a snapshot whose contents were already synced.
+ */
+class Journal implements Closeable {
+
+  // "YTJS" in ASCII.
+  private static final int SNAPSHOT_MAGIC = 0x59544a53;
+  private static final long SEGMENT_LIMIT = 4 << 20;
+  private static final System.Logger LOGGER = System.getLogger(Journal.class.getName());
+
+  private final Path directory;
+  private final String name;
+  private final Supplier<? extends State> states;
+  private final ExecutorService compactor;
+
+  // Guards everything below. Records are appended to pending, which the writer swaps out.
+  private final Object lock = new Object();
+  private final RecordWriter pending = new RecordWriter();
+  private long appended;
+  private long durable;
+  private boolean writing;
+  private IOException failure;
+  // Only touched by the writer of the current group.
+  private FileChannel segment;
+  private long segmentNumber;
+  private long segmentSize;
+
+  private Journal(Path directory, String name, Supplier<? extends State> states,
+      long segmentNumber) throws IOException {
+    this.directory = directory;
+    this.name = name;
+    this.states = states;
+    openSegment(segmentNumber);
+    this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, name + "-compactor");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Opens the journal with the name in the directory, creating it if needed.
+   * @param states Creates the empty states the journal is folded into
+   * @return The journal, with the state as it was after the last durable change
+   */
+  static <S extends State> Recovered<S> open(Path directory, String name, Supplier<S> states)
+      throws IOException {
+    Files.createDirectories(directory);
+    S recovered = states.get();
+    long covered = readSnapshot(directory.resolve(name + ".snapshot"), recovered);
+    long last = covered;
+    List<Long> numbers = segments(directory, name);
+    for (long number : numbers) {
+      Path path = directory.resolve(name + '.' + number + ".log");
+      if (number <= covered) {
+        // Folded into the snapshot by a compaction which did not get to delete it.
+        Files.delete(path);
+      } else {
+        // Only the segment written last can end in a record torn by a crash.
+        replay(path, recovered, number == numbers.get(numbers.size() - 1));
+        last = number;
+      }
+    }
+    // The torn tail of the last segment was cut off above, so appends may continue it. Only
+    // the segments before the one appended to can be compacted.
+    boolean reused = last > covered
+        && Files.size(directory.resolve(name + '.' + last + ".log")) < SEGMENT_LIMIT;
+    long full = reused ? last - 1 : last;
+    Journal journal = new Journal(directory, name, states, reused ? last : last + 1);
+    if (full > covered) {
+      journal.compact(full);
+    }
+    return new Recovered<>(journal, recovered);
+  }
+
+  /**
+   * Appends a change, which becomes durable with the next group commit.
+   * @param value The second string of the record, or null
+   * @return The sequence number to pass to {@link #sync}
+   */
+  long append(byte operation, String key, String value) {
+    synchronized (lock) {
+      pending.write(operation, key, value);
+      return ++appended;
+    }
+  }
+
+  /**
+   * Waits until the change with the sequence number is on disk, writing it and every change
+   * appended before it if no other thread is already doing so.
+   */
+  void sync(long sequence) throws IOException {
+    byte[] group;
+    long last;
+    synchronized (lock) {
+      while (durable < sequence && writing && failure == null) {
+        try {
+          lock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while saving " + name, e);
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (durable >= sequence) {
+        return;
+      }
+      writing = true;
+      group = pending.drain();
+      last = appended;
+    }
+    IOException error = null;
+    try {
+      ByteBuffer buffer = ByteBuffer.wrap(group);
+      while (buffer.hasRemaining()) {
+        segment.write(buffer);
+      }
+      segment.force(false);
+      segmentSize += group.length;
+      if (segmentSize >= SEGMENT_LIMIT) {
+        rotate();
+      }
+    } catch (IOException e) {
+      error = e;
+    } finally {
+      synchronized (lock) {
+        writing = false;
+        if (error == null) {
+          durable = last;
+        } else {
+          failure = error;
+        }
+        lock.notifyAll();
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  /**
+   * Writes every pending change and waits for the background compaction to finish.
+   */
+  @Override
+  public void close() throws IOException {
+    long last;
+    synchronized (lock) {
+      last = appended;
+    }
+    try {
+      sync(last);
+    } finally {
+      compactor.shutdown();
+      try {
+        compactor.awaitTermination(1, TimeUnit.MINUTES);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      segment.close();
+    }
+  }
+
+  /**
+   * Starts the next segment and folds the full one into the snapshot in the background.
+   */
+  private void rotate() throws IOException {
+    long full = segmentNumber;
+    segment.close();
+    openSegment(full + 1);
+    compact(full);
+  }
+
+  /**
+   * Opens the segment with the number for appending, creating it if there is none.
+   */
+  private void openSegment(long number) throws IOException {
+    Path path = segmentPath(number);
+    boolean created = !Files.exists(path);
+    segment = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    segmentNumber = number;
+    segmentSize = segment.size();
+    if (created) {
+      syncDirectory(directory);
+    }
+  }
+
+  /**
+   * Folds the snapshot and every segment up to the number into a new snapshot. Only segments
+   * which are no longer written to are read, so this needs no lock.
+   */
+  private void compact(long upTo) {
+    compactor.execute(() -> {
+      try {
+        State state = states.get();
+        Path snapshot = directory.resolve(name + ".snapshot");
+        long covered = readSnapshot(snapshot, state);
+        List<Long> folded = new ArrayList<>();
+        for (long number : segments(directory, name)) {
+          if (number > covered && number <= upTo) {
+            replay(segmentPath(number), state, false);
+            folded.add(number);
+          }
+        }
+        Path temp = directory.resolve(name + ".snapshot.tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+          DataOutputStream out = new DataOutputStream(
+              new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+          out.writeInt(SNAPSHOT_MAGIC);
+          out.writeLong(upTo);
+          RecordWriter records = new RecordWriter();
+          state.write((operation, key, value) -> {
+            records.write(operation, key, value);
+            if (records.size() >= 64 * 1024) {
+              out.write(records.drain());
+            }
+          });
+          out.write(records.drain());
+          out.flush();
+          channel.force(false);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE);
+        // The rename must be on disk before the segments it replaces are gone.
+        syncDirectory(directory);
+        for (long number : folded) {
+          Files.deleteIfExists(segmentPath(number));
+        }
+      } catch (IOException e) {
+        // The segments are still there, so nothing is lost and the next compaction retries.
+        LOGGER.log(System.Logger.Level.WARNING,
+            "Couldn't compact " + name + ": " + e.getMessage());
+      }
+    });
+  }
+
+  private Path segmentPath(long number) {
+    return directory.resolve(name + '.' + number + ".log");
+  }
+
+  /**
+   * Makes the files created in and renamed into the directory durable.
+   */
+  private static void syncDirectory(Path directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory, StandardOpenOption.READ);
+    } catch (IOException e) {
+      // Some platforms, like Windows, cannot open a directory and need no sync for it.
+      return;
+    }
+    try (channel) {
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Returns the numbers of the log segments of the journal, in ascending order.
+   */
+  private static List<Long> segments(Path directory, String name) throws IOException {
+    List<Long> numbers = new ArrayList<>();
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*.log")) {
+      for (Path file : files) {
+        String fileName = file.getFileName().toString();
+        String number = fileName.substring(name.length() + 1, fileName.length() - 4);
+        if (!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+          numbers.add(Long.parseLong(number));
+        }
+      }
+    }
+    Collections.sort(numbers);
+    return numbers;
+  }
+
+  /**
+   * Applies the records of a segment to the state.
+   * @param last Whether the segment was the last one written, whose torn tail is cut off
+   * @throws IOException if a segment other than the last one has a torn or corrupt record,
+   *     since records after it would be lost
+   */
+  private static void replay(Path path, State state, boolean last) throws IOException {
+    long size = Files.size(path);
+    long valid;
+    try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+      valid = replay(new DataInputStream(file), size, state);
+    }
+    if (valid < size) {
+      if (!last) {
+        throw new IOException(path + " is corrupt at byte " + valid);
+      }
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+        channel.truncate(valid);
+      }
+    }
+  }
+
+  /**
+   * Applies records to the state until the end of the input or the first torn or corrupt
+   * record.
+   * @param size Number of bytes left in the input, no record can be longer
+   * @return The number of bytes of the complete records
+   */
+  private static long replay(DataInputStream in, long size, State state) throws IOException {
+    long valid = 0;
+    RecordReader reader = new RecordReader();
+    while (true) {
+      int length;
+      int checksum;
+      try {
+        length = in.readInt();
+        checksum = in.readInt();
+        // A torn length may be anything, so it is checked before allocating for it.
+        if (length < 0 || length > size - valid - 8) {
+          return valid;
+        }
+        in.readFully(reader.buffer(length), 0, length);
+      } catch (EOFException e) {
+        return valid;
+      }
+      if (!reader.apply(length, checksum, state)) {
+        return valid;
+      }
+      valid += 8 + length;
+    }
+  }
+
+  /**
+   * Reads the snapshot into the state.
+   * @return The number of the last segment folded into the snapshot, or 0 if there is none
+   */
+  private static long readSnapshot(Path path, State state) throws IOException {
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    try (InputStream file = new BufferedInputStream(Files.newInputStream(path), 64 * 1024)) {
+      DataInputStream in = new DataInputStream(file);
+      if (in.readInt() != SNAPSHOT_MAGIC) {
+        throw new IOException(path + " is not a journal snapshot");
+      }
+      long covered = in.readLong();
+      long size = Files.size(path) - 12;
+      long valid = replay(in, size, state);
+      // Snapshots are renamed into place complete, anything short of that is corruption.
+      if (valid != size) {
+        throw new IOException(path + " is corrupt");
+      }
+      return covered;
+    }
+  }
+
+  /**
+   * The state a journal rebuilds, which only changes through the records applied to it.
+   */
+  interface State {
+    /**
+     * Applies a change read from the journal.
+     * @param value The second string of the record, empty if it was appended as null
+     */
+    void apply(byte operation, String key, String value);
+
+    /** Passes records which rebuild the whole state to the sink, for a snapshot. */
+    void write(Sink sink) throws IOException;
+  }
+
+  /**
+   * Receives the records of a snapshot.
+   */
+  interface Sink {
+    void record(byte operation, String key, String value) throws IOException;
+  }
+
+  /**
+   * A class used to return an opened journal along with the state recovered from it.
+   */
+  static class Recovered<S extends State> {
+    private final Journal journal;
+    private final S state;
+
+    private Recovered(Journal journal, S state) {
+      this.journal = journal;
+      this.state = state;
+    }
+
+    Journal getJournal() {
+      return journal;
+    }
+
+    S getState() {
+      return state;
+    }
+  }
+
+  /**
+   * Encodes records as a length, a CRC32 of the payload, and the payload. The payload is the
+   * operation followed by each string as its length and its UTF-8 bytes, so strings of any
+   * length can be written and encoding a record in memory never fails.
+   */
+  private static class RecordWriter {
+    private final CRC32 crc = new CRC32();
+    private ByteArrayOutputStream records = new ByteArrayOutputStream();
+
+    void write(byte operation, String key, String value) {
+      byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+      byte[] valueBytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+      int length = 1 + 4 + keyBytes.length + 4 + valueBytes.length;
+      ByteBuffer record = ByteBuffer.allocate(8 + length);
+      record.putInt(length).putInt(0).put(operation)
+          .putInt(keyBytes.length).put(keyBytes)
+          .putInt(valueBytes.length).put(valueBytes);
+      crc.reset();
+      crc.update(record.array(), 8, length);
+      record.putInt(4, (int) crc.getValue());
+      records.write(record.array(), 0, record.capacity());
+    }
+
+    int size() {
+      return records.size();
+    }
+
+    /** Returns the records written so far and starts over. */
+    byte[] drain() {
+      byte[] bytes = records.toByteArray();
+      records = new ByteArrayOutputStream(Math.max(32, bytes.length));
+      return bytes;
+    }
+  }
+
+  /**
+   * Decodes the payload of records, reusing one buffer.
+   */
+  private static class RecordReader {
+    private final CRC32 crc = new CRC32();
+    private byte[] payload = new byte[256];
+
+    byte[] buffer(int length) {
+      if (payload.length < length) {
+        payload = new byte[Math.max(length, payload.length * 2)];
+      }
+      return payload;
+    }
+
+    /**
+     * Applies the payload in the buffer to the state.
+     * @return false if the payload does not match its checksum or is malformed
+     */
+    boolean apply(int length, int checksum, State state) {
+      crc.reset();
+      crc.update(payload, 0, length);
+      if ((int) crc.getValue() != checksum || length < 1 + 4) {
+        return false;
+      }
+      ByteBuffer record = ByteBuffer.wrap(payload, 0, length);
+      byte operation = record.get();
+      String key = string(record);
+      if (key == null || record.remaining() < 4) {
+        return false;
+      }
+      String value = string(record);
+      if (value == null || record.hasRemaining()) {
+        return false;
+      }
+      state.apply(operation, key, value);
+      return true;
+    }
+
+    /**
+     * Reads a string prefixed by its length, or returns null if it runs past the payload.
+     */
+    private static String string(ByteBuffer record) {
+      int length = record.getInt();
+      if (length < 0 || length > record.remaining()) {
+        return null;
+      }
+      String value =
+          new String(record.array(), record.position(), length, StandardCharsets.UTF_8);
+      record.position(record.position() + length);
+      return value;
+    }
+  }
+}
@@ -0,0 +1,112 @@
+package com.google;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class used to keep the flags of a library across restarts.
+ *
+ * <p>Every flag and allow is appended to a {@link Journal} while the library holds its write
+ * lock, so the journal has them in the order they were made, and is on disk before the command
+ * making it reports success. On startup the events are folded into the reason of each flagged
+ * video, which the library applies in one pass. Looking up a flag never touches the journal.
+ * Once a change cannot be written flags keep working in memory, and {@link #getFailure} tells
+ * the sessions why they are not saved.
+ */
+class ModerationLog implements Closeable {
+
+  static final String NAME = "moderation";
+
+  static final byte FLAG = 1;
+  static final byte ALLOW = 2;
+
+  private final Journal journal;
+  // The first error writing the journal, after which no change is saved.
+  private volatile IOException failure;
+
+  private ModerationLog(Journal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Opens the log in the directory and flags the videos of the library flagged in it.
+   */
+  static ModerationLog open(Path directory, VideoLibrary library) throws IOException {
+    Journal.Recovered<Flags> opened = Journal.open(directory, NAME, Flags::new);
+    ModerationLog log = new ModerationLog(opened.getJournal());
+    library.restoreFlags(opened.getState().reasons, log);
+    return log;
+  }
+
+  /**
+   * Appends a flag, which becomes durable with the next commit.
+   * @return The sequence number to pass to {@link #commit}
+   */
+  long flagged(Video video, String reason) {
+    return journal.append(FLAG, video.getVideoId(), reason);
+  }
+
+  /**
+   * Appends the removal of a flag, which becomes durable with the next commit.
+   * @return The sequence number to pass to {@link #commit}
+   */
+  long allowed(Video video) {
+    return journal.append(ALLOW, video.getVideoId(), null);
+  }
+
+  /**
+   * Waits for the change to be on disk, along with those of other sessions.
+   */
+  void commit(long sequence) {
+    try {
+      journal.sync(sequence);
+    } catch (IOException e) {
+      // The journal fails every later sync the same way, so the first error is the reason.
+      if (failure == null) {
+        failure = e;
+      }
+    }
+  }
+
+  /**
+   * Returns why changes are no longer saved, or null if every change so far was.
+   */
+  IOException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Writes the changes not on disk yet and stops the journal.
+   */
+  @Override
+  public void close() throws IOException {
+    journal.close();
+  }
+
+  /**
+   * The reason of every flagged video by id, the last event for a video winning.
+   */
+  private static class Flags implements Journal.State {
+    private final HashMap<String, String> reasons = new HashMap<>();
+
+    @Override
+    public void apply(byte operation, String videoId, String reason) {
+      if (operation == FLAG) {
+        reasons.put(videoId, reason);
+      } else if (operation == ALLOW) {
+        reasons.remove(videoId);
+      }
+    }
+
+    @Override
+    public void write(Journal.Sink sink) throws IOException {
+      // Allowed videos are left out, so a snapshot only grows with the flagged ones.
+      for (Map.Entry<String, String> flag : reasons.entrySet()) {
+        sink.record(FLAG, flag.getKey(), flag.getValue());
+      }
+    }
+  }
+}
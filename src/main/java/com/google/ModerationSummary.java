@@ -0,0 +1,39 @@
+package com.google;
+
+/**
+ * A class used to report the outcome of flagging or allowing many videos at once.
+ */
+class ModerationSummary {
+
+  private final int requested;
+  private final int changed;
+  private final int unchanged;
+  private final int missing;
+
+  ModerationSummary(int requested, int changed, int unchanged, int missing) {
+    this.requested = requested;
+    this.changed = changed;
+    this.unchanged = unchanged;
+    this.missing = missing;
+  }
+
+  /** Returns the number of videos in the batch, counting repeated ids every time. */
+  int getRequested() {
+    return requested;
+  }
+
+  /** Returns the number of videos whose flag was set or removed. */
+  int getChanged() {
+    return changed;
+  }
+
+  /** Returns the number of videos which were already flagged, or already allowed. */
+  int getUnchanged() {
+    return unchanged;
+  }
+
+  /** Returns the number of ids which are not in the library. */
+  int getMissing() {
+    return missing;
+  }
+}
@@ -0,0 +1,353 @@
+package com.google;
+
+import java.util.Arrays;
+
+/**
+ * A class used to hold a compressed set of video ordinals.
+ *
+ * <p>Ordinals are split by their upper 16 bits into chunks of 65536. A sparse chunk is a sorted
+ * array of its lower 16 bits, a dense chunk is a bitset of 1024 words. AND, OR and AND NOT work
+ * chunk by chunk, on whole words wherever a chunk is dense, and skip chunks which cannot
+ * contribute to the result.
+ *
+ * <p>Bitmaps are immutable, so results share unchanged chunks with their inputs.
+ */
+class OrdinalBitmap {
+
+  // Chunks with more ordinals than this are kept as bitsets, which are then smaller.
+  private static final int ARRAY_MAX = 4096;
+  private static final int WORDS = 1024;
+
+  private static final int AND = 0;
+  private static final int OR = 1;
+  private static final int AND_NOT = 2;
+
+  static final OrdinalBitmap EMPTY = new OrdinalBitmap(new char[0], new Object[0]);
+
+  // Upper 16 bits of each chunk, sorted.
+  private final char[] keys;
+  // A char[] of sorted lower 16 bits, or a long[] bitset, for each key.
+  private final Object[] chunks;
+  private final int cardinality;
+
+  private OrdinalBitmap(char[] keys, Object[] chunks) {
+    this.keys = keys;
+    this.chunks = chunks;
+    int count = 0;
+    for (Object chunk : chunks) {
+      count += cardinality(chunk);
+    }
+    this.cardinality = count;
+  }
+
+  /**
+   * Returns a bitmap of the sorted, distinct ordinals.
+   */
+  static OrdinalBitmap of(int[] ordinals) {
+    Builder builder = new Builder();
+    int start = 0;
+    while (start < ordinals.length) {
+      int key = ordinals[start] >>> 16;
+      int end = start;
+      while (end < ordinals.length && ordinals[end] >>> 16 == key) {
+        end++;
+      }
+      if (end - start > ARRAY_MAX) {
+        long[] words = new long[WORDS];
+        for (int i = start; i < end; i++) {
+          words[(ordinals[i] & 0xffff) >>> 6] |= 1L << ordinals[i];
+        }
+        builder.add(key, words);
+      } else {
+        char[] low = new char[end - start];
+        for (int i = start; i < end; i++) {
+          low[i - start] = (char) ordinals[i];
+        }
+        builder.add(key, low);
+      }
+      start = end;
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns a bitmap of every ordinal from 0 up to the size.
+   */
+  static OrdinalBitmap range(int size) {
+    Builder builder = new Builder();
+    for (int key = 0; key << 16 < size && key <= 0xffff; key++) {
+      int count = Math.min(size - (key << 16), 1 << 16);
+      if (count > ARRAY_MAX) {
+        long[] words = new long[WORDS];
+        Arrays.fill(words, 0, count >>> 6, -1L);
+        if ((count & 63) != 0) {
+          words[count >>> 6] = (1L << count) - 1;
+        }
+        builder.add(key, words);
+      } else {
+        char[] low = new char[count];
+        for (int i = 0; i < count; i++) {
+          low[i] = (char) i;
+        }
+        builder.add(key, low);
+      }
+    }
+    return builder.build();
+  }
+
+  /** Returns the number of ordinals in the bitmap. */
+  int cardinality() {
+    return cardinality;
+  }
+
+  /** Returns whether the ordinal is in the bitmap. */
+  boolean contains(int ordinal) {
+    int index = Arrays.binarySearch(keys, (char) (ordinal >>> 16));
+    if (index < 0 || ordinal < 0) {
+      return false;
+    }
+    Object chunk = chunks[index];
+    if (chunk instanceof long[]) {
+      return (((long[]) chunk)[(ordinal & 0xffff) >>> 6] & (1L << ordinal)) != 0;
+    }
+    return Arrays.binarySearch((char[]) chunk, (char) ordinal) >= 0;
+  }
+
+  /** Returns the ordinals in both bitmaps. */
+  OrdinalBitmap and(OrdinalBitmap other) {
+    return combine(this, other, AND);
+  }
+
+  /** Returns the ordinals in either bitmap. */
+  OrdinalBitmap or(OrdinalBitmap other) {
+    return combine(this, other, OR);
+  }
+
+  /** Returns the ordinals in this bitmap but not in the other one. */
+  OrdinalBitmap andNot(OrdinalBitmap other) {
+    return combine(this, other, AND_NOT);
+  }
+
+  /**
+   * Returns the ordinals in ascending order.
+   */
+  int[] toArray() {
+    int[] ordinals = new int[cardinality];
+    int count = 0;
+    for (int i = 0; i < keys.length; i++) {
+      int high = keys[i] << 16;
+      if (chunks[i] instanceof long[]) {
+        long[] words = (long[]) chunks[i];
+        for (int w = 0; w < WORDS; w++) {
+          for (long word = words[w]; word != 0; word &= word - 1) {
+            ordinals[count++] = high | w << 6 | Long.numberOfTrailingZeros(word);
+          }
+        }
+      } else {
+        for (char low : (char[]) chunks[i]) {
+          ordinals[count++] = high | low;
+        }
+      }
+    }
+    return ordinals;
+  }
+
+  private static OrdinalBitmap combine(OrdinalBitmap a, OrdinalBitmap b, int op) {
+    Builder builder = new Builder();
+    int i = 0;
+    int j = 0;
+    while (i < a.keys.length || j < b.keys.length) {
+      int keyA = i < a.keys.length ? a.keys[i] : Integer.MAX_VALUE;
+      int keyB = j < b.keys.length ? b.keys[j] : Integer.MAX_VALUE;
+      if (keyA == keyB) {
+        builder.add(keyA, apply(a.chunks[i++], b.chunks[j++], op));
+      } else if (keyA < keyB) {
+        // Only in the first bitmap, kept as it is unless both are required.
+        if (op != AND) {
+          builder.add(keyA, a.chunks[i]);
+        }
+        i++;
+      } else {
+        if (op == OR) {
+          builder.add(keyB, b.chunks[j]);
+        }
+        j++;
+      }
+      if (op == AND && (i == a.keys.length || j == b.keys.length)) {
+        break;
+      }
+      if (op == AND_NOT && i == a.keys.length) {
+        break;
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Combines two chunks with the same key.
+   * @return The resulting chunk, or null if it is empty
+   */
+  private static Object apply(Object x, Object y, int op) {
+    if (x instanceof char[] && y instanceof char[]) {
+      return merge((char[]) x, (char[]) y, op);
+    }
+    if (op == AND && x instanceof char[]) {
+      return filter((char[]) x, (long[]) y, true);
+    }
+    if (op == AND && y instanceof char[]) {
+      return filter((char[]) y, (long[]) x, true);
+    }
+    if (op == AND_NOT && x instanceof char[]) {
+      return filter((char[]) x, (long[]) y, false);
+    }
+    long[] words = words(x).clone();
+    long[] other = words(y);
+    for (int w = 0; w < WORDS; w++) {
+      switch (op) {
+        case AND:
+          words[w] &= other[w];
+          break;
+        case OR:
+          words[w] |= other[w];
+          break;
+        default:
+          words[w] &= ~other[w];
+          break;
+      }
+    }
+    return compact(words);
+  }
+
+  /**
+   * Merges two sorted arrays of lower bits.
+   */
+  private static Object merge(char[] x, char[] y, int op) {
+    char[] result = new char[op == OR ? x.length + y.length : x.length];
+    int count = 0;
+    int i = 0;
+    int j = 0;
+    while (i < x.length && j < y.length) {
+      if (x[i] == y[j]) {
+        if (op != AND_NOT) {
+          result[count++] = x[i];
+        }
+        i++;
+        j++;
+      } else if (x[i] < y[j]) {
+        if (op != AND) {
+          result[count++] = x[i];
+        }
+        i++;
+      } else {
+        if (op == OR) {
+          result[count++] = y[j];
+        }
+        j++;
+      }
+    }
+    if (op != AND) {
+      while (i < x.length) {
+        result[count++] = x[i++];
+      }
+    }
+    if (op == OR) {
+      while (j < y.length) {
+        result[count++] = y[j++];
+      }
+    }
+    if (count > ARRAY_MAX) {
+      long[] words = new long[WORDS];
+      for (int k = 0; k < count; k++) {
+        words[result[k] >>> 6] |= 1L << result[k];
+      }
+      return words;
+    }
+    return count == 0 ? null : Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Keeps the lower bits which are set in the bitset, or which are not if keep is false.
+   */
+  private static Object filter(char[] low, long[] words, boolean keep) {
+    char[] result = new char[low.length];
+    int count = 0;
+    for (char value : low) {
+      if (((words[value >>> 6] & (1L << value)) != 0) == keep) {
+        result[count++] = value;
+      }
+    }
+    return count == 0 ? null : Arrays.copyOf(result, count);
+  }
+
+  private static long[] words(Object chunk) {
+    if (chunk instanceof long[]) {
+      return (long[]) chunk;
+    }
+    long[] words = new long[WORDS];
+    for (char value : (char[]) chunk) {
+      words[value >>> 6] |= 1L << value;
+    }
+    return words;
+  }
+
+  /**
+   * Turns a bitset back into an array once it is sparse enough.
+   */
+  private static Object compact(long[] words) {
+    int count = 0;
+    for (long word : words) {
+      count += Long.bitCount(word);
+    }
+    if (count > ARRAY_MAX) {
+      return words;
+    }
+    if (count == 0) {
+      return null;
+    }
+    char[] low = new char[count];
+    int k = 0;
+    for (int w = 0; w < WORDS; w++) {
+      for (long word = words[w]; word != 0; word &= word - 1) {
+        low[k++] = (char) (w << 6 | Long.numberOfTrailingZeros(word));
+      }
+    }
+    return low;
+  }
+
+  private static int cardinality(Object chunk) {
+    if (chunk instanceof char[]) {
+      return ((char[]) chunk).length;
+    }
+    int count = 0;
+    for (long word : (long[]) chunk) {
+      count += Long.bitCount(word);
+    }
+    return count;
+  }
+
+  /**
+   * Collects chunks in ascending key order, dropping empty ones.
+   */
+  private static class Builder {
+    private char[] keys = new char[4];
+    private Object[] chunks = new Object[4];
+    private int size;
+
+    void add(int key, Object chunk) {
+      if (chunk == null) {
+        return;
+      }
+      if (size == keys.length) {
+        keys = Arrays.copyOf(keys, size * 2);
+        chunks = Arrays.copyOf(chunks, size * 2);
+      }
+      keys[size] = (char) key;
+      chunks[size++] = chunk;
+    }
+
+    OrdinalBitmap build() {
+      return size == 0 ? EMPTY
+          : new OrdinalBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(chunks, size));
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package com.google;
+
+/**
+ * An interface used to write the text the player shows to the user.
+ */
+interface Output {
+
+  /** Writes the text. */
+  Output print(CharSequence text);
+
+  /** Writes a single character. */
+  Output print(char c);
+
+  /** Writes the text followed by a line separator. */
+  Output println(CharSequence text);
+
+  /** Writes a line separator. */
+  Output println();
+
+  /** Makes everything written so far visible to the user. */
+  void flush();
+}
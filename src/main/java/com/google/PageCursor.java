@@ -0,0 +1,97 @@
+package com.google;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class used to represent a position in the title ordered video listing.
+ *
+ * <p>The cursor remembers the last video of a page rather than an offset, so a page token stays
+ * valid while videos are added to or removed from the library.
+ *
+ * <p>Pages of a ranked search are ordered by score before title, so their cursors also remember
+ * the score of the last video.
+ */
+class PageCursor {
+
+  // Separates the title from the id, neither can contain a newline.
+  private static final char SEPARATOR = '\n';
+
+  private final Video last;
+  // Score of the last video in a ranked search, -1 in the title ordered listing.
+  private final int score;
+
+  private PageCursor(Video last, int score) {
+    this.last = last;
+    this.score = score;
+  }
+
+  /**
+   * Returns a cursor pointing just after the given video.
+   */
+  static PageCursor after(Video video) {
+    return new PageCursor(new Video(video.getTitle(), video.getVideoId(), List.of()), -1);
+  }
+
+  /**
+   * Returns a cursor pointing just after the given video in the ranked results for the term.
+   */
+  static PageCursor after(Video video, String searchTerm) {
+    return new PageCursor(new Video(video.getTitle(), video.getVideoId(), List.of()),
+        TitleIndex.score(searchTerm, video.getTitle()));
+  }
+
+  /**
+   * Decodes a page token.
+   * @throws IllegalArgumentException if the token is malformed
+   */
+  static PageCursor decode(String token) {
+    String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+    int split = value.indexOf(SEPARATOR);
+    if (split < 0) {
+      throw new IllegalArgumentException("Malformed page token: " + token);
+    }
+    int end = value.indexOf(SEPARATOR, split + 1);
+    int score = -1;
+    if (end >= 0) {
+      try {
+        score = Integer.parseInt(value.substring(end + 1));
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Malformed page token: " + token);
+      }
+    } else {
+      end = value.length();
+    }
+    return new PageCursor(
+        new Video(value.substring(0, split), value.substring(split + 1, end), List.of()), score);
+  }
+
+  /**
+   * Returns the page token for this cursor.
+   */
+  String encode() {
+    String value = last.getTitle() + SEPARATOR + last.getVideoId();
+    if (score >= 0) {
+      value += SEPARATOR + Integer.toString(score);
+    }
+    return Base64.getUrlEncoder().withoutPadding()
+        .encodeToString(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Returns the score of the last video in a ranked search, or -1 if the cursor is not ranked.
+   */
+  int getScore() {
+    return score;
+  }
+
+  /**
+   * Returns the position of the first video after the cursor in the title order.
+   */
+  int positionIn(List<Video> videos) {
+    int index = Collections.binarySearch(videos, last);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+}
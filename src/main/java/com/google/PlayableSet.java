@@ -0,0 +1,213 @@
+package com.google;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A class used to keep track of the videos which are not flagged.
+ *
+ * <p>The ordinals of the playable videos are kept densely packed in an array, removing one
+ * moves the last entry into its slot. Picking a random playable video therefore takes constant
+ * time and allocates nothing, whatever the size of the library.
+ *
+ * <p>Changes take a write lock, while picking a video is an optimistic read which only falls
+ * back to locking if a change happened at the same time.
+ *
+ * <p>While no video is flagged, which is how a compiled catalog starts, the set holds no arrays
+ * at all: every ordinal is playable and sits at its own slot. They are only built by the first
+ * flag.
+ */
+class PlayableSet {
+
+  private final List<Video> videos;
+  // Ordinals of the playable videos in no particular order, and the position of each ordinal
+  // in playable or -1 if the video is flagged. Both are null while every video is playable.
+  private int[] playable;
+  private int[] slots;
+  private int size;
+  private final StampedLock lock = new StampedLock();
+
+  /**
+   * Builds the set from the current flag state, the ordinal of a video being its position in
+   * the list.
+   */
+  PlayableSet(List<Video> videos) {
+    this(videos, flagged(videos));
+  }
+
+  /**
+   * Builds the set without looking at the videos, of which only the given ordinals are
+   * flagged.
+   */
+  PlayableSet(List<Video> videos, int[] flagged) {
+    this.videos = videos;
+    this.size = videos.size();
+    for (int ordinal : flagged) {
+      remove(ordinal);
+    }
+  }
+
+  private static int[] flagged(List<Video> videos) {
+    int[] flagged = new int[16];
+    int count = 0;
+    for (int i = 0; i < videos.size(); i++) {
+      if (videos.get(i).getIsFlagged()) {
+        if (count == flagged.length) {
+          flagged = Arrays.copyOf(flagged, count * 2);
+        }
+        flagged[count++] = i;
+      }
+    }
+    return Arrays.copyOf(flagged, count);
+  }
+
+  /** Returns the number of playable videos. */
+  int size() {
+    long stamp = lock.readLock();
+    try {
+      return size;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /** Returns whether the video with the ordinal is playable. */
+  boolean contains(int ordinal) {
+    long stamp = lock.readLock();
+    try {
+      return slots == null || slots[ordinal] >= 0;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Marks the video with the ordinal as playable.
+   */
+  void add(int ordinal) {
+    long stamp = lock.writeLock();
+    try {
+      if (slots != null && slots[ordinal] < 0) {
+        slots[ordinal] = size;
+        playable[size++] = ordinal;
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Marks the video with the ordinal as not playable.
+   */
+  void remove(int ordinal) {
+    long stamp = lock.writeLock();
+    try {
+      buildSlots();
+      int slot = slots[ordinal];
+      if (slot >= 0) {
+        int last = playable[--size];
+        playable[slot] = last;
+        slots[last] = slot;
+        slots[ordinal] = -1;
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Marks the videos with the first count ordinals as playable, locking once for all of them.
+   */
+  void addAll(int[] ordinals, int count) {
+    long stamp = lock.writeLock();
+    try {
+      for (int i = 0; i < count && slots != null; i++) {
+        int ordinal = ordinals[i];
+        if (slots[ordinal] < 0) {
+          slots[ordinal] = size;
+          playable[size++] = ordinal;
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Marks the videos with the first count ordinals as not playable, locking once for all of
+   * them.
+   */
+  void removeAll(int[] ordinals, int count) {
+    long stamp = lock.writeLock();
+    try {
+      if (count > 0) {
+        buildSlots();
+      }
+      for (int i = 0; i < count; i++) {
+        int ordinal = ordinals[i];
+        int slot = slots[ordinal];
+        if (slot >= 0) {
+          int last = playable[--size];
+          playable[slot] = last;
+          slots[last] = slot;
+          slots[ordinal] = -1;
+        }
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Returns a uniformly random playable video, or null if every video is flagged.
+   */
+  Video random() {
+    int ordinal = randomOrdinal();
+    return ordinal < 0 ? null : videos.get(ordinal);
+  }
+
+  /**
+   * Returns the ordinal of a uniformly random playable video, or -1 if every video is flagged.
+   */
+  int randomOrdinal() {
+    long stamp = lock.tryOptimisticRead();
+    int ordinal = pick();
+    if (!lock.validate(stamp)) {
+      stamp = lock.readLock();
+      try {
+        ordinal = pick();
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    }
+    return ordinal;
+  }
+
+  private int pick() {
+    int[] entries = playable;
+    int count = size;
+    if (count == 0) {
+      return -1;
+    }
+    // Under an optimistic read the entry may be stale, validation throws the pick away then.
+    int slot = ThreadLocalRandom.current().nextInt(count);
+    return entries == null ? slot : entries[slot];
+  }
+
+  /**
+   * Builds the arrays, with every video playable at its own slot, unless they are built.
+   * Callers hold the write lock.
+   */
+  private void buildSlots() {
+    if (slots == null) {
+      int[] identity = new int[videos.size()];
+      for (int i = 0; i < identity.length; i++) {
+        identity[i] = i;
+      }
+      playable = identity;
+      slots = identity.clone();
+    }
+  }
+}
@@ -0,0 +1,40 @@
+package com.google;
+
+/**
+ * A class used to hold the playback state of one user.
+ *
+ * <p>Each {@link VideoPlayer} owns one session, so users served by the same engine never see
+ * each other's current video. A session is driven by one thread at a time.
+ */
+class PlaybackSession {
+
+  // Stores the currently playing video
+  private Video current;
+  private boolean paused;
+
+  /** Returns the current video, or null if nothing is playing. */
+  Video getCurrent() {
+    return current;
+  }
+
+  /** Returns whether the current video is paused. */
+  boolean isPaused() {
+    return paused;
+  }
+
+  /** Starts playing a video from the beginning, unpaused. */
+  void play(Video video) {
+    this.current = video;
+    this.paused = false;
+  }
+
+  /** Stops the current video. */
+  void stop() {
+    this.current = null;
+    this.paused = false;
+  }
+
+  void setPaused(boolean paused) {
+    this.paused = paused;
+  }
+}
@@ -0,0 +1,45 @@
+package com.google;
+
+/**
+ * A class used to serve many users from one library.
+ *
+ * <p>Every session gets its own {@link VideoPlayer} with its own playback state and output,
+ * while the library, the flags and the playlists are shared by all sessions. Different
+ * sessions can run their commands on different threads at the same time.
+ */
+class PlayerEngine {
+
+  private final VideoLibrary videoLibrary;
+  private final PlaylistStore playlists;
+
+  PlayerEngine(VideoLibrary videoLibrary) {
+    this(videoLibrary, new PlaylistStore());
+  }
+
+  /**
+   * Creates an engine working on the given playlists, e.g. ones saved to disk.
+   */
+  PlayerEngine(VideoLibrary videoLibrary, PlaylistStore playlists) {
+    this.videoLibrary = videoLibrary;
+    this.playlists = playlists;
+  }
+
+  /**
+   * Opens a new session.
+   * @param out Where the output for the session's user is written to.
+   * @return The player for the session, to be used by one thread at a time.
+   */
+  VideoPlayer openSession(Output out) {
+    return new VideoPlayer(videoLibrary, playlists, out);
+  }
+
+  /** Returns the library shared by all sessions. */
+  VideoLibrary getVideoLibrary() {
+    return videoLibrary;
+  }
+
+  /** Returns the playlists shared by all sessions. */
+  PlaylistStore getPlaylists() {
+    return playlists;
+  }
+}
@@ -0,0 +1,81 @@
+package com.google;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A class used to hold the playlists by their ids only while their {@link Journal} is read.
+ *
+ * <p>Records are keyed by the playlist name as it was created, their value is the id of the
+ * video added or removed.
+ */
+class PlaylistJournal implements Journal.State {
+
+  static final String NAME = "playlists";
+
+  static final byte CREATE = 1;
+  static final byte ADD = 2;
+  static final byte REMOVE = 3;
+  static final byte CLEAR = 4;
+  static final byte DELETE = 5;
+
+  // Names as created and the video ids in order, keyed like the playlist store.
+  private final LinkedHashMap<String, String> names = new LinkedHashMap<>();
+  private final LinkedHashMap<String, LinkedHashSet<String>> videoIds = new LinkedHashMap<>();
+
+  @Override
+  public void apply(byte operation, String name, String videoId) {
+    String key = PlaylistStore.key(name);
+    if (operation == CREATE) {
+      if (names.putIfAbsent(key, name) == null) {
+        videoIds.put(key, new LinkedHashSet<>());
+      }
+      return;
+    }
+    LinkedHashSet<String> ids = videoIds.get(key);
+    if (ids == null) {
+      return;
+    }
+    switch (operation) {
+      case ADD:
+        ids.add(videoId);
+        break;
+      case REMOVE:
+        ids.remove(videoId);
+        break;
+      case CLEAR:
+        ids.clear();
+        break;
+      case DELETE:
+        names.remove(key);
+        videoIds.remove(key);
+        break;
+      default:
+        break;
+    }
+  }
+
+  @Override
+  public void write(Journal.Sink sink) throws IOException {
+    for (Map.Entry<String, String> playlist : names.entrySet()) {
+      sink.record(CREATE, playlist.getValue(), null);
+      for (String videoId : videoIds.get(playlist.getKey())) {
+        sink.record(ADD, playlist.getValue(), videoId);
+      }
+    }
+  }
+
+  /** Returns the names of the playlists as they were created. */
+  List<String> getNames() {
+    return new ArrayList<>(names.values());
+  }
+
+  /** Returns the ids of the videos in the playlist, in the order they were added. */
+  List<String> getVideoIds(String name) {
+    return new ArrayList<>(videoIds.get(PlaylistStore.key(name)));
+  }
+}
@@ -0,0 +1,219 @@
+package com.google;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class used to hold the playlists shared by all sessions of a player.
+ *
+ * <p>Playlists live in a {@link ConcurrentHashMap} keyed by lower-cased name, so looking one
+ * up never blocks and creating or deleting one only locks a single bin. Each playlist guards
+ * its own contents, so edits to different playlists never contend.
+ *
+ * <p>A store opened on a directory also writes every change to a {@link Journal} and
+ * recovers the playlists from it on startup. Changes to a playlist are logged while holding
+ * the playlist, so the log has them in the order they were made, and each change is on disk
+ * before the method making it returns. Once a change cannot be written the playlists keep
+ * working in memory, and {@link #getFailure} tells the sessions why they are not saved.
+ */
+class PlaylistStore implements Closeable {
+
+  private final ConcurrentHashMap<String, VideoPlaylist> playlists = new ConcurrentHashMap<>();
+  // Null if the playlists are only kept in memory.
+  private final Journal journal;
+  // The first error writing the journal, after which no change is saved.
+  private volatile IOException failure;
+
+  /**
+   * Creates a store which only keeps the playlists in memory.
+   */
+  PlaylistStore() {
+    this(null);
+  }
+
+  private PlaylistStore(Journal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Opens a store which keeps its playlists in the directory, recovering the ones saved there.
+   * @param library Resolves the saved video ids, videos no longer in it are left out
+   */
+  static PlaylistStore open(Path directory, VideoLibrary library) throws IOException {
+    Journal.Recovered<PlaylistJournal> opened =
+        Journal.open(directory, PlaylistJournal.NAME, PlaylistJournal::new);
+    PlaylistJournal recovered = opened.getState();
+    PlaylistStore store = new PlaylistStore(opened.getJournal());
+    for (String name : recovered.getNames()) {
+      VideoPlaylist playlist = new VideoPlaylist(name);
+      for (String videoId : recovered.getVideoIds(name)) {
+        if (library.getVideo(videoId) != null) {
+          playlist.add(videoId);
+        }
+      }
+      store.playlists.put(key(name), playlist);
+    }
+    return store;
+  }
+
+  /**
+   * Creates an empty playlist.
+   * @return The new playlist, or null if a playlist with the same name already exists
+   */
+  VideoPlaylist create(String name) {
+    VideoPlaylist playlist = new VideoPlaylist(name);
+    long sequence;
+    // Nobody can edit the playlist before its creation is logged.
+    synchronized (playlist) {
+      if (playlists.putIfAbsent(key(name), playlist) != null) {
+        return null;
+      }
+      sequence = log(playlist, PlaylistJournal.CREATE, null);
+    }
+    commit(sequence);
+    return playlist;
+  }
+
+  /**
+   * Returns the playlist with the name, ignoring case, or null if it does not exist.
+   */
+  VideoPlaylist get(String name) {
+    return playlists.get(key(name));
+  }
+
+  /**
+   * Deletes the playlist with the name, ignoring case.
+   * @return The deleted playlist, or null if it did not exist
+   */
+  VideoPlaylist delete(String name) {
+    VideoPlaylist playlist = playlists.get(key(name));
+    if (playlist == null) {
+      return null;
+    }
+    long sequence;
+    synchronized (playlist) {
+      sequence = log(playlist, PlaylistJournal.DELETE, null);
+      if (!playlists.remove(key(name), playlist)) {
+        return null;
+      }
+    }
+    commit(sequence);
+    return playlist;
+  }
+
+  /**
+   * Adds a video at the end of the playlist.
+   * @return false if the video was already in the playlist
+   */
+  boolean add(VideoPlaylist playlist, Video video) {
+    long sequence;
+    synchronized (playlist) {
+      if (!playlist.add(video.getVideoId())) {
+        return false;
+      }
+      sequence = log(playlist, PlaylistJournal.ADD, video.getVideoId());
+    }
+    commit(sequence);
+    return true;
+  }
+
+  /**
+   * Removes the video with the id from the playlist.
+   * @return false if it was not in the playlist
+   */
+  boolean remove(VideoPlaylist playlist, String videoId) {
+    long sequence;
+    synchronized (playlist) {
+      if (!playlist.remove(videoId)) {
+        return false;
+      }
+      sequence = log(playlist, PlaylistJournal.REMOVE, videoId);
+    }
+    commit(sequence);
+    return true;
+  }
+
+  /** Removes all videos from the playlist. */
+  void clear(VideoPlaylist playlist) {
+    long sequence;
+    synchronized (playlist) {
+      playlist.clear();
+      sequence = log(playlist, PlaylistJournal.CLEAR, null);
+    }
+    commit(sequence);
+  }
+
+  /** Returns whether there are no playlists. */
+  boolean isEmpty() {
+    return playlists.isEmpty();
+  }
+
+  /**
+   * Returns the names of all playlists as they were created, sorted.
+   */
+  List<String> getNames() {
+    List<String> names = new ArrayList<>();
+    for (VideoPlaylist playlist : playlists.values()) {
+      names.add(playlist.getName());
+    }
+    Collections.sort(names);
+    return names;
+  }
+
+  /**
+   * Returns why changes are no longer saved, or null if every change so far was.
+   */
+  IOException getFailure() {
+    return failure;
+  }
+
+  /**
+   * Writes the changes not on disk yet and stops the journal, if there is one.
+   */
+  @Override
+  public void close() throws IOException {
+    if (journal != null) {
+      journal.close();
+    }
+  }
+
+  /**
+   * Appends the change to the journal, unless the playlist was deleted in the meantime.
+   * @return The sequence number of the change, or 0 if it was not logged
+   */
+  private long log(VideoPlaylist playlist, byte operation, String videoId) {
+    if (journal == null || playlists.get(key(playlist.getName())) != playlist) {
+      return 0;
+    }
+    return journal.append(operation, playlist.getName(), videoId);
+  }
+
+  /**
+   * Waits for the change to be on disk, outside the lock of the playlist so the changes of
+   * other sessions join the same write.
+   */
+  private void commit(long sequence) {
+    if (sequence == 0) {
+      return;
+    }
+    try {
+      journal.sync(sequence);
+    } catch (IOException e) {
+      // The journal fails every later sync the same way, so the first error is the reason.
+      if (failure == null) {
+        failure = e;
+      }
+    }
+  }
+
+  static String key(String name) {
+    // Playlist names are not case sensitive.
+    return name.toLowerCase(Locale.ROOT);
+  }
+}
@@ -1,24 +1,66 @@
 package com.google;
 
-import java.util.Arrays;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 public class Run {
-  public static void main(String[] args){
+  public static void main(String[] args) throws IOException, InterruptedException {
     System.out.println("Hello and welcome to YouTube, what would you like to do? "
         + "Enter HELP for list of available commands or EXIT to terminate.");
-    var videoPlayer = new VideoPlayer();
-    var parser = new CommandParser(videoPlayer);
-    var scanner = new Scanner(System.in);
-    while (true) {
-      System.out.print("YT> ");
-      var input = scanner.nextLine();
-      if (input.equalsIgnoreCase("exit")) {
-        System.out.println("YouTube has now terminated its execution. " +
-            "Thank you and goodbye!");
-        return;
+    var videoLibrary = new VideoLibrary();
+    // Catalog updates are picked up without restarting.
+    CatalogWatcher watcher = watch(videoLibrary);
+    // Flags and playlists are kept between runs, in memory only if their directory cannot be
+    // used. The log and the store only need to be closed once the session ends.
+    Path data = Path.of(System.getProperty("youtube.data", "data"));
+    // What could not be set up, told to the user before the first prompt.
+    List<String> warnings = new ArrayList<>();
+    ModerationLog moderation = openModeration(data, videoLibrary, warnings);
+    PlaylistStore playlists = openPlaylists(data, videoLibrary, warnings);
+    try (watcher; moderation; playlists) {
+      var pipeline = new CommandPipeline(new PlayerEngine(videoLibrary, playlists));
+      for (String warning : warnings) {
+        pipeline.getOutput().println(warning);
       }
-      parser.executeCommand(Arrays.asList(input.split("\\s+")));
+      pipeline.run(new InputStreamReader(System.in), new OutputStreamWriter(System.out));
+    }
+  }
+
+  private static CatalogWatcher watch(VideoLibrary videoLibrary) {
+    if (videoLibrary.getCatalogPath() == null) {
+      return null;
+    }
+    try {
+      return new CatalogWatcher(videoLibrary);
+    } catch (IOException e) {
+      System.out.println("Couldn't watch " + videoLibrary.getCatalogPath() + " for changes");
+      return null;
+    }
+  }
+
+  private static ModerationLog openModeration(Path directory, VideoLibrary videoLibrary,
+      List<String> warnings) {
+    try {
+      return ModerationLog.open(directory, videoLibrary);
+    } catch (IOException e) {
+      warnings.add("Warning: flags will not be saved, couldn't open " + directory + " ("
+          + e.getMessage() + ')');
+      return null;
+    }
+  }
+
+  private static PlaylistStore openPlaylists(Path directory, VideoLibrary videoLibrary,
+      List<String> warnings) {
+    try {
+      return PlaylistStore.open(directory, videoLibrary);
+    } catch (IOException e) {
+      warnings.add("Warning: playlists will not be saved, couldn't open " + directory + " ("
+          + e.getMessage() + ')');
+      return new PlaylistStore();
     }
   }
 }
@@ -0,0 +1,120 @@
+package com.google;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A class used to give every distinct tag a small integer id.
+ *
+ * <p>Videos store the ids of their tags instead of strings, so a tag used by thousands of
+ * videos is held once. Every tag also knows the id of its normalized form, so tags which only
+ * differ in case, accents or their '#' match by comparing two ints.
+ *
+ * <p>Ids are never reused and the dictionary only grows. Looking up an id is lock-free, adding a
+ * new tag takes a lock.
+ */
+class TagDictionary {
+
+  private static final TagDictionary GLOBAL = new TagDictionary();
+
+  private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+  // Tags and the ids of their normalized form, by id. Arrays are replaced when they grow, and
+  // an entry is always written before its id is published through the map.
+  private volatile String[] tags = new String[64];
+  private volatile int[] keys = new int[64];
+  private int size;
+
+  /** Returns the dictionary shared by all videos. */
+  static TagDictionary global() {
+    return GLOBAL;
+  }
+
+  /**
+   * Returns the id of the tag, adding the tag if it is new.
+   */
+  int idOf(String tag) {
+    Integer id = ids.get(tag);
+    return id != null ? id : add(tag);
+  }
+
+  /**
+   * Returns the ids of the tags, adding the tags which are new.
+   */
+  int[] idsOf(List<String> tags) {
+    int[] tagIds = new int[tags.size()];
+    for (int i = 0; i < tagIds.length; i++) {
+      tagIds[i] = idOf(tags.get(i));
+    }
+    return tagIds;
+  }
+
+  /**
+   * Returns a read-only view of the tags with the ids.
+   */
+  List<String> asTags(int[] tagIds) {
+    return new AbstractList<>() {
+      @Override
+      public String get(int index) {
+        return tag(tagIds[index]);
+      }
+
+      @Override
+      public int size() {
+        return tagIds.length;
+      }
+    };
+  }
+
+  /**
+   * Returns the id of the tag, or -1 if the tag was never added.
+   */
+  int lookup(String tag) {
+    Integer id = ids.get(tag);
+    return id != null ? id : -1;
+  }
+
+  /**
+   * Returns the id of the normalized form of the tag, or -1 if no video ever carried it. Tags
+   * match if their keys are equal.
+   */
+  int keyOf(String tag) {
+    int id = lookup(TextAnalyzer.tag(tag));
+    return id < 0 ? -1 : keys[id];
+  }
+
+  /** Returns the tag with the id. */
+  String tag(int id) {
+    return tags[id];
+  }
+
+  /** Returns the id of the normalized form of the tag with the id. */
+  int key(int id) {
+    return keys[id];
+  }
+
+  /** Returns the number of tags, ids range from 0 to this number. */
+  int size() {
+    return ids.size();
+  }
+
+  private synchronized int add(String tag) {
+    Integer existing = ids.get(tag);
+    if (existing != null) {
+      return existing;
+    }
+    String normalized = TextAnalyzer.tag(tag);
+    // The normalized form is a tag of its own, its key being itself.
+    int key = normalized.equals(tag) ? size : add(normalized);
+    int id = size++;
+    if (id == tags.length) {
+      tags = Arrays.copyOf(tags, id * 2);
+      keys = Arrays.copyOf(keys, id * 2);
+    }
+    tags[id] = tag;
+    keys[id] = key;
+    ids.put(tag, id);
+    return id;
+  }
+}
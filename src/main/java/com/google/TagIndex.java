@@ -0,0 +1,160 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A class used to find videos by tag.
+ *
+ * <p>Each tag, normalized by the {@link TextAnalyzer}, maps to a sorted array of the ordinals
+ * of the videos carrying it, so a tag query is a single lookup instead of a scan over every tag
+ * of every video. Tags are matched by the integer key they have in the {@link TagDictionary},
+ * and the postings are an array indexed by that key.
+ */
+class TagIndex {
+
+  private static final int[] NO_POSTINGS = new int[0];
+
+  private final TagDictionary dictionary = TagDictionary.global();
+  private final List<Video> videos;
+  // Postings by the key of the normalized tag, null for keys no video carries.
+  private final int[][] postings;
+  // Bitmaps of the postings, built when a tag is first used in a boolean query.
+  private final AtomicReferenceArray<OrdinalBitmap> bitmaps;
+  private volatile OrdinalBitmap all;
+
+  /**
+   * Builds the index, the ordinal of a video being its position in the list.
+   */
+  TagIndex(List<Video> videos) {
+    this.videos = videos;
+    // Every tag of the videos already has an id, tags added later have no postings here.
+    int keyCount = dictionary.size();
+    int[] counts = new int[keyCount];
+    int[] last = new int[keyCount];
+    Arrays.fill(last, -1);
+    for (int i = 0; i < videos.size(); i++) {
+      for (int tagId : videos.get(i).getTagIds()) {
+        int key = dictionary.key(tagId);
+        // A video listing the same tag twice is only counted once.
+        if (last[key] != i) {
+          counts[key]++;
+          last[key] = i;
+        }
+      }
+    }
+    this.postings = new int[keyCount][];
+    for (int key = 0; key < keyCount; key++) {
+      if (counts[key] > 0) {
+        postings[key] = new int[counts[key]];
+        counts[key] = 0;
+      }
+    }
+    for (int i = 0; i < videos.size(); i++) {
+      for (int tagId : videos.get(i).getTagIds()) {
+        int key = dictionary.key(tagId);
+        int[] list = postings[key];
+        if (counts[key] == 0 || list[counts[key] - 1] != i) {
+          list[counts[key]++] = i;
+        }
+      }
+    }
+    this.bitmaps = new AtomicReferenceArray<>(keyCount);
+  }
+
+  /**
+   * Builds the index from postings prebuilt for the videos, for example by a
+   * {@link BinaryCatalog}.
+   * @param postings Sorted ordinals by normalized tag, owned by the index from now on
+   */
+  TagIndex(List<Video> videos, Map<String, int[]> postings) {
+    this.videos = videos;
+    int[][] byKey = new int[0][];
+    for (Map.Entry<String, int[]> tag : postings.entrySet()) {
+      int key = dictionary.key(dictionary.idOf(tag.getKey()));
+      if (key >= byKey.length) {
+        byKey = Arrays.copyOf(byKey, Math.max(key + 1, byKey.length * 2));
+      }
+      byKey[key] = tag.getValue();
+    }
+    this.postings = byKey;
+    this.bitmaps = new AtomicReferenceArray<>(byKey.length);
+  }
+
+  /**
+   * Returns the ordinals by normalized tag, the arrays must not be modified.
+   */
+  Map<String, int[]> getPostings() {
+    HashMap<String, int[]> byTag = new HashMap<>();
+    for (int key = 0; key < postings.length; key++) {
+      if (postings[key] != null) {
+        byTag.put(dictionary.tag(key), postings[key]);
+      }
+    }
+    return byTag;
+  }
+
+  /**
+   * Returns the ordinals of the videos carrying the tag, the array must not be modified.
+   */
+  int[] postings(String tag) {
+    return postings(dictionary.keyOf(tag));
+  }
+
+  /**
+   * Returns the ordinals of the videos carrying a tag with the key in the
+   * {@link TagDictionary}, the array must not be modified.
+   */
+  int[] postings(int key) {
+    if (key < 0 || key >= postings.length || postings[key] == null) {
+      return NO_POSTINGS;
+    }
+    return postings[key];
+  }
+
+  /**
+   * Returns the ordinals of the videos carrying the tag as a bitmap.
+   */
+  OrdinalBitmap bitmap(String tag) {
+    int key = dictionary.keyOf(tag);
+    if (key < 0 || key >= postings.length || postings[key] == null) {
+      return OrdinalBitmap.EMPTY;
+    }
+    OrdinalBitmap bitmap = bitmaps.get(key);
+    if (bitmap == null) {
+      // Two threads may both build it, the results are equal.
+      bitmap = OrdinalBitmap.of(postings[key]);
+      bitmaps.set(key, bitmap);
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns the ordinals of all videos as a bitmap, which negated tags are taken away from.
+   */
+  OrdinalBitmap all() {
+    OrdinalBitmap bitmap = all;
+    if (bitmap == null) {
+      bitmap = OrdinalBitmap.range(videos.size());
+      all = bitmap;
+    }
+    return bitmap;
+  }
+
+  /**
+   * Returns the videos carrying the tag, ignoring case, accents and a missing '#', in ordinal
+   * order.
+   */
+  List<Video> search(String tag) {
+    int[] ordinals = postings(tag);
+    List<Video> results = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      results.add(videos.get(ordinal));
+    }
+    return results;
+  }
+}
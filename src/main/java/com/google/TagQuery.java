@@ -0,0 +1,235 @@
+package com.google;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A class used to represent a boolean expression over tags, like
+ * {@code #cat AND #animal NOT #dog} or {@code (#cat OR #dog) AND NOT #flagged}.
+ *
+ * <p>NOT binds tightest, then AND, then OR. Tags next to each other without an operator are
+ * combined with AND, and NOT after a tag means AND NOT. Operators are not case sensitive.
+ *
+ * <p>A query is parsed once and can then be evaluated against any {@link TagIndex}. Every tag
+ * is a compressed bitmap, and the expression is evaluated with bitmap operations, starting each
+ * AND with its smallest operand.
+ */
+class TagQuery {
+
+  private final String text;
+  private final Node root;
+
+  private TagQuery(String text, Node root) {
+    this.text = text;
+    this.root = root;
+  }
+
+  /**
+   * Parses a query.
+   * @throws IllegalArgumentException if the query is not a valid expression
+   */
+  static TagQuery parse(String query) {
+    Parser parser = new Parser(tokenize(query));
+    Node root = parser.expression();
+    if (parser.position < parser.tokens.size()) {
+      throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.position));
+    }
+    return new TagQuery(query.strip(), root);
+  }
+
+  /**
+   * Returns the ordinals of the videos matching the query.
+   */
+  OrdinalBitmap evaluate(TagIndex index) {
+    return root.evaluate(index);
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+  private static List<String> tokenize(String query) {
+    List<String> tokens = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= query.length(); i++) {
+      char c = i < query.length() ? query.charAt(i) : ' ';
+      if (Character.isWhitespace(c) || c == '(' || c == ')') {
+        if (start >= 0) {
+          tokens.add(query.substring(start, i));
+          start = -1;
+        }
+        if (c != ' ' && !Character.isWhitespace(c)) {
+          tokens.add(String.valueOf(c));
+        }
+      } else if (start < 0) {
+        start = i;
+      }
+    }
+    return tokens;
+  }
+
+  private interface Node {
+    OrdinalBitmap evaluate(TagIndex index);
+  }
+
+  private static class Tag implements Node {
+    private final String tag;
+
+    Tag(String tag) {
+      this.tag = tag;
+    }
+
+    @Override
+    public OrdinalBitmap evaluate(TagIndex index) {
+      return index.bitmap(tag);
+    }
+  }
+
+  private static class Not implements Node {
+    private final Node operand;
+
+    Not(Node operand) {
+      this.operand = operand;
+    }
+
+    @Override
+    public OrdinalBitmap evaluate(TagIndex index) {
+      return index.all().andNot(operand.evaluate(index));
+    }
+  }
+
+  /**
+   * Videos matching every included operand and none of the excluded ones.
+   */
+  private static class And implements Node {
+    private final List<Node> included = new ArrayList<>();
+    private final List<Node> excluded = new ArrayList<>();
+
+    void add(Node operand) {
+      if (operand instanceof Not) {
+        excluded.add(((Not) operand).operand);
+      } else {
+        included.add(operand);
+      }
+    }
+
+    @Override
+    public OrdinalBitmap evaluate(TagIndex index) {
+      List<OrdinalBitmap> bitmaps = new ArrayList<>(included.size());
+      for (Node operand : included) {
+        bitmaps.add(operand.evaluate(index));
+      }
+      // The smallest bitmap first keeps every intermediate result small.
+      bitmaps.sort(Comparator.comparingInt(OrdinalBitmap::cardinality));
+      OrdinalBitmap result = bitmaps.isEmpty() ? index.all() : bitmaps.get(0);
+      for (int i = 1; i < bitmaps.size() && result.cardinality() > 0; i++) {
+        result = result.and(bitmaps.get(i));
+      }
+      for (int i = 0; i < excluded.size() && result.cardinality() > 0; i++) {
+        result = result.andNot(excluded.get(i).evaluate(index));
+      }
+      return result;
+    }
+  }
+
+  private static class Or implements Node {
+    private final List<Node> operands = new ArrayList<>();
+
+    @Override
+    public OrdinalBitmap evaluate(TagIndex index) {
+      OrdinalBitmap result = OrdinalBitmap.EMPTY;
+      for (Node operand : operands) {
+        result = result.or(operand.evaluate(index));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Recursive descent over the grammar:
+   * <pre>
+   * expression := term (OR term)*
+   * term       := factor ([AND] factor | NOT factor)*
+   * factor     := NOT factor | '(' expression ')' | tag
+   * </pre>
+   */
+  private static class Parser {
+    private final List<String> tokens;
+    private int position;
+
+    Parser(List<String> tokens) {
+      this.tokens = tokens;
+    }
+
+    Node expression() {
+      Node first = term();
+      if (!peek("OR")) {
+        return first;
+      }
+      Or or = new Or();
+      or.operands.add(first);
+      while (peek("OR")) {
+        position++;
+        or.operands.add(term());
+      }
+      return or;
+    }
+
+    private Node term() {
+      Node first = factor();
+      if (!startsFactor() && !peek("AND")) {
+        return first;
+      }
+      And and = new And();
+      and.add(first);
+      while (startsFactor() || peek("AND")) {
+        if (peek("AND")) {
+          position++;
+        }
+        // NOT after an operand excludes the next factor, which And does for any Not.
+        and.add(factor());
+      }
+      return and;
+    }
+
+    private Node factor() {
+      if (position == tokens.size()) {
+        throw new IllegalArgumentException(
+            tokens.isEmpty() ? "Empty tag query" : "Missing tag at the end");
+      }
+      String token = tokens.get(position++);
+      if (token.equalsIgnoreCase("NOT")) {
+        Node operand = factor();
+        // NOT NOT cancels out.
+        return operand instanceof Not ? ((Not) operand).operand : new Not(operand);
+      }
+      if (token.equals("(")) {
+        Node inner = expression();
+        if (!peek(")")) {
+          throw new IllegalArgumentException("Missing )");
+        }
+        position++;
+        return inner;
+      }
+      if (token.equals(")") || isOperator(token)) {
+        throw new IllegalArgumentException("Unexpected " + token);
+      }
+      return new Tag(token);
+    }
+
+    /** Returns whether the next token can start a factor, so an AND is implied before it. */
+    private boolean startsFactor() {
+      return position < tokens.size() && !peek(")") && !peek("OR") && !peek("AND");
+    }
+
+    private boolean peek(String token) {
+      return position < tokens.size() && tokens.get(position).equalsIgnoreCase(token);
+    }
+
+    private static boolean isOperator(String token) {
+      return token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR");
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.google;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * A class used to turn titles, tags and search terms into the keys they are matched by.
+ *
+ * <p>The same analysis runs when an index is built and when it is searched, so a search only
+ * compares keys it has computed once. Text is decomposed, its accents are dropped and its case
+ * is folded, so an accented title is found by a search typed without the accents. Words are
+ * runs of letters and digits, and a key holds the words separated by single spaces, so
+ * punctuation and spacing do not matter either. Apostrophes are dropped, keeping "don't" a
+ * single word.
+ *
+ * <p>A tag is keyed as its text after a single '#', whether or not it was written with one.
+ * Its case and accents are folded like those of a title, but its symbols are kept.
+ */
+class TextAnalyzer {
+
+  // The folded form of every char up to the end of Latin Extended-B, which holds most of the
+  // accented letters, so folding a single char needs no decomposition.
+  private static final char[] FOLDED = new char[0x250];
+
+  static {
+    for (char c = 0; c < FOLDED.length; c++) {
+      String decomposed = Normalizer.normalize(String.valueOf(c), Normalizer.Form.NFD);
+      FOLDED[c] = Character.toLowerCase(decomposed.charAt(0));
+    }
+  }
+
+  /**
+   * Returns the key of a title or search term.
+   */
+  static String key(String text) {
+    StringBuilder key = new StringBuilder(text.length());
+    appendKey(text, key);
+    return key.toString();
+  }
+
+  /**
+   * Appends the key of a title or search term, without building it on its own first.
+   */
+  static void appendKey(String text, StringBuilder key) {
+    // Most text is ASCII, which has no accents and folds char by char.
+    String source = isAscii(text) ? text : fold(text);
+    int start = key.length();
+    boolean separate = false;
+    for (int i = 0; i < source.length(); ) {
+      int c = source.codePointAt(i);
+      i += Character.charCount(c);
+      if (Character.isLetterOrDigit(c)) {
+        if (separate && key.length() > start) {
+          key.append(' ');
+        }
+        separate = false;
+        key.appendCodePoint(Character.toLowerCase(c));
+      } else if (!isIgnored(c)) {
+        separate = true;
+      }
+    }
+  }
+
+  /**
+   * Returns the key of a tag, like "#cat" for " #Cat", "cat" or "##CAT". Only case and accents
+   * are folded, so symbols still tell tags apart, like "#c++", "#c#" and "#c".
+   */
+  static String tag(String tag) {
+    String stripped = tag.strip();
+    int start = 0;
+    while (start < stripped.length() && stripped.charAt(start) == '#') {
+      start++;
+    }
+    String name = stripped.substring(start);
+    StringBuilder key = new StringBuilder(name.length() + 1).append('#');
+    if (isAscii(name)) {
+      return key.append(name.toLowerCase(Locale.ROOT)).toString();
+    }
+    String folded = fold(name);
+    for (int i = 0; i < folded.length(); ) {
+      int c = folded.codePointAt(i);
+      i += Character.charCount(c);
+      if (!isMark(c)) {
+        key.appendCodePoint(c);
+      }
+    }
+    return key.toString();
+  }
+
+  /**
+   * Folds the case and accent of a single char. Folding char by char keeps the length, so a
+   * prefix can be compared without building a folded copy, but letters folding to more than
+   * one char, like the German sharp s, are kept as they are.
+   */
+  static char fold(char c) {
+    return c < FOLDED.length ? FOLDED[c] : Character.toLowerCase(c);
+  }
+
+  /**
+   * Decomposes the text and folds its case. Upper-casing first folds the letters which lower
+   * case alone keeps apart, like the sharp s and "ss".
+   */
+  private static String fold(String text) {
+    String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+    return decomposed.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+  }
+
+  /**
+   * Returns whether the code point is left out of keys without ending a word, like the accents
+   * split off by decomposing.
+   */
+  private static boolean isIgnored(int c) {
+    return isMark(c) || c == '\'' || c == '\u2019';
+  }
+
+  /**
+   * Returns whether the code point combines with the one before it, like an accent.
+   */
+  private static boolean isMark(int c) {
+    switch (Character.getType(c)) {
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static boolean isAscii(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) >= 0x80) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
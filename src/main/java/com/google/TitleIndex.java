@@ -0,0 +1,753 @@
+package com.google;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * A class used to find videos whose titles contain a search term.
+ *
+ * <p>The key of every title, computed by the {@link TextAnalyzer}, is broken into trigrams, and
+ * each trigram maps to a sorted posting list of video ordinals. The posting lists are rows of
+ * one int array, found through a primitive hash table of the trigrams. A search intersects the
+ * posting lists of the trigrams in the key of the term and only checks the remaining candidates
+ * against the full key.
+ *
+ * <p>The keys are computed once and packed one after the other into a single string, with no
+ * object per title. Searches run the intrinsic {@link String#indexOf} across that string and
+ * map each occurrence back to its title, so checking a title allocates nothing and titles
+ * without an occurrence are skipped in bulk. A compiled catalog holds the packed keys already,
+ * and they are searched where they are mapped, with a plain scan instead of the intrinsic.
+ *
+ * <p>The trigram postings are buffers, so the ones a compiled catalog holds, written by
+ * {@link #writeTo}, are read where they are mapped instead of being built on every open.
+ */
+class TitleIndex {
+
+  private static final int[] NO_POSTINGS = new int[0];
+  // Chars of mapped keys copied at a time by a sweep.
+  private static final int WINDOW = 1 << 13;
+
+  private final List<Video> videos;
+  // Keys of the titles one after the other, the one of ordinal i running from keyStarts[i] to
+  // keyStarts[i + 1]. Computed once instead of on every search.
+  private final CharSequence keyText;
+  private final int[] keyStarts;
+  // The ordinals of the titles holding the trigram with id g are ordinals[offsets[g]] up to
+  // ordinals[offsets[g + 1]], ascending.
+  private final Trigrams trigrams;
+  private final IntBuffer offsets;
+  private final IntBuffer ordinals;
+  // A bit for the first character of every word after the first one, by ordinal, so ranking
+  // can tell that no word starts with a term without searching the title.
+  private final LongBuffer wordStarts;
+
+  /**
+   * Builds the index, the ordinal of a video being its position in the list.
+   */
+  TitleIndex(List<Video> videos) {
+    this(videos, null, null);
+  }
+
+  /**
+   * Builds the index over keys of the titles which are already packed, like the ones of a
+   * compiled catalog.
+   * @param keyText The keys one after the other, or null to compute them from the titles
+   * @param keyStarts The start of the key of every ordinal in the text, and the end of the last
+   */
+  TitleIndex(List<Video> videos, CharSequence keyText, int[] keyStarts) {
+    this.videos = videos;
+    if (keyText == null) {
+      // Titles which are all Latin-1 keep the text at one byte per char.
+      StringBuilder text = new StringBuilder(videos.size() * 32);
+      keyStarts = new int[videos.size() + 1];
+      for (int i = 0; i < videos.size(); i++) {
+        TextAnalyzer.appendKey(videos.get(i).getTitle(), text);
+        keyStarts[i + 1] = text.length();
+      }
+      keyText = text.toString();
+    }
+    this.keyText = keyText;
+    this.keyStarts = keyStarts;
+
+    // Trigrams get dense ids from a primitive hash table, and the postings of all of them are
+    // one array in compressed sparse row form. The first pass counts the titles per trigram,
+    // the second fills the rows, so nothing is boxed and no row is ever grown.
+    this.trigrams = new Trigrams();
+    long[] wordStarts = new long[videos.size()];
+    int[] counts = new int[1024];
+    int[] last = new int[1024];
+    Key key = new Key();
+    for (int i = 0; i < videos.size(); i++) {
+      load(key, i);
+      wordStarts[i] = wordStarts(key);
+      for (int at = key.start; at + 2 < key.end; at++) {
+        int id = trigrams.add(trigram(key.text, at));
+        if (id == counts.length) {
+          counts = Arrays.copyOf(counts, id * 2);
+          last = Arrays.copyOf(last, id * 2);
+        }
+        // A title holding a trigram twice is only counted once.
+        if (last[id] != i + 1) {
+          last[id] = i + 1;
+          counts[id]++;
+        }
+      }
+    }
+    int[] offsets = new int[trigrams.size() + 1];
+    for (int id = 0; id < trigrams.size(); id++) {
+      offsets[id + 1] = offsets[id] + counts[id];
+    }
+    int[] ordinals = new int[offsets[trigrams.size()]];
+    int[] fill = Arrays.copyOf(offsets, trigrams.size());
+    for (int i = 0; i < videos.size(); i++) {
+      load(key, i);
+      for (int at = key.start; at + 2 < key.end; at++) {
+        int id = trigrams.id(trigram(key.text, at));
+        if (fill[id] == offsets[id] || ordinals[fill[id] - 1] != i) {
+          ordinals[fill[id]++] = i;
+        }
+      }
+    }
+    this.offsets = IntBuffer.wrap(offsets);
+    this.ordinals = IntBuffer.wrap(ordinals);
+    this.wordStarts = LongBuffer.wrap(wordStarts);
+  }
+
+  /**
+   * Reads an index written by {@link #writeTo} in place, over the keys it was built from.
+   * @param postings The bytes written, big-endian
+   */
+  TitleIndex(List<Video> videos, CharSequence keyText, int[] keyStarts, ByteBuffer postings) {
+    this.videos = videos;
+    this.keyText = keyText;
+    this.keyStarts = keyStarts;
+    int slots = postings.getInt(0);
+    int size = postings.getInt(4);
+    int count = postings.getInt(8);
+    int at = 12;
+    LongBuffer grams = postings.slice(at, slots * 8).asLongBuffer();
+    at += slots * 8;
+    this.wordStarts = postings.slice(at, videos.size() * 8).asLongBuffer();
+    at += videos.size() * 8;
+    IntBuffer ids = postings.slice(at, slots * 4).asIntBuffer();
+    at += slots * 4;
+    this.trigrams = new Trigrams(grams, ids, size);
+    this.offsets = postings.slice(at, (size + 1) * 4).asIntBuffer();
+    at += (size + 1) * 4;
+    this.ordinals = postings.slice(at, count * 4).asIntBuffer();
+  }
+
+  /**
+   * Returns the number of bytes {@link #writeTo} writes.
+   */
+  long byteSize() {
+    return 12 + trigrams.grams.capacity() * 12L + wordStarts.capacity() * 8L
+        + offsets.capacity() * 4L + ordinals.capacity() * 4L;
+  }
+
+  /**
+   * Writes the trigram postings, big-endian, to be read in place by
+   * {@link #TitleIndex(List, CharSequence, int[], ByteBuffer)}. The title keys are not written.
+   */
+  void writeTo(DataOutput out) throws IOException {
+    out.writeInt(trigrams.grams.capacity());
+    out.writeInt(trigrams.size());
+    out.writeInt(ordinals.capacity());
+    for (int i = 0; i < trigrams.grams.capacity(); i++) {
+      out.writeLong(trigrams.grams.get(i));
+    }
+    for (int i = 0; i < wordStarts.capacity(); i++) {
+      out.writeLong(wordStarts.get(i));
+    }
+    writeInts(trigrams.ids, out);
+    writeInts(offsets, out);
+    writeInts(ordinals, out);
+  }
+
+  private static void writeInts(IntBuffer values, DataOutput out) throws IOException {
+    for (int i = 0; i < values.capacity(); i++) {
+      out.writeInt(values.get(i));
+    }
+  }
+
+  /**
+   * Returns the keys of the titles one after the other.
+   */
+  CharSequence getKeyText() {
+    return keyText;
+  }
+
+  /**
+   * Returns where the key of every ordinal starts in the key text, and where the last one ends.
+   */
+  int[] getKeyStarts() {
+    return keyStarts;
+  }
+
+  /**
+   * Returns the videos whose titles contain the term, ignoring case, accents and punctuation,
+   * in ordinal order. A term without words matches nothing.
+   */
+  List<Video> search(String term) {
+    int[] ordinals = matches(term);
+    List<Video> results = new ArrayList<>(ordinals.length);
+    for (int ordinal : ordinals) {
+      results.add(videos.get(ordinal));
+    }
+    return results;
+  }
+
+  /**
+   * Returns the ordinals of the titles containing the term, like {@link #search}, in ascending
+   * order.
+   */
+  int[] matches(String term) {
+    String key = TextAnalyzer.key(term);
+    if (key.isEmpty()) {
+      return NO_POSTINGS;
+    }
+    int[] candidates = candidates(key);
+    boolean sweep = sweeps(candidates);
+    Occurrences occurrences = new Occurrences(key, sweep);
+    Key title = new Key();
+    int count = candidates == null ? videos.size() : candidates.length;
+    int[] results = new int[candidates == null ? 16 : candidates.length];
+    int found = 0;
+    for (int i = 0; i < count; i++) {
+      int ordinal = candidates == null ? i : candidates[i];
+      load(title, ordinal);
+      int at = occurrences.next(title, title.start);
+      if (at >= 0 && at + key.length() <= title.end) {
+        if (found == results.length) {
+          results = Arrays.copyOf(results, found * 2);
+        }
+        results[found++] = ordinal;
+      } else if (sweep) {
+        if (at < 0) {
+          // No title after this one contains the term either.
+          break;
+        }
+        if (candidates == null && at >= title.end) {
+          // Skip straight to the title holding the next occurrence. One running over the end
+          // of this title is passed by moving on, which looks again from the next title.
+          i = ordinalAt(at, i) - 1;
+        }
+      }
+    }
+    return found == results.length ? results : Arrays.copyOf(results, found);
+  }
+
+  /**
+   * Returns the best matches for the term, best first, without sorting all matches.
+   *
+   * <p>Matches are ranked by {@link #score(String, String)}, and by ordinal if their scores are
+   * equal. Only the best matches are kept in a bounded heap while the candidates are scanned.
+   * A term without words matches nothing.
+   * @param after Position to continue after, null to start with the best match
+   * @param limit Maximum number of matches to return
+   * @param filter Ordinals which may be returned, checked only for matches good enough to keep
+   */
+  List<Video> rank(String term, PageCursor after, int limit, IntPredicate filter) {
+    String key = TextAnalyzer.key(term);
+    // Entries are the score in the upper half and the inverted ordinal in the lower half, so a
+    // larger entry is a better match. Anything ranked before the cursor is skipped.
+    long bound = Long.MAX_VALUE;
+    if (after != null) {
+      bound = entry(after.getScore(), after.positionIn(videos));
+    }
+    long[] heap = new long[Math.min(limit, videos.size())];
+    if (heap.length == 0 || key.isEmpty()) {
+      return List.of();
+    }
+    int size = 0;
+    int[] candidates = candidates(key);
+    Occurrences occurrences = new Occurrences(key, sweeps(candidates));
+    Key title = new Key();
+    int count = candidates == null ? videos.size() : candidates.length;
+    for (int i = 0; i < count; i++) {
+      int ordinal = candidates == null ? i : candidates[i];
+      load(title, ordinal);
+      int length = title.end - title.start;
+      // The score is bounded before the title is searched: titles which do not start with the
+      // term rank 1 at best, or 0 if no word starts like it, and occurrences only break ties.
+      // Most titles of a broad search are dropped here once the heap is full.
+      if (size == heap.length) {
+        int best = title.startsWith(key) ? 3
+            : (key.isEmpty() || (wordStarts.get(ordinal) & 1L << key.charAt(0)) != 0) ? 1 : 0;
+        if (entry(score(best, length, 0xff), ordinal) <= heap[0]) {
+          continue;
+        }
+      }
+      int rank = rankOf(occurrences, title);
+      if (rank < 0
+          || size == heap.length && entry(score(rank, length, 0xff), ordinal) <= heap[0]) {
+        continue;
+      }
+      int score = score(rank, length, count(occurrences, title));
+      long entry = entry(score, ordinal);
+      if (entry > bound || (size == heap.length && entry <= heap[0])
+          || !filter.test(ordinal)) {
+        continue;
+      }
+      if (size < heap.length) {
+        heap[size] = entry;
+        siftUp(heap, size++);
+      } else {
+        heap[0] = entry;
+        siftDown(heap, size);
+      }
+    }
+    // Taking the worst entry off the heap each time fills the results from the back.
+    Video[] results = new Video[size];
+    while (size > 0) {
+      long worst = heap[0];
+      heap[0] = heap[--size];
+      siftDown(heap, size);
+      results[size] = videos.get(Integer.MAX_VALUE - (int) worst);
+    }
+    return Arrays.asList(results);
+  }
+
+  /**
+   * Returns how well the title matches the term, higher being better, or -1 if the title does
+   * not contain the term. The whole title beats a prefix, which beats the start of a word, which
+   * beats any other position. Then shorter titles, and then more occurrences, rank higher.
+   */
+  static int score(String term, String title) {
+    Occurrences occurrences = new Occurrences(TextAnalyzer.key(term), false);
+    Key key = new Key();
+    key.text = TextAnalyzer.key(title);
+    key.end = key.text.length();
+    int rank = rankOf(occurrences, key);
+    return rank < 0 ? -1 : score(rank, key.end, count(occurrences, key));
+  }
+
+  /**
+   * Returns 3 if the title is the term, 2 if it starts with the term, 1 if a word does, 0 if it
+   * only contains the term elsewhere, and -1 if it does not contain the term.
+   */
+  private static int rankOf(Occurrences term, Key title) {
+    int rank = -1;
+    for (int at = term.next(title, title.start); at >= 0 && at + term.length() <= title.end;
+        at = term.next(title, at + 1)) {
+      if (at == title.start) {
+        return title.end - title.start == term.length() ? 3 : 2;
+      }
+      if (!Character.isLetterOrDigit(title.text.charAt(at - 1))) {
+        return 1;
+      }
+      rank = 0;
+    }
+    return rank;
+  }
+
+  private static long wordStarts(Key title) {
+    long bits = 0;
+    for (int i = title.start + 1; i < title.end; i++) {
+      if (!Character.isLetterOrDigit(title.text.charAt(i - 1))) {
+        bits |= 1L << title.text.charAt(i);
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Counts the occurrences of the term in the title which do not overlap.
+   */
+  private static int count(Occurrences term, Key title) {
+    if (term.length() == 0) {
+      return 1;
+    }
+    int count = 0;
+    for (int at = term.next(title, title.start); at >= 0 && at + term.length() <= title.end;
+        at = term.next(title, at + term.length())) {
+      count++;
+    }
+    return count;
+  }
+
+  private static int score(int rank, int length, int occurrences) {
+    return rank << 24 | (0xffff - Math.min(length, 0xffff)) << 8 | Math.min(occurrences, 0xff);
+  }
+
+  private static long entry(int score, int ordinal) {
+    return (long) score << 32 | (Integer.MAX_VALUE - ordinal);
+  }
+
+  private static void siftUp(long[] heap, int at) {
+    long entry = heap[at];
+    while (at > 0 && heap[(at - 1) >>> 1] > entry) {
+      heap[at] = heap[(at - 1) >>> 1];
+      at = (at - 1) >>> 1;
+    }
+    heap[at] = entry;
+  }
+
+  private static void siftDown(long[] heap, int size) {
+    long entry = heap[0];
+    int at = 0;
+    while (2 * at + 1 < size) {
+      int child = 2 * at + 1;
+      if (child + 1 < size && heap[child + 1] < heap[child]) {
+        child++;
+      }
+      if (heap[child] >= entry) {
+        break;
+      }
+      heap[at] = heap[child];
+      at = child;
+    }
+    heap[at] = entry;
+  }
+
+  /**
+   * Returns the ordinals whose titles may contain the key, in ascending order, or null if every
+   * title has to be checked.
+   */
+  private int[] candidates(String key) {
+    if (key.length() < 3) {
+      // Too short to have a trigram, so check every title.
+      return null;
+    }
+    // The rows of the trigrams, as their ids, shortest first so the candidates shrink fastest.
+    int[] rows = new int[key.length() - 2];
+    for (int i = 0; i < rows.length; i++) {
+      rows[i] = trigrams.id(trigram(key, i));
+      if (rows[i] < 0) {
+        return NO_POSTINGS;
+      }
+    }
+    long[] bySize = new long[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      bySize[i] = (long) (offsets.get(rows[i] + 1) - offsets.get(rows[i])) << 32 | rows[i];
+    }
+    Arrays.sort(bySize);
+    int first = (int) bySize[0];
+    int[] candidates = new int[offsets.get(first + 1) - offsets.get(first)];
+    ordinals.get(offsets.get(first), candidates);
+    int count = candidates.length;
+    for (int i = 1; i < bySize.length && count > 0; i++) {
+      int row = (int) bySize[i];
+      count = intersect(candidates, count, offsets.get(row), offsets.get(row + 1));
+    }
+    return count == candidates.length ? candidates : Arrays.copyOf(candidates, count);
+  }
+
+  /**
+   * Keeps the values of the candidates that are also in the range of the postings.
+   * @return The new number of candidates
+   */
+  private int intersect(int[] candidates, int count, int from, int to) {
+    int kept = 0;
+    int j = from;
+    for (int i = 0; i < count && j < to; i++) {
+      int value = candidates[i];
+      while (j < to && ordinals.get(j) < value) {
+        j++;
+      }
+      if (j < to && ordinals.get(j) == value) {
+        candidates[kept++] = value;
+      }
+    }
+    return kept;
+  }
+
+  /**
+   * Returns whether to sweep the packed keys for the term rather than search each candidate on
+   * its own. Sweeping wins unless the candidates are few and far apart, when it would mostly
+   * scan the titles between them.
+   */
+  private boolean sweeps(int[] candidates) {
+    return candidates == null || candidates.length >= videos.size() / 16;
+  }
+
+  /**
+   * Points the key at the key of the title of the ordinal.
+   */
+  private void load(Key key, int ordinal) {
+    key.text = keyText;
+    key.start = keyStarts[ordinal];
+    key.end = keyStarts[ordinal + 1];
+  }
+
+  /**
+   * Returns the ordinal of the title holding the position of the key text, which is not before
+   * the title of the given ordinal. Galloping forward finds a near title in a few steps and a
+   * far one in logarithmic time.
+   */
+  private int ordinalAt(int position, int from) {
+    int last = videos.size() - 1;
+    int low = from;
+    int high = from;
+    for (int step = 1; high < last && keyStarts[high + 1] <= position; step <<= 1) {
+      low = high + 1;
+      high = Math.min(last, high + step);
+    }
+    // The first title ending after the position, which skips empty titles.
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (keyStarts[middle + 1] > position) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the first occurrence of the term in the text at or after the position, or -1 if
+   * there is none. Keys in a string are searched with the intrinsic, mapped keys char by char.
+   */
+  private static int indexOf(CharSequence text, String term, int from) {
+    if (text instanceof String) {
+      return ((String) text).indexOf(term, from);
+    }
+    if (term.isEmpty()) {
+      return Math.min(Math.max(from, 0), text.length());
+    }
+    char first = term.charAt(0);
+    for (int at = Math.max(from, 0); at + term.length() <= text.length(); at++) {
+      if (text.charAt(at) == first && regionMatches(text, at, term)) {
+        return at;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns whether the term occurs in the text at the position, which leaves room for it.
+   */
+  private static boolean regionMatches(CharSequence text, int at, String term) {
+    if (text instanceof String) {
+      return ((String) text).startsWith(term, at);
+    }
+    for (int i = 0; i < term.length(); i++) {
+      if (text.charAt(at + i) != term.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long trigram(CharSequence key, int at) {
+    return ((long) key.charAt(at) << 32) | ((long) key.charAt(at + 1) << 16) | key.charAt(at + 2);
+  }
+
+  /**
+   * A class used to give every trigram a dense id, in an open-addressing table of primitive
+   * longs.
+   */
+  private static class Trigrams {
+    private LongBuffer grams;
+    private IntBuffer ids;
+    private int size;
+
+    Trigrams() {
+      this.grams = empty(1024);
+      this.ids = IntBuffer.allocate(1024);
+    }
+
+    /** Wraps a table which is already filled, like one written by {@link #writeTo}. */
+    Trigrams(LongBuffer grams, IntBuffer ids, int size) {
+      this.grams = grams;
+      this.ids = ids;
+      this.size = size;
+    }
+
+    int size() {
+      return size;
+    }
+
+    /** Returns the id of the trigram, or -1 if it was never added. */
+    int id(long gram) {
+      int mask = grams.capacity() - 1;
+      for (int slot = slot(gram, mask); grams.get(slot) != -1; slot = (slot + 1) & mask) {
+        if (grams.get(slot) == gram) {
+          return ids.get(slot);
+        }
+      }
+      return -1;
+    }
+
+    /** Returns the id of the trigram, giving it the next id if it is new. */
+    int add(long gram) {
+      int mask = grams.capacity() - 1;
+      int slot = slot(gram, mask);
+      for (; grams.get(slot) != -1; slot = (slot + 1) & mask) {
+        if (grams.get(slot) == gram) {
+          return ids.get(slot);
+        }
+      }
+      grams.put(slot, gram);
+      ids.put(slot, size);
+      // At most half of the slots are used, so probe sequences stay short.
+      if (++size * 2 > grams.capacity()) {
+        grow();
+      }
+      return size - 1;
+    }
+
+    private void grow() {
+      LongBuffer oldGrams = grams;
+      IntBuffer oldIds = ids;
+      grams = empty(oldGrams.capacity() * 2);
+      ids = IntBuffer.allocate(grams.capacity());
+      int mask = grams.capacity() - 1;
+      for (int i = 0; i < oldGrams.capacity(); i++) {
+        if (oldGrams.get(i) != -1) {
+          int slot = slot(oldGrams.get(i), mask);
+          while (grams.get(slot) != -1) {
+            slot = (slot + 1) & mask;
+          }
+          grams.put(slot, oldGrams.get(i));
+          ids.put(slot, oldIds.get(i));
+        }
+      }
+    }
+
+    private static int slot(long gram, int mask) {
+      return (int) ((gram * 0x9e3779b97f4a7c15L) >>> 40) & mask;
+    }
+
+    // Trigrams are at most 48 bits, so -1 marks an empty slot.
+    private static LongBuffer empty(int capacity) {
+      long[] grams = new long[capacity];
+      Arrays.fill(grams, -1);
+      return LongBuffer.wrap(grams);
+    }
+  }
+
+  /**
+   * The key of a title, as a range of a text. One key is reused for every title a search
+   * looks at.
+   */
+  private static class Key {
+    private CharSequence text;
+    private int start;
+    private int end;
+
+    boolean startsWith(String term) {
+      return end - start >= term.length() && regionMatches(text, start, term);
+    }
+
+    /**
+     * Returns the first occurrence of the term at or after the position within the title, or
+     * -1 if there is none.
+     */
+    int indexOf(String term, int from) {
+      if (start == 0 && end == text.length()) {
+        return TitleIndex.indexOf(text, term, from);
+      }
+      if (term.isEmpty()) {
+        return from <= end ? from : -1;
+      }
+      char first = term.charAt(0);
+      for (int at = from; at + term.length() <= end; at++) {
+        if (text.charAt(at) == first && regionMatches(text, at, term)) {
+          return at;
+        }
+      }
+      return -1;
+    }
+  }
+
+  /**
+   * Finds the occurrences of a term in titles.
+   *
+   * <p>Sweeping, it runs indexOf across the packed keys and remembers the next occurrence, which
+   * may be in a later title. A search asking for positions in ascending order then scans the
+   * text about once, and a title without an occurrence is rejected by comparing with the
+   * remembered one. Otherwise each title is searched on its own, which is cheaper when only the
+   * few candidates of a trigram search are checked.
+   */
+  private static class Occurrences {
+    private final String term;
+    private final boolean sweep;
+    private CharSequence text;
+    // The first occurrence at or after from, or -1 if there is none.
+    private int from;
+    private int next;
+    // Mapped keys are swept through a copy of their chars from windowStart to windowEnd, so
+    // looking for the first char of the term is a loop over an array.
+    private char[] window;
+    private int windowStart;
+    private int windowEnd;
+
+    Occurrences(String term, boolean sweep) {
+      this.term = term;
+      this.sweep = sweep;
+    }
+
+    int length() {
+      return term.length();
+    }
+
+    /**
+     * Returns the first occurrence at or after the position. Sweeping this may be past the end
+     * of the title, otherwise it is -1 if the title has none.
+     */
+    int next(Key title, int position) {
+      if (!sweep) {
+        return title.indexOf(term, position);
+      }
+      if (title.text != text || position < from || next >= 0 && position > next) {
+        this.text = title.text;
+        this.from = position;
+        this.next = text instanceof CharBuffer ? sweep((CharBuffer) text, position)
+            : indexOf(text, term, position);
+      }
+      return next;
+    }
+
+    private int sweep(CharBuffer keys, int position) {
+      if (term.isEmpty()) {
+        return indexOf(keys, term, position);
+      }
+      if (window == null) {
+        window = new char[WINDOW];
+      }
+      char first = term.charAt(0);
+      int last = keys.length() - term.length();
+      for (int at = Math.max(position, 0); at <= last; ) {
+        if (at < windowStart || at >= windowEnd) {
+          windowStart = at;
+          windowEnd = Math.min(at + WINDOW, keys.length());
+          keys.get(at, window, 0, windowEnd - at);
+        }
+        int end = Math.min(windowEnd, last + 1) - windowStart;
+        for (int i = at - windowStart; i < end; i++) {
+          if (window[i] == first && matches(keys, i)) {
+            return windowStart + i;
+          }
+        }
+        at = end + windowStart;
+      }
+      return -1;
+    }
+
+    /**
+     * Returns whether the term occurs at the index of the window, reading past the window from
+     * the keys themselves.
+     */
+    private boolean matches(CharBuffer keys, int index) {
+      if (index + term.length() > windowEnd - windowStart) {
+        return regionMatches(keys, windowStart + index, term);
+      }
+      for (int i = 1; i < term.length(); i++) {
+        if (window[index + i] != term.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package com.google;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A class used to keep the videos of a library sorted by title.
+ *
+ * <p>The array is sorted once when the library is loaded. Instances are immutable, adding or
+ * removing a video copies the array around a binary-searched position instead of sorting again.
+ */
+class TitleOrder {
+
+  private final Video[] videos;
+
+  TitleOrder(Collection<Video> videos) {
+    this.videos = videos.toArray(new Video[0]);
+    Arrays.sort(this.videos);
+  }
+
+  private TitleOrder(Video[] sorted) {
+    this.videos = sorted;
+  }
+
+  /**
+   * Wraps videos which are already sorted by title, like the records of a binary catalog.
+   * @param sorted The sorted videos, owned by the order from now on
+   */
+  static TitleOrder ofSorted(Video[] sorted) {
+    return new TitleOrder(sorted);
+  }
+
+  /** Returns the number of videos. */
+  int size() {
+    return videos.length;
+  }
+
+  /** Returns the video at the given position in title order. */
+  Video get(int index) {
+    return videos[index];
+  }
+
+  /**
+   * Returns the position of the video, or (-(insertion point) - 1) if it is not present.
+   */
+  int indexOf(Video video) {
+    return Arrays.binarySearch(videos, video);
+  }
+
+  /**
+   * Returns a copy with the video inserted at its place in title order.
+   */
+  TitleOrder withVideo(Video video) {
+    int index = indexOf(video);
+    if (index < 0) {
+      index = -index - 1;
+    }
+    Video[] sorted = new Video[videos.length + 1];
+    System.arraycopy(videos, 0, sorted, 0, index);
+    sorted[index] = video;
+    System.arraycopy(videos, index, sorted, index + 1, videos.length - index);
+    return new TitleOrder(sorted);
+  }
+
+  /**
+   * Returns a copy without the video, or this order if the video is not present.
+   */
+  TitleOrder withoutVideo(Video video) {
+    int index = indexOf(video);
+    if (index < 0 || !videos[index].equals(video)) {
+      return this;
+    }
+    Video[] sorted = new Video[videos.length - 1];
+    System.arraycopy(videos, 0, sorted, 0, index);
+    System.arraycopy(videos, index + 1, sorted, index, videos.length - index - 1);
+    return new TitleOrder(sorted);
+  }
+
+  /**
+   * Returns the videos in title order, the position of a video being its ordinal.
+   * The array is shared and must not be modified.
+   */
+  Video[] toArray() {
+    return videos;
+  }
+
+  /**
+   * Returns a read-only view of the videos in title order.
+   */
+  List<Video> asList() {
+    return new View();
+  }
+
+  private class View extends AbstractList<Video> implements RandomAccess {
+    @Override
+    public Video get(int index) {
+      return videos[index];
+    }
+
+    @Override
+    public int size() {
+      return videos.length;
+    }
+  }
+}
@@ -1,22 +1,45 @@
 package com.google;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
-/** A class used to represent a video. */
+/**
+ * A class used to represent a video.
+ *
+ * <p>Subclasses can be views whose data lives elsewhere, see {@link ColumnStore}. They override
+ * every accessor and the flag methods, and leave the fields of this class empty.
+ */
 class Video implements Comparable<Video>{
 
   private final String title;
   private final String videoId;
-  private final List<String> tags;
-  private boolean isFlagged;
-  private String flagReason;
+  // Ids of the tags in the global TagDictionary, in the order they were listed.
+  private final int[] tagIds;
+  // The flag reason, null while the video is not flagged. A single atomic value so that
+  // concurrent flag and allow commands can never leave a half updated state.
+  private final AtomicReference<String> flagReason;
 
   Video(String title, String videoId, List<String> tags) {
+    this(title, videoId, TagDictionary.global().idsOf(tags));
+  }
+
+  /**
+   * @param tagIds Ids of the tags in the global {@link TagDictionary}, owned by the video
+   */
+  Video(String title, String videoId, int[] tagIds) {
     this.title = title;
     this.videoId = videoId;
-    this.tags = Collections.unmodifiableList(tags);
-    this.isFlagged = false;
+    this.tagIds = tagIds;
+    this.flagReason = new AtomicReference<>();
+  }
+
+  /** Constructor for views, which keep no data in this class. */
+  Video() {
+    this.title = null;
+    this.videoId = null;
+    this.tagIds = null;
+    this.flagReason = null;
   }
 
   /** Returns the title of the video. */
@@ -31,32 +54,51 @@ class Video implements Comparable<Video>{
 
   /** Returns a readonly collection of the tags of the video. */
   List<String> getTags() {
-    return tags;
+    return TagDictionary.global().asTags(getTagIds());
+  }
+
+  /**
+   * Returns the ids of the tags in the global {@link TagDictionary}, the array must not be
+   * modified.
+   */
+  int[] getTagIds() {
+    return tagIds;
   }
 
+  /** Returns the flag reason, or null if the video is not flagged. */
   public String getFlagReason() {
-    return flagReason;
+    return flagReason.get();
   }
 
   public boolean getIsFlagged()
   {
-    return isFlagged;
+    return getFlagReason() != null;
   }
 
-  public void setFlagReason(String flagReason) {
-    this.flagReason = flagReason;
+  /**
+   * Flags the video unless it is already flagged.
+   * @return false if the video was already flagged
+   */
+  boolean flag(String reason) {
+    return flagReason.compareAndSet(null, Objects.requireNonNull(reason));
   }
 
-  public void setFlagged(boolean isFlagged) {
-    this.isFlagged = isFlagged;
+  /**
+   * Removes the flag from the video.
+   * @return false if the video was not flagged
+   */
+  boolean allow() {
+    return flagReason.getAndSet(null) != null;
   }
 
   /**
    * Returns a comparison in lexicograpical order to this video.
+   * Videos with the same title are ordered by id.
    */
   @Override
   public int compareTo(Video vidToCompare)
   {
-    return this.title.compareTo(vidToCompare.getTitle());
+    int byTitle = getTitle().compareTo(vidToCompare.getTitle());
+    return byTitle != 0 ? byTitle : getVideoId().compareTo(vidToCompare.getVideoId());
   }
 }
@@ -1,57 +1,504 @@
 package com.google;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A class used to represent a Video Library.
+ *
+ * <p>The catalog and its indexes are held in an immutable {@link CatalogSnapshot}. Reads go to
+ * the current snapshot without locking, edits build the next snapshot and publish it atomically.
+ * Once the edits of a snapshot need merging into a new base, the merge runs in the background
+ * and the edits made in the meantime are carried over to the merged snapshot.
+ *
+ * <p>A library loaded from a file can be reloaded while it is in use, see {@link #reload()}.
  */
 class VideoLibrary {
 
-  private final HashMap<String, Video> videos;
+  // Merges the changes of every library into a new base, one at a time.
+  private static final ExecutorService MERGER = Executors.newSingleThreadExecutor(runnable -> {
+    Thread thread = new Thread(runnable, "catalog-merger");
+    thread.setDaemon(true);
+    return thread;
+  });
 
+  private final CatalogLoader loader = new CatalogLoader();
+  // The catalog file, null if the catalog cannot be reloaded.
+  private final Path catalog;
+  private final CatalogLoader.Mark mark = new CatalogLoader.Mark();
+  private final Object reloadLock = new Object();
+  private final AtomicReference<CatalogSnapshot> snapshot;
+  // Serializes edits and flag changes, so the playable set always agrees with the flags.
+  private final Object writeLock = new Object();
+  // Saves flag changes, null if they are only kept in memory. Guarded by writeLock.
+  private ModerationLog moderation;
+  // The merge in progress and the videos whose flag changed since it started, both null if
+  // there is none. Guarded by writeLock.
+  private Future<?> merge;
+  private List<Video> flaggedDuringMerge;
+
+  /**
+   * Loads the library from the videos.txt bundled on the classpath.
+   */
   VideoLibrary() {
-    this.videos = new HashMap<>();
+    HashMap<String, Video> videos = new HashMap<>();
+    // Resolved to a file where possible, so the catalog can be reloaded.
+    this.catalog = CatalogLoader.resourcePath("/videos.txt");
+    try {
+      if (this.catalog != null) {
+        loader.loadChanges(this.catalog, this.mark, video -> addLoadedVideo(videos, video));
+      } else if (!loader.loadResource("/videos.txt", video -> addLoadedVideo(videos, video))) {
+        System.out.println("Couldn't find videos.txt");
+      }
+    } catch (IOException e) {
+      System.out.println("Couldn't read videos.txt");
+      e.printStackTrace();
+    }
+    this.snapshot = new AtomicReference<>(new CatalogSnapshot(videos));
+  }
+
+  /**
+   * Loads the library from a catalog file on the filesystem.
+   * @param catalog Path of a file in the videos.txt format
+   */
+  VideoLibrary(Path catalog) {
+    this(catalog, 1);
+  }
+
+  /**
+   * Loads the library from a catalog file on the filesystem.
+   * @param catalog Path of a file in the videos.txt format, or of a catalog compiled by
+   *     {@link CatalogCompiler} which is mapped and kept in a {@link ColumnStore}
+   * @param parallelism Number of threads parsing the file, 1 loads it sequentially
+   */
+  VideoLibrary(Path catalog, int parallelism) {
+    HashMap<String, Video> videos = new HashMap<>();
+    CatalogSnapshot compiled = null;
     try {
-      File file = new File(this.getClass().getResource("/videos.txt").getFile());
-
-      Scanner scanner = new Scanner(file);
-      while (scanner.hasNextLine()) {
-        String line = scanner.nextLine();
-        String[] split = line.split("\\|");
-        String title = split[0].strip();
-        String id = split[1].strip();
-        List<String> tags;
-        if (split.length > 2) {
-          tags = Arrays.stream(split[2].split(",")).map(String::strip).collect(
-              Collectors.toList());
+      if (BinaryCatalog.isBinary(catalog)) {
+        compiled = new CatalogSnapshot(new ColumnStore(BinaryCatalog.open(catalog)));
+      } else if (parallelism > 1) {
+        loader.loadParallel(catalog, parallelism, videos, this.mark);
+      } else {
+        loader.loadChanges(catalog, this.mark, video -> addLoadedVideo(videos, video));
+      }
+    } catch (IOException e) {
+      System.out.println("Couldn't read " + catalog);
+      e.printStackTrace();
+    }
+    // Compiled catalogs are replaced by compiling them again, not reloaded.
+    this.catalog = compiled == null ? catalog : null;
+    this.snapshot =
+        new AtomicReference<>(compiled != null ? compiled : new CatalogSnapshot(videos));
+  }
+
+  private static void addLoadedVideo(HashMap<String, Video> videos, Video video) {
+    // Later lines win over earlier ones with the same id.
+    videos.put(video.getVideoId(), video);
+  }
+
+  /**
+   * Returns the loader statistics, including the lines per second achieved.
+   */
+  CatalogLoader getLoadStats() {
+    return loader;
+  }
+
+  /**
+   * Returns the catalog file, or null if the library was loaded from a jar and cannot be
+   * reloaded.
+   */
+  Path getCatalogPath() {
+    return catalog;
+  }
+
+  /**
+   * Loads the changes made to the catalog file and publishes them as a new snapshot.
+   *
+   * <p>Only the lines appended since the last load are parsed if nothing before them changed,
+   * and they are applied as edits over the current base, costing in proportion to the lines
+   * rather than the catalog. Otherwise the whole file is parsed again and replaces the catalog,
+   * including videos added or removed through this library. Videos which are unchanged keep
+   * their instance, so sessions holding them are unaffected; changed videos keep their flag.
+   * @return false if the file has not changed
+   * @throws IllegalStateException if the library was not loaded from a file
+   */
+  boolean reload() throws IOException {
+    if (this.catalog == null) {
+      throw new IllegalStateException("Only a catalog loaded from a file can be reloaded");
+    }
+    // Parsing happens outside the write lock, so flags and edits are not held up by it.
+    synchronized (this.reloadLock) {
+      List<Video> loaded = new ArrayList<>();
+      CatalogLoader.Change change = loader.loadChanges(this.catalog, this.mark, loaded::add);
+      if (change == CatalogLoader.Change.UNCHANGED) {
+        return false;
+      }
+      synchronized (this.writeLock) {
+        CatalogSnapshot current = this.snapshot.get();
+        if (change == CatalogLoader.Change.APPENDED) {
+          // Appended lines are edits over the current base, like videos added through the
+          // library, so only their own indexes are built.
+          List<Video> changed = new ArrayList<>();
+          for (Video video : loaded) {
+            Video previous = current.getVideo(video.getVideoId());
+            Video carried = carryOver(previous, video);
+            if (carried != previous) {
+              changed.add(carried);
+            }
+          }
+          if (!changed.isEmpty()) {
+            publish(current.withChanges(changed, List.of()));
+          }
         } else {
-          tags = new ArrayList<>();
+          HashMap<String, Video> videos = new HashMap<>();
+          for (Video video : loaded) {
+            videos.put(video.getVideoId(),
+                carryOver(current.getVideo(video.getVideoId()), video));
+          }
+          publish(current.withVideos(videos));
         }
-        this.videos.put(id, new Video(title, id, tags));
       }
-      // Added close function to fix memory leak.
-      scanner.close();
-    } catch (FileNotFoundException e) {
-      System.out.println("Couldn't find videos.txt");
-      e.printStackTrace();
+      return true;
     }
   }
 
+  /**
+   * Returns the previous instance of a reloaded video if it did not change, otherwise the new
+   * instance with the flag of the previous one.
+   */
+  private static Video carryOver(Video previous, Video reloaded) {
+    if (previous == null) {
+      return reloaded;
+    }
+    if (previous.getTitle().equals(reloaded.getTitle())
+        && Arrays.equals(previous.getTagIds(), reloaded.getTagIds())) {
+      return previous;
+    }
+    String reason = previous.getFlagReason();
+    if (reason != null) {
+      reloaded.flag(reason);
+    }
+    return reloaded;
+  }
+
+  /**
+   * Returns the current version of the catalog. Callers needing several consistent reads,
+   * for example a search followed by a lookup, should use one snapshot for all of them.
+   */
+  CatalogSnapshot getSnapshot() {
+    return this.snapshot.get();
+  }
+
+  /**
+   * Returns a read-only view of all videos, sorted by title.
+   */
   List<Video> getVideos() {
-    return new ArrayList<>(this.videos.values());
+    return this.snapshot.get().getVideosByTitle();
+  }
+
+  /**
+   * Returns a read-only view of one page of videos sorted by title.
+   * @param cursor Position to start after, null to start with the first video
+   * @param pageSize Maximum number of videos on the page
+   */
+  List<Video> getVideosByTitle(PageCursor cursor, int pageSize) {
+    CatalogSnapshot current = this.snapshot.get();
+    int from = cursor == null ? 0 : cursor.positionIn(current.getVideosByTitle());
+    int to = (int) Math.min((long) from + pageSize, current.size());
+    return current.getVideosByTitle().subList(from, Math.max(from, to));
+  }
+
+  /**
+   * Adds a video to the library, replacing any video with the same id.
+   */
+  void addVideo(Video video) {
+    synchronized (this.writeLock) {
+      publish(this.snapshot.get().withVideo(video));
+    }
+  }
+
+  /**
+   * Removes a video from the library. Returns null if the video is not found.
+   */
+  Video removeVideo(String videoId) {
+    synchronized (this.writeLock) {
+      CatalogSnapshot current = this.snapshot.get();
+      Video removed = current.getVideo(videoId);
+      if (removed != null) {
+        publish(current.withoutVideo(videoId));
+      }
+      return removed;
+    }
+  }
+
+  /**
+   * Publishes the next snapshot, and starts merging its changes into a new base if they have
+   * grown too large. Called holding the write lock.
+   */
+  private void publish(CatalogSnapshot next) {
+    this.snapshot.set(next);
+    if (this.merge == null && next.needsMerge()) {
+      this.flaggedDuringMerge = new ArrayList<>();
+      this.merge = MERGER.submit(() -> merge(next));
+    }
+  }
+
+  /**
+   * Merges the changes of the snapshot into a new base outside the write lock, then publishes
+   * the current version of the catalog on top of it.
+   */
+  private void merge(CatalogSnapshot merged) {
+    CatalogLayer base = null;
+    try {
+      base = merged.mergeChanges();
+    } finally {
+      synchronized (this.writeLock) {
+        CatalogSnapshot current = this.snapshot.get();
+        CatalogSnapshot rebased = base == null ? null : current.rebase(merged, base);
+        List<Video> flagged = this.flaggedDuringMerge;
+        this.merge = null;
+        this.flaggedDuringMerge = null;
+        if (rebased != null) {
+          // The new base read the flags while they kept changing, so set those again.
+          for (Video video : flagged) {
+            rebased.setPlayable(video, !video.getIsFlagged());
+          }
+          publish(rebased);
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits until no merge of changes into a new base is running.
+   */
+  void awaitMerge() throws InterruptedException, ExecutionException {
+    while (true) {
+      Future<?> running;
+      synchronized (this.writeLock) {
+        running = this.merge;
+      }
+      if (running == null) {
+        return;
+      }
+      running.get();
+    }
+  }
+
+  /**
+   * Updates the playable set of the current snapshot after the flags of the videos changed.
+   * Called holding the write lock.
+   */
+  private void setPlayable(List<Video> videos, boolean playable) {
+    this.snapshot.get().setPlayable(videos, playable);
+    if (this.flaggedDuringMerge != null) {
+      this.flaggedDuringMerge.addAll(videos);
+    }
   }
 
   /**
    * Get a video by id. Returns null if the video is not found.
    */
   Video getVideo(String videoId) {
-    return this.videos.get(videoId);
+    return this.snapshot.get().getVideo(videoId);
+  }
+
+  /**
+   * Returns all videos whose titles contain the search term, ignoring case, accents and
+   * punctuation, sorted by title.
+   */
+  List<Video> findByTitle(String searchTerm) {
+    return this.snapshot.get().findByTitle(searchTerm);
+  }
+
+  /**
+   * Returns all videos whose titles have a word within a few typos of every word of the search
+   * term, the closest first.
+   */
+  List<Video> findByTitleFuzzy(String searchTerm) {
+    return this.snapshot.get().findByTitleFuzzy(searchTerm);
+  }
+
+  /**
+   * Returns the best playable matches for the search term, best first. Only the requested
+   * number of matches is kept and nothing else is sorted.
+   * @param cursor Ranked position to continue after, null to start with the best match
+   * @param limit Maximum number of videos to return
+   */
+  List<Video> findByTitle(String searchTerm, PageCursor cursor, int limit) {
+    return this.snapshot.get().findByTitle(searchTerm, cursor, limit);
+  }
+
+  /**
+   * Returns all videos carrying the tag, ignoring case, accents and a missing '#', sorted by
+   * title.
+   */
+  List<Video> findByTag(String videoTag) {
+    return this.snapshot.get().findByTag(videoTag);
+  }
+
+  /**
+   * Returns the videos matching a boolean tag query like {@code #cat AND #animal NOT #dog}, in
+   * title order.
+   * @throws IllegalArgumentException if the query is not a valid expression
+   */
+  List<Video> findByTags(String query) {
+    return this.snapshot.get().findByTags(TagQuery.parse(query));
+  }
+
+  /**
+   * Returns the completions of the current catalog. Completions found in it stay valid for it
+   * after the catalog changes, so look them up and read their labels from the same instance.
+   */
+  Autocomplete getAutocomplete() {
+    return this.snapshot.get().getAutocomplete();
+  }
+
+  /**
+   * Returns a uniformly random video which is not flagged, or null if all videos are flagged.
+   */
+  Video getRandomPlayableVideo() {
+    return this.snapshot.get().getRandomPlayableVideo();
+  }
+
+  /**
+   * Flags a video of this library so it can no longer be played.
+   * @return false if the video was already flagged
+   */
+  boolean flagVideo(Video video, String reason) {
+    ModerationLog log;
+    long sequence;
+    synchronized (this.writeLock) {
+      if (!video.flag(reason)) {
+        return false;
+      }
+      setPlayable(List.of(video), false);
+      log = this.moderation;
+      sequence = log == null ? 0 : log.flagged(video, reason);
+    }
+    // Waiting for the disk outside the lock lets other flags join the same write.
+    if (log != null) {
+      log.commit(sequence);
+    }
+    return true;
+  }
+
+  /**
+   * Removes the flag from a video of this library.
+   * @return false if the video was not flagged
+   */
+  boolean allowVideo(Video video) {
+    ModerationLog log;
+    long sequence;
+    synchronized (this.writeLock) {
+      if (!video.allow()) {
+        return false;
+      }
+      setPlayable(List.of(video), true);
+      log = this.moderation;
+      sequence = log == null ? 0 : log.allowed(video);
+    }
+    if (log != null) {
+      log.commit(sequence);
+    }
+    return true;
+  }
+
+  /**
+   * Flags many videos at once. The playable set is updated and the moderation log written
+   * once for the whole batch, instead of once per video.
+   * @param flags Pairs of a video id and the reason to flag it for
+   */
+  ModerationSummary flagVideos(Stream<Map.Entry<String, String>> flags) {
+    // The stream is read before locking, so a slow source does not hold up other changes.
+    List<Map.Entry<String, String>> batch = flags.collect(Collectors.toList());
+    return moderate(batch, true);
+  }
+
+  /**
+   * Removes the flags from many videos at once, like {@link #flagVideos}.
+   */
+  ModerationSummary allowVideos(Stream<String> videoIds) {
+    List<Map.Entry<String, String>> batch =
+        videoIds.map(videoId -> Map.entry(videoId, "")).collect(Collectors.toList());
+    return moderate(batch, false);
+  }
+
+  private ModerationSummary moderate(List<Map.Entry<String, String>> batch, boolean flag) {
+    List<Video> videos = new ArrayList<>(batch.size());
+    int changed = 0;
+    int missing = 0;
+    ModerationLog log;
+    long sequence = 0;
+    synchronized (this.writeLock) {
+      CatalogSnapshot current = this.snapshot.get();
+      log = this.moderation;
+      for (Map.Entry<String, String> entry : batch) {
+        Video video = current.getVideo(entry.getKey());
+        if (video == null) {
+          missing++;
+          continue;
+        }
+        if (flag ? !video.flag(entry.getValue()) : !video.allow()) {
+          continue;
+        }
+        changed++;
+        videos.add(video);
+        if (log != null) {
+          sequence = flag ? log.flagged(video, entry.getValue()) : log.allowed(video);
+        }
+      }
+      setPlayable(videos, !flag);
+    }
+    // One commit makes the whole batch durable.
+    if (sequence != 0) {
+      log.commit(sequence);
+    }
+    return new ModerationSummary(batch.size(), changed, batch.size() - changed - missing, missing);
+  }
+
+  /**
+   * Flags the videos recovered from a moderation log and saves later flag changes to it.
+   * Flags of videos which are not in the library are ignored.
+   * @param reasons The reason of each flagged video by id
+   */
+  void restoreFlags(Map<String, String> reasons, ModerationLog log) {
+    synchronized (this.writeLock) {
+      CatalogSnapshot current = this.snapshot.get();
+      List<Video> flagged = new ArrayList<>(reasons.size());
+      for (Map.Entry<String, String> flag : reasons.entrySet()) {
+        Video video = current.getVideo(flag.getKey());
+        if (video != null && video.flag(flag.getValue())) {
+          flagged.add(video);
+        }
+      }
+      setPlayable(flagged, false);
+      this.moderation = log;
+    }
+  }
+
+  /**
+   * Returns why flag changes are no longer saved, or null if every change so far was or flags
+   * are only kept in memory.
+   */
+  IOException getModerationFailure() {
+    ModerationLog log;
+    synchronized (this.writeLock) {
+      log = this.moderation;
+    }
+    return log == null ? null : log.getFailure();
   }
 }
@@ -1,55 +1,151 @@
 package com.google;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Iterator;
+import java.util.Collection;
 import java.util.List;
-import java.util.Random;
-import java.util.Vector;
-import java.util.Scanner;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class VideoPlayer {
   
+  // The reader of System.in answers are read from outside a pipeline, and the stream it reads.
+  private static InputStream stdinSource;
+  private static BufferedReader stdin;
+
   private final VideoLibrary videoLibrary;
-  // Stores the currently playing video
-  private Video currVid;
-  private boolean isPaused;
-  // A hashmap of vectors with videos in them. For easy access and variable growth.
-  private HashMap<String,Vector<Video>> playlists = new HashMap<String,Vector<Video>>();
-  private Vector<String> playlistNames = new Vector<String>();
+  // Everything shown to the user goes through here, it is flushed once per command.
+  private final Output out;
+  // Reused to render one line of video details at a time.
+  private final StringBuilder line = new StringBuilder();
+  // Videos offered by the last search until the user answers which one to play, or null.
+  private List<Video> pendingChoice;
+  // Whether answers come in through answer instead of being read from System.in right away.
+  private boolean deferredAnswers;
+  // Reused to receive the completions of each keystroke.
+  private final int[] completions = new int[Autocomplete.MAX_RESULTS];
+  // Stores the currently playing video and whether it is paused.
+  private final PlaybackSession session = new PlaybackSession();
+  // Playlists, possibly shared with the other sessions of an engine.
+  private final PlaylistStore playlists;
+  // Whether this session was told that the playlists or the flags are no longer saved.
+  private boolean toldPlaylistsUnsaved;
+  private boolean toldFlagsUnsaved;
 
   /**
    * VideoPlayer default Constructor
    */
   public VideoPlayer() {
-    this.videoLibrary = new VideoLibrary();
-    // isPaused is false because video has not been paused.
-    this.isPaused = false;
+    this(new VideoLibrary(), new BufferedOutput(System.out));
+  }
+
+  /**
+   * VideoPlayer Constructor
+   * @param videoLibrary The library to play videos from.
+   * @param out Where the output for the user is written to.
+   */
+  VideoPlayer(VideoLibrary videoLibrary, Output out) {
+    this(videoLibrary, new PlaylistStore(), out);
+  }
+
+  /**
+   * VideoPlayer Constructor for one session of a shared engine.
+   * @param videoLibrary The library to play videos from.
+   * @param playlists The playlists to work on.
+   * @param out Where the output for the user is written to.
+   */
+  VideoPlayer(VideoLibrary videoLibrary, PlaylistStore playlists, Output out) {
+    this.videoLibrary = videoLibrary;
+    this.playlists = playlists;
+    this.out = out;
+  }
+
+  /**
+   * Returns where the output for the user is written to.
+   */
+  Output getOutput() {
+    return out;
   }
 
   /**
    * Prints number of videos in the videoLibrary.
    */
   public void numberOfVideos() {
-    System.out.printf("%s videos in the library%n", videoLibrary.getVideos().size());
+    out.println(videoLibrary.getVideos().size() + " videos in the library");
+    out.flush();
   }
 
   /**
   * Shows all the videos in the library.
   */
   public void showAllVideos() {
-    System.out.println("Here's a list of all available videos:");
-    // Get videos as a list and sort lexicographically
-    List<Video> vidList = videoLibrary.getVideos();
-    Collections.sort(vidList);
-    // Stream to loop through videos.
-    vidList.stream().forEach(vid -> 
+    out.println("Here's a list of all available videos:");
+    // The library keeps its videos sorted lexicographically.
+    printVideos(videoLibrary.getVideos());
+    out.flush();
+  }
+
+  /**
+   * Shows one page of the videos in the library.
+   * @param pageSize Maximum number of videos to show
+   * @param pageToken Token printed with the previous page, null for the first page
+   */
+  public void showAllVideos(int pageSize, String pageToken)
+  {
+    if(pageSize <= 0)
+    {
+      out.println("Cannot show videos: Page size must be a positive number");
+      out.flush();
+      return;
+    }
+    PageCursor cursor = null;
+    if(pageToken != null)
+    {
+      try
+      {
+        cursor = PageCursor.decode(pageToken);
+      }
+      catch(IllegalArgumentException ex)
+      {
+        out.println("Cannot show videos: Invalid page token");
+        out.flush();
+        return;
+      }
+    }
+    // Ask for one extra video to find out whether there is a next page.
+    List<Video> page = videoLibrary.getVideosByTitle(cursor, pageSize + 1);
+    boolean hasMore = page.size() > pageSize;
+    if(hasMore)
+    {
+      page = page.subList(0, pageSize);
+    }
+    out.println("Here's a list of all available videos:");
+    printVideos(page);
+    if(hasMore)
     {
-      printVideoDetails(vid);
-      // Seperates lines into new lines.
-      System.out.println();
-    });
+      out.println("More videos available, next page token: "
+          + PageCursor.after(page.get(pageSize - 1)).encode());
+    }
+    out.flush();
+  }
+
+  /**
+   * Prints one line per video, the output writes them out in large chunks.
+   * @param vids The videos to print.
+   */
+  private void printVideos(Collection<Video> vids)
+  {
+    for(Video vid : vids)
+    {
+      out.println(renderVideoDetails(vid));
+    }
   }
 
   //TODO: move this to Video.java
@@ -59,30 +155,37 @@ public class VideoPlayer {
    */
   public void printVideoDetails(Video vid)
   {
-    System.out.print(vid.getTitle() + " (" + vid.getVideoId() + ") [");
-      List<String> tags = vid.getTags();
-      int tagLen = tags.size();
-      // If there are tags loop through the list of tags and print.
-      if(tagLen > 0)
-      {
-        for(int i = 0;i < tagLen; i++)
-        {
-          if(i != tagLen-1)
-          {
-            System.out.print(tags.get(i) + " ");
-          }
-          else
-          {
-            System.out.print(tags.get(i));
-          }
-        }
-      }
-      System.out.print(']');
+    out.print(renderVideoDetails(vid));
+  }
 
-      if(vid.getIsFlagged())
+  /**
+   * Renders the video's details into the reused line buffer.
+   * @param vid The video to be rendered.
+   * @return The line buffer, valid until the next call.
+   */
+  private StringBuilder renderVideoDetails(Video vid)
+  {
+    line.setLength(0);
+    line.append(vid.getTitle()).append(" (").append(vid.getVideoId()).append(") [");
+    List<String> tags = vid.getTags();
+    int tagLen = tags.size();
+    // Tags are separated by spaces.
+    for(int i = 0;i < tagLen; i++)
+    {
+      if(i != 0)
       {
-        System.out.print(" - FLAGGED (reason: " + vid.getFlagReason() + ')');
+        line.append(' ');
       }
+      line.append(tags.get(i));
+    }
+    line.append(']');
+
+    String flagReason = vid.getFlagReason();
+    if(flagReason != null)
+    {
+      line.append(" - FLAGGED (reason: ").append(flagReason).append(')');
+    }
+    return line;
   }
 
   /**
@@ -91,137 +194,127 @@ public class VideoPlayer {
    */
   public void playVideo(String videoId) {
     Video identifiedVid = this.videoLibrary.getVideo(videoId);
+    // Read the flag once, another session may change it at any time.
+    String flagReason = identifiedVid == null ? null : identifiedVid.getFlagReason();
+    Video currVid = this.session.getCurrent();
     if(identifiedVid == null)
     {
-      System.out.println("Cannot play video: Video does not exist");
-    }
-    else if(this.currVid != null && !identifiedVid.getIsFlagged())
-    {
-      System.out.println("Stopping video: " + this.currVid.getTitle());
-      // Set the identified video as the current video.
-      this.currVid = identifiedVid;
-      // song is no longer paused and starts playing if paused.
-      this.isPaused = false;
-      System.out.println("Playing video: " + this.currVid.getTitle());
+      out.println("Cannot play video: Video does not exist");
     }
-    else if(!identifiedVid.getIsFlagged())
+    else if(flagReason != null)
     {
-      // Occurs when no video is currently playing.
-      this.currVid = identifiedVid;
-      System.out.println("Playing video: " + this.currVid.getTitle());
+      out.println("Cannot play video: Video is currently flagged (reason: " + flagReason + ')');
     }
     else
     {
-      System.out.println("Cannot play video: Video is currently flagged (reason: " + identifiedVid.getFlagReason() + ')');
+      if(currVid != null)
+      {
+        out.println("Stopping video: " + currVid.getTitle());
+      }
+      // Set the identified video as the current video, it starts playing if paused.
+      this.session.play(identifiedVid);
+      out.println("Playing video: " + identifiedVid.getTitle());
     }
+    out.flush();
   }
 
   /**
    * Stops currently playing video
    */
   public void stopVideo() {
-    if(this.currVid != null)
+    Video currVid = this.session.getCurrent();
+    if(currVid != null)
     {
-      System.out.println("Stopping video: " + this.currVid.getTitle());
-      this.currVid = null;
+      out.println("Stopping video: " + currVid.getTitle());
+      this.session.stop();
     }
     else
     {
-      System.out.println("Cannot stop video: No video is currently playing");
+      out.println("Cannot stop video: No video is currently playing");
     }
+    out.flush();
   }
 
   /**
    * Plays a random video
    */
   public void playRandomVideo() {
-    List<Video> videos = this.videoLibrary.getVideos();
-    int noOfVids = videos.size();
-    
-    boolean areAllFlagged = true;
-    ArrayList<Video> unflaggedVids = new ArrayList<Video>();
-
-    for(int i = 0; i < noOfVids; i++)
-    {
-      Video currVid = videos.get(i);
-      if(!currVid.getIsFlagged())
-      {
-        areAllFlagged = false;
-        unflaggedVids.add(currVid);
-      }
-    }
-
-    if(areAllFlagged)
+    // The library keeps the unflagged videos ready to pick from.
+    Video randomVid = this.videoLibrary.getRandomPlayableVideo();
+    if(randomVid == null)
     {
-      System.out.println("No videos available");
+      out.println("No videos available");
     }
     else
     {
-      Random generator = new Random();
-      int randomVid = generator.nextInt(unflaggedVids.size());
-      String vidID = unflaggedVids.get(randomVid).getVideoId();
-      playVideo(vidID);
+      playVideo(randomVid.getVideoId());
     }
-    
+    out.flush();
   }
 
   /**
    * Pauses a video
    */
   public void pauseVideo() {
-    if(this.currVid == null)
+    Video currVid = this.session.getCurrent();
+    if(currVid == null)
     {
-      System.out.println("Cannot pause video: No video is currently playing");
+      out.println("Cannot pause video: No video is currently playing");
     }
-    else if(this.isPaused)
+    else if(this.session.isPaused())
     {
-      System.out.println("Video already paused: " + this.currVid.getTitle());
+      out.println("Video already paused: " + currVid.getTitle());
     }
     else
     {
-      this.isPaused = true;
-      System.out.println("Pausing video: " + this.currVid.getTitle());
+      this.session.setPaused(true);
+      out.println("Pausing video: " + currVid.getTitle());
     }
+    out.flush();
   }
 
   /**
    * Continues a paused video
    */
   public void continueVideo() {
+    Video currVid = this.session.getCurrent();
     // If no video is playing or selected.
-    if(this.currVid == null)
+    if(currVid == null)
     {
-      System.out.println("Cannot continue video: No video is currently playing");
+      out.println("Cannot continue video: No video is currently playing");
     }
-    else if(this.isPaused)
+    else if(this.session.isPaused())
     {
       // Unpausing video
-      System.out.println("Continuing video: " + this.currVid.getTitle());
-      this.isPaused = false;
+      out.println("Continuing video: " + currVid.getTitle());
+      this.session.setPaused(false);
     }
     else
     {
-      System.out.println("Cannot continue video: Video is not paused");
+      out.println("Cannot continue video: Video is not paused");
     }
+    out.flush();
   }
 
   /**
    * Shows the currently playing video.
    */
   public void showPlaying() {
-    if(this.currVid == null)
+    Video currVid = this.session.getCurrent();
+    if(currVid == null)
     {
-      System.out.println("No video is currently playing");
+      out.println("No video is currently playing");
     }
     else
     {
-      System.out.print("Currently playing: ");
-      printVideoDetails(this.currVid);
-      if(this.isPaused)
+      out.print("Currently playing: ");
+      printVideoDetails(currVid);
+      if(this.session.isPaused())
       {
-        System.out.println(" - PAUSED");
+        out.println(" - PAUSED");
       }
     }
+    out.flush();
   }
 
   /**
@@ -229,21 +322,17 @@ public class VideoPlayer {
    * @param playlistName The name of the playlist to create.
    */
   public void createPlaylist(String playlistName) {
-    // Playlist is made lowercase since it is not case sensitive.
-    String tempPlaylistName = playlistName.toLowerCase();
-    // If the playlist does not exist
-    if(playlists.get(tempPlaylistName) == null)
+    // The store only creates the playlist if no other one has the same name.
+    if(playlists.create(playlistName) != null)
     {
-      // Add the playlist to the HashMap
-      playlists.put(tempPlaylistName,new Vector<Video>());
-      // Storing original playlist name
-      playlistNames.add(playlistName);
-      System.out.println("Successfully created new playlist: " + playlistName);
+      out.println("Successfully created new playlist: " + playlistName);
     }
     else
     {
-      System.out.println("Cannot create playlist: A playlist with the same name already exists");
+      out.println("Cannot create playlist: A playlist with the same name already exists");
     }
+    warnIfPlaylistsUnsaved();
+    out.flush();
   }
 
   /**
@@ -252,58 +341,52 @@ public class VideoPlayer {
    * @param videoId ID of the video to add
    */
   public void addVideoToPlaylist(String playlistName, String videoId) {
-    String tempPlaylistName = playlistName.toLowerCase();
     // Get the playlist and video associated with the input.
-    Vector<Video> currPlaylist = this.playlists.get(tempPlaylistName);
+    VideoPlaylist currPlaylist = this.playlists.get(playlistName);
     Video vidToAdd = videoLibrary.getVideo(videoId);
+    String flagReason = vidToAdd == null ? null : vidToAdd.getFlagReason();
     if(currPlaylist == null)
     {
-      System.out.println("Cannot add video to " + playlistName + ": Playlist does not exist");
+      out.println("Cannot add video to " + playlistName + ": Playlist does not exist");
     }
     else if(vidToAdd == null)
     {
-      System.out.println("Cannot add video to " + playlistName + ": Video does not exist");
+      out.println("Cannot add video to " + playlistName + ": Video does not exist");
     }
-    else if(currPlaylist.contains(vidToAdd) && !vidToAdd.getIsFlagged())
+    else if(flagReason != null)
     {
-      // If the video is already in the playlist display error
-      System.out.println("Cannot add video to " + playlistName + ": Video already added");
+      out.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " + flagReason + ')');
     }
-    else if(!vidToAdd.getIsFlagged())
+    else if(playlists.add(currPlaylist, vidToAdd))
     {
-      // Test if the video was successfully added to playlist and add it to global playlist
-      boolean isAdded = currPlaylist.add(vidToAdd);
-      if(isAdded)
-      {
-        System.out.println("Added video to " + playlistName + ": " + vidToAdd.getTitle());
-      }
-      else
-      {
-        System.out.println("Cannot add video to " + playlistName + ": Failed to add video to playlist");
-      }
+      out.println("Added video to " + playlistName + ": " + vidToAdd.getTitle());
     }
     else
     {
-      System.out.println("Cannot add video to " + playlistName + ": Video is currently flagged (reason: " + vidToAdd.getFlagReason() + ')');
+      // If the video is already in the playlist display error
+      out.println("Cannot add video to " + playlistName + ": Video already added");
     }
+    warnIfPlaylistsUnsaved();
+    out.flush();
   }
 
   /**
    * Shows all created playlists.
    */
   public void showAllPlaylists() {
-    if(playlists.size() == 0)
+    //Sort before printing playlists
+    List<String> playlistNames = playlists.getNames();
+    if(playlistNames.isEmpty())
     {
-      System.out.println("No playlists exist yet");
+      out.println("No playlists exist yet");
     }
     else
     {
-      System.out.println("Showing all playlists:");
-      //Sort before printing playlists
-      Collections.sort(playlistNames);
+      out.println("Showing all playlists:");
       // Stream to print all playlists.
-      playlistNames.stream().forEach(System.out::println);
+      playlistNames.stream().forEach(out::println);
     }
+    out.flush();
   }
 
   /**
@@ -312,30 +395,36 @@ public class VideoPlayer {
    */
   public void showPlaylist(String playlistName) {
     // Retrieve the playlist
-    Vector<Video> vids = playlists.get(playlistName.toLowerCase());
-    if(vids == null)
+    VideoPlaylist playlist = playlists.get(playlistName);
+    if(playlist == null)
     {
-      System.out.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
+      out.println("Cannot show playlist " + playlistName + ": Playlist does not exist");
     }
     else
     {
-      System.out.println("Showing playlist: " + playlistName);
-      
+      out.println("Showing playlist: " + playlistName);
+      // Show the videos as they are in the current catalog, which may have been reloaded;
+      // videos removed from it since are left out.
+      List<Video> vids = new ArrayList<>();
+      for(String videoId : playlist.getVideoIds())
+      {
+        Video vid = videoLibrary.getVideo(videoId);
+        if(vid != null)
+        {
+          vids.add(vid);
+        }
+      }
       if(vids.size() == 0)
       {
-        System.out.println("No videos here yet");
+        out.println("No videos here yet");
       }
       else
       {
-        // Print all values in vector.
-        vids.stream().forEach(vid -> {
-          printVideoDetails(vid);
-          System.out.println();
-        });
+        // Print all videos in the order they were added.
+        printVideos(vids);
       }
     }
-    
-  
+    out.flush();
   }
 
   /**
@@ -344,45 +433,33 @@ public class VideoPlayer {
    * @param videoId - Id of the video to remove
    */
   public void removeFromPlaylist(String playlistName, String videoId) {
-    String tempListName = playlistName.toLowerCase();
-    if(playlists.get(tempListName) != null)
+    VideoPlaylist playlist = playlists.get(playlistName);
+    if(playlist != null)
     {
-      if(videoLibrary.getVideo(videoId) != null)
+      Video vidToRemove = videoLibrary.getVideo(videoId);
+      if(vidToRemove != null)
       {
-        Vector<Video> vids = playlists.get(tempListName);
-        int lenVids = vids.size();
-        boolean vidExists = false;
-        ArrayList<String> tempList = new ArrayList<String>();
-        Video vidToRemove = new Video("temp","tempID",tempList);
-
-        for(int i = 0; i < lenVids; i++)
+        // Removing by id is a single lookup in the playlist.
+        if(playlists.remove(playlist, videoId))
         {
-          vidToRemove = vids.get(i);
-          if(vidToRemove.getVideoId().equals(videoId))
-          {
-            vidExists = true;
-            System.out.println("Removed video from " + playlistName + ": " + vidToRemove.getTitle());
-            vids.remove(i);
-
-            // Exit loop
-            i = lenVids;
-          }
+          out.println("Removed video from " + playlistName + ": " + vidToRemove.getTitle());
         }
-
-        if(!vidExists)
+        else
         {
-          System.out.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
+          out.println("Cannot remove video from " + playlistName + ": Video is not in playlist");
         }
       }
       else
       {
-        System.out.println("Cannot remove video from " + playlistName + ": Video does not exist");
+        out.println("Cannot remove video from " + playlistName + ": Video does not exist");
       }
     }
     else
     {
-      System.out.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
+      out.println("Cannot remove video from " + playlistName + ": Playlist does not exist");
     }
+    warnIfPlaylistsUnsaved();
+    out.flush();
   }
 
   /**
@@ -390,17 +467,18 @@ public class VideoPlayer {
    * @param playlistName Name of the playlist to clear
    */
   public void clearPlaylist(String playlistName) {
-    String tempListName = playlistName.toLowerCase();
-    Vector<Video> vids = playlists.get(tempListName);
+    VideoPlaylist vids = playlists.get(playlistName);
     if(vids == null)
     {
-      System.out.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
+      out.println("Cannot clear playlist " + playlistName + ": Playlist does not exist");
     }
     else
     {
-      System.out.println("Successfully removed all videos from " + playlistName);
-      vids.removeAllElements();
+      out.println("Successfully removed all videos from " + playlistName);
+      playlists.clear(vids);
     }
+    warnIfPlaylistsUnsaved();
+    out.flush();
   }
 
   /**
@@ -408,16 +486,27 @@ public class VideoPlayer {
    * @param playlistName The name of the playllst to be deleted.
    */
   public void deletePlaylist(String playlistName) {
-    String tempListName = playlistName.toLowerCase();
-    if(playlists.get(tempListName) != null)
+    if(playlists.delete(playlistName) != null)
     {
-      playlists.remove(tempListName);
-      playlistNames.remove(playlistName);
-      System.out.println("Deleted playlist: " + playlistName);
+      out.println("Deleted playlist: " + playlistName);
     }
     else
     {
-      System.out.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
+      out.println("Cannot delete playlist " + playlistName + ": Playlist does not exist");
+    }
+    warnIfPlaylistsUnsaved();
+    out.flush();
+  }
+
+  /**
+   * Tells the user, once per session, that changes to playlists are no longer saved.
+   */
+  private void warnIfPlaylistsUnsaved() {
+    IOException failure = playlists.getFailure();
+    if(failure != null && !toldPlaylistsUnsaved)
+    {
+      toldPlaylistsUnsaved = true;
+      out.println("Warning: playlists are no longer saved (" + failure.getMessage() + ')');
     }
   }
 
@@ -426,98 +515,232 @@ public class VideoPlayer {
    * @param searchTerm The term in the video title to search for
    */
   public void searchVideos(String searchTerm) {
-    List<Video> vids = videoLibrary.getVideos();
-    String smallTerm = searchTerm.toLowerCase();
-    Iterator<Video> it = vids.iterator();
+    // Only candidates from the title index are checked, the flagged ones are dropped.
+    List<Video> vids = videoLibrary.findByTitle(searchTerm);
+    vids.removeIf(Video::getIsFlagged);
+    
+    if(vids.size() > 0)
+    {
+      // Displays results
+      displaySearchResults(searchTerm, vids);
+    }
+    else
+    {
+      out.println("No search results for " + searchTerm);
+    }
+    out.flush();
+  }
+
+  /**
+   * Searches for videos by title, allowing for typos in the search term
+   * @param searchTerm Words which the words of the video title may differ from by a few edits
+   */
+  public void searchVideosFuzzy(String searchTerm) {
+    List<Video> vids = videoLibrary.findByTitleFuzzy(searchTerm);
+    vids.removeIf(Video::getIsFlagged);
+
+    if(vids.size() > 0)
+    {
+      displaySearchResults(searchTerm, vids);
+    }
+    else
+    {
+      out.println("No search results for " + searchTerm);
+    }
+    out.flush();
+  }
 
-    while(it.hasNext())
+  /**
+   * Searches for the best matches for a search term, one page at a time.
+   * @param searchTerm The term the titles have to contain
+   * @param pageSize Maximum number of results to show
+   * @param pageToken Token from the previous page of the same search, or null for the first page
+   */
+  public void searchVideosRanked(String searchTerm, int pageSize, String pageToken)
+  {
+    if(pageSize <= 0)
+    {
+      out.println("Cannot search videos: Page size must be a positive number");
+      out.flush();
+      return;
+    }
+    PageCursor cursor = null;
+    if(pageToken != null)
     {
-      Video currVid = it.next();
-      if(!currVid.getTitle().toLowerCase().contains(smallTerm) || currVid.getIsFlagged())
+      try
+      {
+        cursor = PageCursor.decode(pageToken);
+      }
+      catch(IllegalArgumentException ex)
+      {
+        cursor = null;
+      }
+      if(cursor == null || cursor.getScore() < 0)
       {
-        it.remove();
+        out.println("Cannot search videos: Invalid page token");
+        out.flush();
+        return;
       }
     }
-    
+    // Ask for one extra video to find out whether there is a next page.
+    List<Video> vids = videoLibrary.findByTitle(searchTerm, cursor, pageSize + 1);
+    String nextToken = null;
+    if(vids.size() > pageSize)
+    {
+      vids = vids.subList(0, pageSize);
+      nextToken = PageCursor.after(vids.get(pageSize - 1), searchTerm).encode();
+    }
+
     if(vids.size() > 0)
     {
-      // Displays results
-      displaySearchResults(searchTerm, vids);
+      displaySearchResults(searchTerm, vids, nextToken);
     }
     else
     {
-      System.out.println("No search results for " + searchTerm);
+      out.println("No search results for " + searchTerm);
     }
+    out.flush();
   }
 
   /**
    * Displays results of a search
    * @param searchTerm The tag or search string
-   * @param vids The list of videos satisfying the search
+   * @param vids The list of videos satisfying the search, sorted by title
    */
   public void displaySearchResults(String searchTerm, List<Video> vids)
   {
-    System.out.println("Here are the results for " + searchTerm + ':');
+    displaySearchResults(searchTerm, vids, null);
+  }
+
+  /**
+   * Displays one page of results of a search
+   * @param searchTerm The tag or search string
+   * @param vids The videos on this page, in the order to show them
+   * @param nextToken Token for the next page, or null if this is the last one
+   */
+  private void displaySearchResults(String searchTerm, List<Video> vids, String nextToken)
+  {
+    out.println("Here are the results for " + searchTerm + ':');
       int noOfVids = vids.size();
-      Collections.sort(vids);
       for(int i = 0; i < noOfVids; i++)
       {
-        System.out.print(i+1 + ") ");
+        out.print(i+1 + ") ");
         printVideoDetails(vids.get(i));
-        System.out.println();
+        out.println();
       }
-      System.out.println("Would you like to play any of the above? If yes, specify the number of the video.\nIf your answer is not a valid number, we will assume it's a no.");
-      var scanner = new Scanner(System.in);
-      var option = scanner.nextLine();
-      scanner.close();
-      try
+      if(nextToken != null)
       {
-        int number = Integer.parseInt(option) - 1;
-        if(number < noOfVids)
-        {
-          playVideo(vids.get(number).getVideoId());
-        }
+        out.println("More results available, next page token: " + nextToken);
       }
-      catch(NumberFormatException ex)
+      out.println("Would you like to play any of the above? If yes, specify the number of the video.\nIf your answer is not a valid number, we will assume it's a no.");
+      // The question has to be visible before waiting for the answer.
+      out.flush();
+      pendingChoice = vids;
+      if(!deferredAnswers)
       {
-        System.out.println();
+        answer(readAnswer());
       }
   }
 
   /**
-   * Searches for videos by tag
-   * @param videoTag Tag to search by
+   * Reads the next line of System.in, or returns an empty line at its end. All players share
+   * one reader, since a reader per question would buffer ahead and swallow the lines after the
+   * answer. It is replaced if System.in is.
    */
-  public void searchVideosWithTag(String videoTag) {
-    List<Video> vids = videoLibrary.getVideos();
-    String smallTag = videoTag.toLowerCase();
-    Iterator<Video> it = vids.iterator(); 
-
-    while(it.hasNext())
-    {
-      Video currVid = it.next();
-      List<String> allTags = currVid.getTags();
-      boolean hasTag = false;
-      int noOfTags = allTags.size();
-      
-      if(!currVid.getIsFlagged())
+  private static synchronized String readAnswer()
+  {
+    if(stdin == null || stdinSource != System.in)
+    {
+      stdinSource = System.in;
+      stdin = new BufferedReader(new InputStreamReader(stdinSource));
+    }
+    try
+    {
+      String answer = stdin.readLine();
+      return answer == null ? "" : answer;
+    }
+    catch(IOException e)
+    {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Makes questions wait for the next line passed to answer, instead of reading System.in
+   * while the command runs.
+   */
+  void setDeferredAnswers(boolean deferred)
+  {
+    this.deferredAnswers = deferred;
+  }
+
+  /**
+   * Returns whether the last command asked a question the next line has to answer.
+   */
+  boolean isAwaitingAnswer()
+  {
+    return pendingChoice != null;
+  }
+
+  /**
+   * Answers the question after a search, playing the chosen video.
+   * @param option The number of the video, anything else meaning no.
+   */
+  public void answer(String option)
+  {
+    List<Video> vids = pendingChoice;
+    pendingChoice = null;
+    if(vids == null)
+    {
+      return;
+    }
+    try
+    {
+      int number = Integer.parseInt(option.strip()) - 1;
+      if(number >= 0 && number < vids.size())
       {
-        for(int i = 0 ;i < noOfTags; i++)
-        {
-          if(allTags.get(i).equals(smallTag))
-          {
-            hasTag = true;
-            i = noOfTags;
-          }
-        }
+        playVideo(vids.get(number).getVideoId());
       }
+    }
+    catch(NumberFormatException ex)
+    {
+      out.println();
+    }
+    out.flush();
+  }
 
-      if(!hasTag)
+  /**
+   * Suggests titles and tags starting with a prefix, the most common first
+   * @param prefix The start of a title or tag, ignoring case
+   */
+  public void autocomplete(String prefix)
+  {
+    Autocomplete completions = videoLibrary.getAutocomplete();
+    int found = completions.complete(prefix, this.completions);
+    if(found == 0)
+    {
+      out.println("No suggestions for " + prefix);
+    }
+    else
+    {
+      out.println("Suggestions for " + prefix + ':');
+      for(int i = 0; i < found; i++)
       {
-        it.remove();
+        out.print("  ");
+        out.println(completions.label(this.completions[i]));
       }
-      
     }
+    out.flush();
+  }
+
+  /**
+   * Searches for videos by tag
+   * @param videoTag Tag to search by
+   */
+  public void searchVideosWithTag(String videoTag) {
+    // The tag index returns every video with the tag, only the flagged ones are dropped.
+    List<Video> vids = videoLibrary.findByTag(videoTag);
+    vids.removeIf(Video::getIsFlagged);
     
     if(vids.size() > 0)
     {
@@ -526,8 +749,38 @@ public class VideoPlayer {
     }
     else
     {
-      System.out.println("No search results for " + videoTag);
+      out.println("No search results for " + videoTag);
     }
+    out.flush();
+  }
+
+  /**
+   * Searches for videos matching a boolean tag query, like "#cat AND #animal NOT #dog".
+   * @param query Tags combined with AND, OR, NOT and parentheses.
+   */
+  public void searchVideosWithTags(String query) {
+    List<Video> vids;
+    try
+    {
+      vids = videoLibrary.findByTags(query);
+    }
+    catch (IllegalArgumentException e)
+    {
+      out.println("Cannot search videos: " + e.getMessage());
+      out.flush();
+      return;
+    }
+    vids.removeIf(Video::getIsFlagged);
+
+    if(vids.size() > 0)
+    {
+      displaySearchResults(query, vids);
+    }
+    else
+    {
+      out.println("No search results for " + query);
+    }
+    out.flush();
   }
 
   /**
@@ -536,6 +789,7 @@ public class VideoPlayer {
    */
   public void flagVideo(String videoId) {
     flagVideo(videoId, "Not supplied");
+    out.flush();
   }
 
   /**
@@ -547,27 +801,29 @@ public class VideoPlayer {
     Video vidToFlag = videoLibrary.getVideo(videoId);
     if(vidToFlag != null)
     {
-      if(vidToFlag.getIsFlagged())
+      // Checking and setting the flag is a single step, so concurrent flags cannot both win.
+      if(!videoLibrary.flagVideo(vidToFlag, reason))
       {
-        System.out.println("Cannot flag video: Video is already flagged");
+        out.println("Cannot flag video: Video is already flagged");
       }
       else
       {
-        vidToFlag.setFlagged(true);
-        vidToFlag.setFlagReason(reason);
-        
-        if(vidToFlag.equals(this.currVid))
+        // Compared by id, the playing video may be an instance from before a reload.
+        Video currVid = this.session.getCurrent();
+        if(currVid != null && currVid.getVideoId().equals(vidToFlag.getVideoId()))
         {
           stopVideo();
         }
         
-        System.out.println("Successfully flagged video: " + vidToFlag.getTitle() + " (reason: " + reason + ')');
+        out.println("Successfully flagged video: " + vidToFlag.getTitle() + " (reason: " + reason + ')');
       }      
     }
     else
     {
-      System.out.println("Cannot flag video: Video does not exist");
+      out.println("Cannot flag video: Video does not exist");
     }
+    warnIfFlagsUnsaved();
+    out.flush();
   }
 
   /**
@@ -579,17 +835,97 @@ public class VideoPlayer {
     
     if(vidToUnflag == null)
     {
-      System.out.println("Cannot remove flag from video: Video does not exist");
+      out.println("Cannot remove flag from video: Video does not exist");
     }
-    else if(vidToUnflag.getIsFlagged())
+    else if(videoLibrary.allowVideo(vidToUnflag))
     {
-      vidToUnflag.setFlagged(false);
-      vidToUnflag.setFlagReason("");
-      System.out.println("Successfully removed flag from video: " + vidToUnflag.getTitle());
+      out.println("Successfully removed flag from video: " + vidToUnflag.getTitle());
     }
     else
     {
-      System.out.println("Cannot remove flag from video: Video is not flagged");
-   } 
+      out.println("Cannot remove flag from video: Video is not flagged");
+   }
+    warnIfFlagsUnsaved();
+    out.flush();
+  }
+
+  /**
+   * Flags every video listed in a file, reporting a summary instead of a line per video
+   * @param file Lines of a video id and an optional flag reason
+   */
+  public void flagVideos(String file)
+  {
+    ModerationSummary summary;
+    try(Stream<String> lines = Files.lines(Path.of(file)))
+    {
+      summary = videoLibrary.flagVideos(
+          lines.map(String::strip).filter(l -> !l.isEmpty()).map(VideoPlayer::parseFlag));
+    }
+    catch(IOException | UncheckedIOException | InvalidPathException ex)
+    {
+      out.println("Cannot flag videos: Couldn't read " + file);
+      out.flush();
+      return;
+    }
+    Video currVid = this.session.getCurrent();
+    if(currVid != null && currVid.getIsFlagged())
+    {
+      stopVideo();
+    }
+    out.println("Flagged " + summary.getChanged() + " of " + summary.getRequested() + " videos ("
+        + summary.getUnchanged() + " already flagged, " + summary.getMissing() + " not found)");
+    warnIfFlagsUnsaved();
+    out.flush();
+  }
+
+  /**
+   * Splits a line of a flag file into the video id and the reason, which may contain spaces.
+   */
+  private static Map.Entry<String, String> parseFlag(String line)
+  {
+    int end = 0;
+    while(end < line.length() && !Character.isWhitespace(line.charAt(end)))
+    {
+      end++;
+    }
+    String reason = line.substring(end).strip();
+    return Map.entry(line.substring(0, end), reason.isEmpty() ? "Not supplied" : reason);
+  }
+
+  /**
+   * Removes the flags from every video listed in a file, reporting a summary instead of a line
+   * per video
+   * @param file Lines of a video id
+   */
+  public void allowVideos(String file)
+  {
+    ModerationSummary summary;
+    try(Stream<String> lines = Files.lines(Path.of(file)))
+    {
+      summary = videoLibrary.allowVideos(lines.map(String::strip).filter(l -> !l.isEmpty()));
+    }
+    catch(IOException | UncheckedIOException | InvalidPathException ex)
+    {
+      out.println("Cannot remove flags from videos: Couldn't read " + file);
+      out.flush();
+      return;
+    }
+    out.println("Removed flag from " + summary.getChanged() + " of " + summary.getRequested()
+        + " videos (" + summary.getUnchanged() + " not flagged, " + summary.getMissing()
+        + " not found)");
+    warnIfFlagsUnsaved();
+    out.flush();
+  }
+
+  /**
+   * Tells the user, once per session, that flag changes are no longer saved.
+   */
+  private void warnIfFlagsUnsaved() {
+    IOException failure = videoLibrary.getModerationFailure();
+    if(failure != null && !toldFlagsUnsaved)
+    {
+      toldFlagsUnsaved = true;
+      out.println("Warning: flags are no longer saved (" + failure.getMessage() + ')');
+    }
   }
-}
\ No newline at end of file
+}
@@ -1,6 +1,65 @@
 package com.google;
 
-/** A class used to represent a Playlist */
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+/**
+ * A class used to represent a Playlist.
+ *
+ * <p>The ids of the videos are kept in insertion order in a linked hash set, so checking, adding
+ * and removing a video take constant time however long the playlist is. Only ids are kept, so a
+ * playlist never holds on to a video the catalog has since replaced; callers resolve the ids
+ * through the library whenever they need the videos. Every method locks the playlist, so
+ * concurrent edits to the same playlist are never lost.
+ */
 class VideoPlaylist {
 
+  private final String name;
+  private final LinkedHashSet<String> videoIds = new LinkedHashSet<>();
+
+  VideoPlaylist(String name) {
+    this.name = name;
+  }
+
+  /** Returns the name of the playlist as it was created. */
+  String getName() {
+    return name;
+  }
+
+  /** Returns whether the video with the id is in the playlist. */
+  synchronized boolean contains(String videoId) {
+    return videoIds.contains(videoId);
+  }
+
+  /**
+   * Adds the video with the id at the end of the playlist.
+   * @return false if the video was already in the playlist
+   */
+  synchronized boolean add(String videoId) {
+    return videoIds.add(videoId);
+  }
+
+  /**
+   * Removes the video with the id.
+   * @return false if it was not in the playlist
+   */
+  synchronized boolean remove(String videoId) {
+    return videoIds.remove(videoId);
+  }
+
+  /** Removes all videos from the playlist. */
+  synchronized void clear() {
+    videoIds.clear();
+  }
+
+  /** Returns the number of videos in the playlist. */
+  synchronized int size() {
+    return videoIds.size();
+  }
+
+  /** Returns a copy of the ids of the videos in the order they were added. */
+  synchronized List<String> getVideoIds() {
+    return new ArrayList<>(videoIds);
+  }
 }
@@ -0,0 +1,98 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class AutocompleteTest {
+
+  @Test
+  public void testTagsRankByUseAndTitlesByName() {
+    List<Video> videos = List.of(
+        new Video("Amazing Cats", "cats_id", List.of("#cat", "#animal")),
+        new Video("Another Cat Video", "another_id", List.of("#cat")),
+        new Video("amazing cats", "lower_id", List.of("#Cat", "#Cats")),
+        new Video("Funny Dogs", "dogs_id", List.of("#dog", "#animal")));
+    Autocomplete completions = new Autocomplete(videos, new TagIndex(videos));
+
+    assertEquals(List.of("Amazing Cats", "Another Cat Video"), complete(completions, "a"));
+    assertEquals(List.of("#cat", "#animal", "#cats", "#dog"), complete(completions, "#"));
+    assertEquals(List.of("#cat", "#cats"), complete(completions, "#CA"));
+    assertEquals(List.of("Funny Dogs"), complete(completions, "funny dogs"));
+    assertEquals(List.of("Funny Dogs"), complete(completions, "F\u00fcnny"));
+    assertEquals(List.of(), complete(completions, "funny dogs!"));
+    assertEquals(List.of(), complete(completions, "zebra"));
+  }
+
+  @Test
+  public void testLargeNodesMatchScanning() throws Exception {
+    Random random = new Random(19);
+    List<Video> videos = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      StringBuilder title = new StringBuilder();
+      for (int length = 1 + random.nextInt(6); length > 0; length--) {
+        title.append("abAB c".charAt(random.nextInt(6)));
+      }
+      List<String> tags = List.of("#t" + random.nextInt(200), "#t" + random.nextInt(20));
+      videos.add(new Video(title.toString(), "id" + i, tags));
+    }
+    Autocomplete completions = new Autocomplete(videos, new TagIndex(videos));
+    // Written like a compiled catalog holds them and read back in place.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    completions.writeTo(new DataOutputStream(bytes));
+    assertEquals(completions.byteSize(), bytes.size());
+    Autocomplete mapped = new Autocomplete(ByteBuffer.wrap(bytes.toByteArray()));
+
+    for (String prefix : List.of("", "a", "B", "ab", "aB ", "abab", "c c", "#", "#t1", "#t19")) {
+      assertEquals(expected(videos, prefix), lowerCase(complete(completions, prefix)), prefix);
+      assertEquals(complete(completions, prefix), complete(mapped, prefix), prefix);
+    }
+  }
+
+  private static List<String> complete(Autocomplete completions, String prefix) {
+    int[] results = new int[Autocomplete.MAX_RESULTS];
+    int found = completions.complete(prefix, results);
+    List<String> labels = new ArrayList<>();
+    for (int i = 0; i < found; i++) {
+      labels.add(completions.label(results[i]));
+    }
+    return labels;
+  }
+
+  private static List<String> lowerCase(List<String> labels) {
+    return labels.stream()
+        .map(label -> label.toLowerCase(Locale.ROOT))
+        .collect(Collectors.toList());
+  }
+
+  /** Ranks every title and tag starting with the prefix, lower-cased for comparison. */
+  private static List<String> expected(List<Video> videos, String prefix) {
+    TreeMap<String, Integer> weights = new TreeMap<>();
+    for (Video video : videos) {
+      weights.merge(video.getTitle().toLowerCase(Locale.ROOT), 1, Integer::sum);
+      for (String tag : new HashSet<>(video.getTags())) {
+        weights.merge(tag, 1, Integer::sum);
+      }
+    }
+    String key = prefix.toLowerCase(Locale.ROOT);
+    return weights.entrySet().stream()
+        .filter(entry -> entry.getKey().startsWith(key))
+        .sorted(Comparator.comparing((Map.Entry<String, Integer> entry) ->
+            -entry.getValue()).thenComparing(Map.Entry::getKey))
+        .limit(Autocomplete.MAX_RESULTS)
+        .map(Map.Entry::getKey)
+        .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,97 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BinaryCatalogTest {
+
+  private static final String CATALOG =
+      "Funny Dogs | funny_dogs_video_id | #dog , #animal\n"
+          + "Amazing Cats | amazing_cats_video_id | #cat, #animal\n"
+          + "Caf\u00e9 Tour | cafe_id | #food\n"
+          + "Old Title | nothing_video_id\n"
+          + "Video about nothing | nothing_video_id |\n";
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testCompiledCatalogIsReadInPlace() throws Exception {
+    Path text = tempDir.resolve("videos.txt");
+    Path binary = tempDir.resolve("videos.bin");
+    Files.writeString(text, CATALOG);
+    CatalogCompiler.compile(text, binary);
+
+    assertTrue(BinaryCatalog.isBinary(binary));
+    assertFalse(BinaryCatalog.isBinary(text));
+    BinaryCatalog catalog = BinaryCatalog.open(binary);
+
+    assertEquals(4, catalog.size());
+    assertEquals(List.of("Amazing Cats", "Caf\u00e9 Tour", "Funny Dogs", "Video about nothing"),
+        titles(List.of(catalog.videos())));
+    Video dogs = catalog.video(catalog.ordinalOf("funny_dogs_video_id"));
+    assertEquals("Funny Dogs", dogs.getTitle());
+    assertEquals(List.of("#dog", "#animal"), dogs.getTags());
+    assertEquals(3, catalog.ordinalOf("nothing_video_id"));
+    assertEquals(-1, catalog.ordinalOf("missing_id"));
+    assertArrayEquals(new int[] {0, 2}, catalog.postings(" #ANIMAL"));
+    assertArrayEquals(new int[0], catalog.postings("#missing"));
+    // Tags are decoded once and shared by every video carrying them.
+    assertSame(catalog.video(0).getTags().get(1), catalog.video(2).getTags().get(1));
+    assertEquals("amazing catscafe tourfunny dogsvideo about nothing",
+        catalog.keyText().toString());
+    assertArrayEquals(new int[] {0, 12, 21, 31, 50}, catalog.keyStarts());
+  }
+
+  @Test
+  public void testLibraryOpensCompiledCatalog() throws Exception {
+    Path text = tempDir.resolve("videos.txt");
+    Path binary = tempDir.resolve("videos.bin");
+    Files.writeString(text, CATALOG);
+    CatalogCompiler.compile(text, binary);
+
+    var library = new VideoLibrary(binary);
+
+    assertEquals(4, library.getVideos().size());
+    assertEquals("Caf\u00e9 Tour", library.getVideo("cafe_id").getTitle());
+    assertEquals(List.of("Amazing Cats", "Funny Dogs"), titles(library.findByTag("#animal")));
+    assertEquals(List.of("Video about nothing"), titles(library.findByTitle("NOTHING")));
+    assertEquals(List.of("Caf\u00e9 Tour"), titles(library.findByTitle("cafe")));
+    assertEquals(List.of("Funny Dogs"), titles(library.getSnapshot().findByTitleFuzzy("funy")));
+    Autocomplete completions = library.getSnapshot().getAutocomplete();
+    int[] found = new int[Autocomplete.MAX_RESULTS];
+    assertEquals(1, completions.complete("am", found));
+    assertEquals("Amazing Cats", completions.label(found[0]));
+    assertEquals(4, completions.complete("#", found));
+    assertEquals("#animal", completions.label(found[0]));
+    assertNull(library.getCatalogPath());
+  }
+
+  @Test
+  public void testEmptyCatalog() throws Exception {
+    Path text = tempDir.resolve("videos.txt");
+    Path binary = tempDir.resolve("videos.bin");
+    Files.writeString(text, "");
+    CatalogCompiler.compile(text, binary);
+
+    BinaryCatalog catalog = BinaryCatalog.open(binary);
+
+    assertEquals(0, catalog.size());
+    assertEquals(-1, catalog.ordinalOf("any_id"));
+  }
+
+  private static List<String> titles(List<Video> videos) {
+    return videos.stream().map(Video::getTitle).collect(Collectors.toList());
+  }
+}
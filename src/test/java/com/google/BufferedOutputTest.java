@@ -0,0 +1,51 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringWriter;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class BufferedOutputTest {
+
+  private static final String NL = System.lineSeparator();
+
+  @Test
+  public void testNothingIsWrittenBeforeFlush() {
+    var target = new StringWriter();
+    var output = new BufferedOutput(target);
+
+    output.print("Currently playing: ").print('x').println(new StringBuilder("y")).println();
+    assertEquals("", target.toString());
+
+    output.flush();
+    assertEquals("Currently playing: xy" + NL + NL, target.toString());
+  }
+
+  @Test
+  public void testFullBufferIsWrittenInOneChunk() {
+    var target = new StringWriter();
+    var output = new BufferedOutput(target, 10);
+
+    output.print("12345");
+    assertEquals("", target.toString());
+    output.println("67890");
+    assertEquals("1234567890" + NL, target.toString());
+    output.print("tail");
+    output.flush();
+    assertEquals("1234567890" + NL + "tail", target.toString());
+  }
+
+  @Test
+  public void testPlayerWritesThroughOutput() {
+    var target = new StringWriter();
+    var player = new VideoPlayer(new VideoLibrary(), new BufferedOutput(target));
+
+    player.playVideo("amazing_cats_video_id");
+    new CommandParser(player).executeCommand(List.of("SHOW_PLAYING"));
+
+    assertEquals("Playing video: Amazing Cats" + NL
+        + "Currently playing: Amazing Cats (amazing_cats_video_id) [#cat #animal]",
+        target.toString());
+  }
+}
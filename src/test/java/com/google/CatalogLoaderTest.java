@@ -0,0 +1,154 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatalogLoaderTest {
+
+  private static final String CATALOG =
+      "Funny Dogs | funny_dogs_video_id |  #dog , #animal\r\n"
+          + "\n"
+          + "Video about nothing | nothing_video_id |\n"
+          + "Caf\u00e9 Tour|cafe_id|#food,,#travel | ignored\n"
+          + "No tags at all | no_tags_id\n"
+          + "Broken line without id";
+
+  @TempDir
+  Path tempDir;
+
+  @Test
+  public void testLoadFromPath() throws Exception {
+    Path catalog = tempDir.resolve("videos.txt");
+    Files.writeString(catalog, CATALOG);
+
+    var loader = new CatalogLoader();
+    List<Video> videos = new ArrayList<>();
+    loader.load(catalog, videos::add);
+
+    assertParsed(videos);
+    assertEquals(6, loader.getLineCount());
+    assertEquals(4, loader.getVideoCount());
+    assertTrue(loader.getLinesPerSecond() > 0);
+  }
+
+  @Test
+  public void testLoadFromStream() throws Exception {
+    var in = new ByteArrayInputStream(CATALOG.getBytes(StandardCharsets.UTF_8));
+
+    var loader = new CatalogLoader();
+    List<Video> videos = new ArrayList<>();
+    loader.load(Channels.newChannel(in), videos::add);
+
+    assertParsed(videos);
+    assertEquals(6, loader.getLineCount());
+  }
+
+  @Test
+  public void testLoadStreamWithLinesLongerThanBuffer() throws Exception {
+    String title = "x".repeat(3 << 20);
+    var in = new ByteArrayInputStream(
+        (title + " | long_id | #long\nShort | short_id").getBytes(StandardCharsets.UTF_8));
+
+    List<Video> videos = new ArrayList<>();
+    new CatalogLoader().load(Channels.newChannel(in), videos::add);
+
+    assertEquals(2, videos.size());
+    assertEquals(title, videos.get(0).getTitle());
+    assertEquals("short_id", videos.get(1).getVideoId());
+  }
+
+  @Test
+  public void testParallelLoadMatchesSequentialLoad() throws Exception {
+    Path catalog = tempDir.resolve("large.txt");
+    var text = new StringBuilder();
+    for (int i = 0; i < 100_000; i++) {
+      // Every id appears twice, the second time with a different title.
+      text.append("Video ").append(i).append(" | id_").append(i % 50_000)
+          .append(" | #tag").append(i % 7).append(", #other\n");
+    }
+    text.append("Last line | last_id");
+    Files.writeString(catalog, text);
+
+    Map<String, Video> sequential = new HashMap<>();
+    new CatalogLoader().load(catalog, video -> sequential.put(video.getVideoId(), video));
+    var loader = new CatalogLoader();
+    Map<String, Video> parallel = new HashMap<>();
+    loader.loadParallel(catalog, 4, parallel);
+
+    assertEquals(100_001, loader.getLineCount());
+    assertEquals(sequential.keySet(), parallel.keySet());
+    for (var entry : sequential.entrySet()) {
+      Video video = parallel.get(entry.getKey());
+      assertEquals(entry.getValue().getTitle(), video.getTitle());
+      assertEquals(entry.getValue().getTags(), video.getTags());
+    }
+    assertEquals("Video 99999", parallel.get("id_49999").getTitle());
+  }
+
+  @Test
+  public void testLoadChangesReadsOnlyAppendedLines() throws Exception {
+    Path catalog = tempDir.resolve("videos.txt");
+    Files.writeString(catalog, "First | first_id\n");
+    var loader = new CatalogLoader();
+    var mark = new CatalogLoader.Mark();
+    List<Video> videos = new ArrayList<>();
+
+    assertEquals(CatalogLoader.Change.REWRITTEN, loader.loadChanges(catalog, mark, videos::add));
+    assertEquals(CatalogLoader.Change.UNCHANGED, loader.loadChanges(catalog, mark, videos::add));
+
+    // A line without a newline yet is left until it is complete.
+    Files.writeString(catalog, "Second | second_id", StandardOpenOption.APPEND);
+    assertEquals(CatalogLoader.Change.UNCHANGED, loader.loadChanges(catalog, mark, videos::add));
+    assertEquals(List.of("first_id"), ids(videos));
+    assertEquals(17, mark.getLength());
+
+    Files.writeString(catalog, "_more\nThird | third_id", StandardOpenOption.APPEND);
+    assertEquals(CatalogLoader.Change.APPENDED, loader.loadChanges(catalog, mark, videos::add));
+    assertEquals(List.of("first_id", "second_id_more"), ids(videos));
+    Files.writeString(catalog, "\n", StandardOpenOption.APPEND);
+    assertEquals(CatalogLoader.Change.APPENDED, loader.loadChanges(catalog, mark, videos::add));
+    assertEquals(List.of("first_id", "second_id_more", "third_id"), ids(videos));
+    assertEquals(Files.size(catalog), mark.getLength());
+
+    Files.writeString(catalog, "Changed | first_id\nSecond | second_id_more\n");
+    videos.clear();
+    assertEquals(CatalogLoader.Change.REWRITTEN, loader.loadChanges(catalog, mark, videos::add));
+    assertEquals("Changed", videos.get(0).getTitle());
+  }
+
+  @Test
+  public void testLoadMissingResource() throws Exception {
+    assertFalse(new CatalogLoader().loadResource("/does_not_exist.txt", video -> { }));
+  }
+
+  private static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+
+  private static void assertParsed(List<Video> videos) {
+    assertEquals(4, videos.size());
+    assertEquals("Funny Dogs", videos.get(0).getTitle());
+    assertEquals("funny_dogs_video_id", videos.get(0).getVideoId());
+    assertEquals(List.of("#dog", "#animal"), videos.get(0).getTags());
+    assertEquals("nothing_video_id", videos.get(1).getVideoId());
+    assertTrue(videos.get(1).getTags().isEmpty());
+    assertEquals("Caf\u00e9 Tour", videos.get(2).getTitle());
+    assertEquals(List.of("#food", "#travel"), videos.get(2).getTags());
+    assertTrue(videos.get(3).getTags().isEmpty());
+  }
+}
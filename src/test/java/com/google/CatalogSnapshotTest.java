@@ -0,0 +1,183 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class CatalogSnapshotTest {
+
+  private static final String[] WORDS = {"cat", "cats", "dog", "parade", "funny", "video",
+      "about", "nothing", "google", "life", "at", "amazing"};
+  private static final String[] TAGS = {"#cat", "#dog", "#animal", "#google", "#career"};
+
+  private final Random random = new Random(5);
+  private int nextId;
+
+  @Test
+  public void testEditsMatchAFreshSnapshot() {
+    HashMap<String, Video> videos = new HashMap<>();
+    for (int i = 0; i < 300; i++) {
+      Video video = randomVideo();
+      videos.put(video.getVideoId(), video);
+    }
+    CatalogSnapshot snapshot = new CatalogSnapshot(videos);
+    List<String> ids = new ArrayList<>(videos.keySet());
+    for (int edit = 0; edit < 200; edit++) {
+      if (random.nextInt(3) == 0) {
+        String id = ids.get(random.nextInt(ids.size()));
+        snapshot = snapshot.withoutVideo(id);
+        videos.remove(id);
+      } else {
+        // Some edits replace a video, keeping its id.
+        Video video = random.nextInt(4) == 0
+            ? new Video(randomTitle(), ids.get(random.nextInt(ids.size())), randomTags())
+            : randomVideo();
+        snapshot = snapshot.withVideo(video);
+        videos.put(video.getVideoId(), video);
+        ids.add(video.getVideoId());
+      }
+      if (random.nextInt(10) == 0) {
+        Video flagged = snapshot.getVideosByTitle().get(
+            random.nextInt(snapshot.size()));
+        flagged.flag("spam");
+        snapshot.setPlayable(flagged, false);
+      }
+      if (edit % 25 == 0) {
+        assertMatches(new CatalogSnapshot(videos), snapshot);
+      }
+    }
+    assertMatches(new CatalogSnapshot(videos), snapshot);
+  }
+
+  @Test
+  public void testChangesMadeDuringAMergeAreCarriedOver() {
+    HashMap<String, Video> videos = new HashMap<>();
+    CatalogSnapshot snapshot = new CatalogSnapshot(videos);
+    for (int i = 0; i <= CatalogSnapshot.MAX_CHANGES; i++) {
+      Video video = randomVideo();
+      snapshot = snapshot.withVideo(video);
+      videos.put(video.getVideoId(), video);
+    }
+    assertTrue(snapshot.needsMerge());
+    CatalogSnapshot merged = snapshot;
+    CatalogLayer base = merged.mergeChanges();
+
+    // Edits made while the base was merged: an add, a replacement and two removals.
+    Video extra = randomVideo();
+    Video replacement = new Video(randomTitle(), "id3", randomTags());
+    snapshot = snapshot.withVideo(extra).withVideo(replacement).withoutVideo("id5")
+        .withoutVideo("id8");
+    videos.put(extra.getVideoId(), extra);
+    videos.put("id3", replacement);
+    videos.remove("id5");
+    videos.remove("id8");
+
+    CatalogSnapshot rebased = snapshot.rebase(merged, base);
+    assertEquals(snapshot.getVersion(), rebased.getVersion());
+    assertTrue(!rebased.needsMerge());
+    assertMatches(new CatalogSnapshot(videos), rebased);
+    assertNull(new CatalogSnapshot(videos).rebase(merged, base));
+  }
+
+  @Test
+  public void testRemovedVideosAreNeverPicked() {
+    HashMap<String, Video> videos = new HashMap<>();
+    Video kept = new Video("Kept", "kept_id", List.of());
+    videos.put("kept_id", kept);
+    videos.put("gone_id", new Video("Gone", "gone_id", List.of()));
+    CatalogSnapshot snapshot = new CatalogSnapshot(videos).withoutVideo("gone_id");
+
+    for (int i = 0; i < 20; i++) {
+      assertSame(kept, snapshot.getRandomPlayableVideo());
+    }
+    kept.flag("spam");
+    snapshot.setPlayable(kept, false);
+    assertNull(snapshot.getRandomPlayableVideo());
+    assertEquals(0, snapshot.countPlayable());
+  }
+
+  private void assertMatches(CatalogSnapshot expected, CatalogSnapshot actual) {
+    assertEquals(ids(expected.getVideosByTitle()), ids(actual.getVideosByTitle()));
+    assertEquals(expected.countPlayable(), actual.countPlayable());
+    for (Video video : expected.getVideosByTitle()) {
+      assertSame(video, actual.getVideo(video.getVideoId()));
+    }
+    for (String word : WORDS) {
+      assertEquals(ids(expected.findByTitle(word)), ids(actual.findByTitle(word)), word);
+      assertEquals(ids(expected.findByTitleFuzzy(word)), ids(actual.findByTitleFuzzy(word)),
+          word);
+      assertEquals(ranked(expected, word), ranked(actual, word), word);
+    }
+    for (String tag : TAGS) {
+      assertEquals(ids(expected.findByTag(tag)), ids(actual.findByTag(tag)), tag);
+      TagQuery query = TagQuery.parse("#animal NOT " + tag);
+      assertEquals(ids(expected.findByTags(query)), ids(actual.findByTags(query)), tag);
+    }
+    for (String prefix : List.of("", "a", "c", "ca", "cat ", "f", "#", "#c", "#ca", "v")) {
+      assertEquals(completions(expected, prefix), completions(actual, prefix), prefix);
+    }
+    for (int i = 0; i < 20; i++) {
+      Video video = actual.getRandomPlayableVideo();
+      assertSame(video, actual.getVideo(video.getVideoId()));
+      assertTrue(!video.getIsFlagged());
+    }
+  }
+
+  /** Returns every page of the ranked results, three at a time. */
+  private static List<String> ranked(CatalogSnapshot snapshot, String term) {
+    List<String> pages = new ArrayList<>();
+    PageCursor cursor = null;
+    while (true) {
+      List<Video> page = snapshot.findByTitle(term, cursor, 3);
+      pages.addAll(ids(page));
+      if (page.size() < 3) {
+        return pages;
+      }
+      cursor = PageCursor.after(page.get(page.size() - 1), term);
+    }
+  }
+
+  private static List<String> completions(CatalogSnapshot snapshot, String prefix) {
+    Autocomplete autocomplete = snapshot.getAutocomplete();
+    int[] found = new int[Autocomplete.MAX_RESULTS];
+    List<String> labels = new ArrayList<>();
+    for (int i = 0; i < autocomplete.complete(prefix, found); i++) {
+      labels.add(autocomplete.label(found[i]));
+    }
+    return labels;
+  }
+
+  private Video randomVideo() {
+    return new Video(randomTitle(), "id" + nextId++, randomTags());
+  }
+
+  private String randomTitle() {
+    StringBuilder title = new StringBuilder(WORDS[random.nextInt(WORDS.length)]);
+    for (int words = random.nextInt(3); words > 0; words--) {
+      title.append(' ').append(WORDS[random.nextInt(WORDS.length)]);
+    }
+    return title.toString();
+  }
+
+  private List<String> randomTags() {
+    List<String> tags = new ArrayList<>();
+    for (String tag : TAGS) {
+      if (random.nextInt(3) == 0) {
+        tags.add(tag);
+      }
+    }
+    return tags;
+  }
+
+  private static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,87 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ColumnStoreTest {
+
+  private static final String CATALOG =
+      "Funny Dogs | funny_dogs_video_id | #dog , #animal\n"
+          + "Amazing Cats | amazing_cats_video_id | #cat, #animal\n"
+          + "Another Cat Video | another_cat_video_id | #cat, #animal\n";
+
+  @TempDir
+  Path tempDir;
+
+  private VideoLibrary library;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    Path text = tempDir.resolve("videos.txt");
+    Path binary = tempDir.resolve("videos.bin");
+    Files.writeString(text, CATALOG);
+    CatalogCompiler.compile(text, binary);
+    library = new VideoLibrary(binary);
+  }
+
+  @Test
+  public void testViewsOfTheSameVideoAreInterchangeable() {
+    Video first = library.getVideo("amazing_cats_video_id");
+    Video second = library.getVideos().get(0);
+
+    assertNotSame(first, second);
+    assertEquals(first, second);
+    assertEquals(first.hashCode(), second.hashCode());
+    assertEquals(0, first.compareTo(second));
+    assertEquals(List.of("#cat", "#animal"), second.getTags());
+  }
+
+  @Test
+  public void testFlagsAreSharedByAllViews() {
+    assertTrue(library.flagVideo(library.getVideo("funny_dogs_video_id"), "dont_like_dogs"));
+
+    assertEquals("dont_like_dogs", library.getVideo("funny_dogs_video_id").getFlagReason());
+    assertFalse(library.flagVideo(library.getVideo("funny_dogs_video_id"), "again"));
+    assertEquals(2, library.getSnapshot().countPlayable());
+    for (int i = 0; i < 50; i++) {
+      assertFalse(library.getRandomPlayableVideo().getIsFlagged());
+    }
+
+    assertTrue(library.allowVideo(library.getVideo("funny_dogs_video_id")));
+    assertEquals(3, library.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testEditingKeepsViewsAndFlags() {
+    library.flagVideo(library.getVideo("funny_dogs_video_id"), "dont_like_dogs");
+
+    library.addVideo(new Video("Cat Parade", "parade_id", List.of("#cat")));
+    library.removeVideo("amazing_cats_video_id");
+
+    assertEquals(List.of("Another Cat Video", "Cat Parade", "Funny Dogs"),
+        titles(library.getVideos()));
+    assertEquals(List.of("Another Cat Video", "Cat Parade"), titles(library.findByTag("#CAT")));
+    assertTrue(library.getVideo("funny_dogs_video_id").getIsFlagged());
+    assertEquals(2, library.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testSearchWithoutCachedKeys() {
+    assertEquals(List.of("Amazing Cats", "Another Cat Video"), titles(library.findByTitle("CAT")));
+    assertEquals(List.of("Funny Dogs"), titles(library.findByTitle("y d")));
+  }
+
+  private static List<String> titles(List<Video> videos) {
+    return videos.stream().map(Video::getTitle).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,61 @@
+package com.google;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class CommandPipelineTest {
+
+  @Test
+  public void testSearchAnswerIsTheNextLine() throws Exception {
+    String output = run("SEARCH_VIDEOS cat\n2\nSHOW_PLAYING\nEXIT\nNUMBER_OF_VIDEOS\n");
+    assertThat(output, containsString("Playing video: Another Cat Video"));
+    assertThat(output, containsString(
+        "Currently playing: Another Cat Video (another_cat_video_id) [#cat #animal]"));
+    assertThat(output, containsString(
+        "YouTube has now terminated its execution. Thank you and goodbye!"));
+    // Nothing after EXIT runs.
+    assertThat(output, not(containsString("videos in the library")));
+  }
+
+  @Test
+  public void testExitAnswersAPendingQuestion() throws Exception {
+    String output = run("SEARCH_VIDEOS cat\nexit\nNUMBER_OF_VIDEOS\n");
+    assertThat(output, containsString("5 videos in the library"));
+  }
+
+  @Test
+  public void testEndOfInputStops() throws Exception {
+    String output = run("NUMBER_OF_VIDEOS\n  \nnumber_of_videos");
+    assertEquals(2, output.split("5 videos in the library", -1).length - 1);
+    assertThat(output, containsString("Please enter a valid command"));
+  }
+
+  @Test
+  public void testMissingArgumentsAreReported() throws Exception {
+    String output = run("FLAG_VIDEO\nALLOW_VIDEO\nPLAY\nNUMBER_OF_VIDEOS\n");
+    assertThat(output, containsString(
+        "Please enter ALLOW_VIDEO command followed by a video_id."));
+    assertThat(output, containsString("5 videos in the library"));
+  }
+
+  @Test
+  public void testTokenize() {
+    assertEquals(List.of("ADD_TO_PLAYLIST", "my_list", "amazing_cats_video_id"),
+        CommandParser.tokenize(" ADD_TO_PLAYLIST\tmy_list   amazing_cats_video_id "));
+    assertEquals(List.of(), CommandParser.tokenize("   "));
+  }
+
+  private static String run(String script) throws Exception {
+    StringWriter output = new StringWriter();
+    new CommandPipeline(new PlayerEngine(new VideoLibrary()))
+        .run(new StringReader(script), output);
+    return output.toString();
+  }
+}
@@ -0,0 +1,138 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class FuzzyIndexTest {
+
+  private final FuzzyIndex index = new FuzzyIndex(List.of(
+      new Video("Amazing Cats", "cats_id", List.of()),
+      new Video("Another Cat Video", "another_id", List.of()),
+      new Video("Funny Dogs", "dogs_id", List.of()),
+      new Video("Life at Google", "google_id", List.of()),
+      new Video("Video about nothing", "nothing_id", List.of())
+  ));
+
+  @Test
+  public void testSearchToleratesTypos() {
+    assertEquals(List.of("cats_id"), ids(index.search("amazng cats")));
+    assertEquals(List.of("dogs_id"), ids(index.search("FUNY dgos")));
+    assertEquals(List.of("google_id"), ids(index.search("lfie at gogle")));
+    assertEquals(List.of("another_id", "nothing_id"), ids(index.search("vidoe")));
+  }
+
+  @Test
+  public void testCloserMatchesComeFirst() {
+    // "cat" is a word of the second title, and one edit from "cats" and from "at".
+    assertEquals(List.of("another_id", "cats_id", "google_id"), ids(index.search("cat")));
+    assertEquals(List.of("cats_id", "another_id"), ids(index.search("cats")));
+  }
+
+  @Test
+  public void testShortWordsMustMatchExactly() {
+    assertEquals(List.of("google_id"), ids(index.search("at")));
+    assertTrue(index.search("it").isEmpty());
+    assertTrue(index.search("cat dogs").isEmpty());
+    assertTrue(index.search("?!").isEmpty());
+  }
+
+  @Test
+  public void testLookupMatchesEditDistance() {
+    Random random = new Random(25);
+    List<Video> videos = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder title = new StringBuilder();
+      for (int length = 1 + random.nextInt(12); length > 0; length--) {
+        title.append("abc d".charAt(random.nextInt(5)));
+      }
+      videos.add(new Video(title.toString(), "id" + i, List.of()));
+    }
+    FuzzyIndex fuzzy = new FuzzyIndex(videos);
+    TitleIndex titles = new TitleIndex(videos);
+
+    for (String term : List.of("a", "ab", "abc", "bca", "abcd", "aabbcc", "cabcab", "ab ca")) {
+      List<String> expected = expected(videos, term);
+      assertEquals(expected, ids(fuzzy.search(term)), term);
+      // Scanning before the index is built gives the same matches.
+      assertEquals(expected, ids(videos, FuzzyIndex.scan(videos, null, null, term)), term);
+      assertEquals(expected, ids(videos,
+          FuzzyIndex.scan(videos, titles.getKeyText(), titles.getKeyStarts(), term)), term);
+    }
+  }
+
+  /**
+   * Scores every title against the term the slow way.
+   */
+  private static List<String> expected(List<Video> videos, String term) {
+    String[] terms = TextAnalyzer.key(term).split(" ");
+    List<Video> matches = new ArrayList<>();
+    List<Integer> distances = new ArrayList<>();
+    for (Video video : videos) {
+      String key = TextAnalyzer.key(video.getTitle());
+      int total = 0;
+      for (String word : terms) {
+        int best = Integer.MAX_VALUE;
+        for (String candidate : key.isEmpty() ? new String[0] : key.split(" ")) {
+          best = Math.min(best, distance(word, candidate));
+        }
+        if (best > FuzzyIndex.maxDistance(word.length())) {
+          total = -1;
+          break;
+        }
+        total += best;
+      }
+      if (total >= 0) {
+        matches.add(video);
+        distances.add(total);
+      }
+    }
+    List<Integer> order = new ArrayList<>();
+    for (int i = 0; i < matches.size(); i++) {
+      order.add(i);
+    }
+    order.sort(Comparator.comparing(distances::get));
+    return order.stream().map(i -> matches.get(i).getVideoId()).collect(Collectors.toList());
+  }
+
+  /**
+   * Edit distance counting two swapped neighbours as one edit.
+   */
+  private static int distance(String a, String b) {
+    int[][] table = new int[a.length() + 1][b.length() + 1];
+    for (int i = 0; i <= a.length(); i++) {
+      for (int j = 0; j <= b.length(); j++) {
+        if (i == 0 || j == 0) {
+          table[i][j] = i + j;
+          continue;
+        }
+        int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+        table[i][j] = Math.min(table[i - 1][j - 1] + cost,
+            Math.min(table[i - 1][j], table[i][j - 1]) + 1);
+        if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2)
+            && a.charAt(i - 2) == b.charAt(j - 1)) {
+          table[i][j] = Math.min(table[i][j], table[i - 2][j - 2] + 1);
+        }
+      }
+    }
+    return table[a.length()][b.length()];
+  }
+
+  private static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+
+  private static List<String> ids(List<Video> videos, long[] matches) {
+    List<String> ids = new ArrayList<>();
+    for (long match : matches) {
+      ids.add(videos.get((int) match).getVideoId());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,136 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ModerationLogTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Path catalog;
+  private Path directory;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    var videos = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      videos.append("Video ").append(i).append(" | v").append(i).append(" | #tag\n");
+    }
+    catalog = tempDir.resolve("videos.txt");
+    Files.writeString(catalog, videos);
+    directory = tempDir.resolve("data");
+  }
+
+  @Test
+  public void testFlagsAreRecovered() throws Exception {
+    VideoLibrary library = new VideoLibrary(catalog);
+    try (ModerationLog log = ModerationLog.open(directory, library)) {
+      assertTrue(library.flagVideo(library.getVideo("v1"), "dont_like"));
+      assertTrue(library.flagVideo(library.getVideo("v2"), "spam"));
+      assertTrue(library.allowVideo(library.getVideo("v1")));
+      assertTrue(library.flagVideo(library.getVideo("v3"), "old"));
+      assertTrue(library.allowVideo(library.getVideo("v3")));
+      assertTrue(library.flagVideo(library.getVideo("v3"), "really old"));
+      assertNull(log.getFailure());
+    }
+
+    VideoLibrary restarted = new VideoLibrary(catalog);
+    try (ModerationLog log = ModerationLog.open(directory, restarted)) {
+      assertNull(restarted.getVideo("v1").getFlagReason());
+      assertEquals("spam", restarted.getVideo("v2").getFlagReason());
+      assertEquals("really old", restarted.getVideo("v3").getFlagReason());
+      assertEquals(98, restarted.getSnapshot().countPlayable());
+      assertFalse(restarted.flagVideo(restarted.getVideo("v2"), "again"));
+      assertTrue(restarted.allowVideo(restarted.getVideo("v2")));
+      assertNull(log.getFailure());
+    }
+
+    VideoLibrary again = new VideoLibrary(catalog);
+    ModerationLog.open(directory, again).close();
+    assertNull(again.getVideo("v2").getFlagReason());
+    assertEquals("really old", again.getVideo("v3").getFlagReason());
+  }
+
+  @Test
+  public void testBatchesAreRecovered() throws Exception {
+    VideoLibrary library = new VideoLibrary(catalog);
+    try (ModerationLog log = ModerationLog.open(directory, library)) {
+      library.flagVideos(IntStream.range(0, 50).mapToObj(i -> Map.entry("v" + i, "batch")));
+      library.allowVideos(IntStream.range(0, 10).mapToObj(i -> "v" + i));
+      assertNull(log.getFailure());
+    }
+
+    VideoLibrary restarted = new VideoLibrary(catalog);
+    ModerationLog.open(directory, restarted).close();
+    assertNull(restarted.getVideo("v9").getFlagReason());
+    assertEquals("batch", restarted.getVideo("v10").getFlagReason());
+    assertEquals(60, restarted.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testFlagsOfMissingVideosAreKept() throws Exception {
+    VideoLibrary library = new VideoLibrary(catalog);
+    try (ModerationLog log = ModerationLog.open(directory, library)) {
+      library.flagVideo(library.getVideo("v7"), "spam");
+      assertNull(log.getFailure());
+    }
+    // A catalog without the video ignores the flag, but does not drop it.
+    Files.writeString(catalog, "Other | other | #tag\n");
+    VideoLibrary other = new VideoLibrary(catalog);
+    ModerationLog.open(directory, other).close();
+    ModerationLog.open(directory, other).close();
+
+    Files.writeString(catalog, "Video 7 | v7 | #tag\n");
+    VideoLibrary restored = new VideoLibrary(catalog);
+    ModerationLog.open(directory, restored).close();
+    assertEquals("spam", restored.getVideo("v7").getFlagReason());
+    assertNull(restored.getRandomPlayableVideo());
+  }
+
+  @Test
+  public void testManyEventsFoldIntoTheLastOne() throws Exception {
+    VideoLibrary library = new VideoLibrary(catalog);
+    try (ModerationLog log = ModerationLog.open(directory, library)) {
+      for (int round = 0; round < 200; round++) {
+        for (int i = 0; i < 100; i++) {
+          Video video = library.getVideo("v" + i);
+          if (video.getIsFlagged()) {
+            library.allowVideo(video);
+          } else {
+            library.flagVideo(video, "round " + round);
+          }
+        }
+      }
+      assertNull(log.getFailure());
+    }
+
+    VideoLibrary restarted = new VideoLibrary(catalog);
+    ModerationLog.open(directory, restarted).close();
+    // An even number of rounds leaves every video allowed.
+    assertEquals(100, restarted.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testFailedWriteIsReported() throws Exception {
+    VideoLibrary library = new VideoLibrary(catalog);
+    assertNull(library.getModerationFailure());
+    ModerationLog.open(directory, library).close();
+
+    // The flag still takes effect in memory.
+    assertTrue(library.flagVideo(library.getVideo("v1"), "spam"));
+    assertNotNull(library.getModerationFailure());
+    assertEquals(99, library.getSnapshot().countPlayable());
+  }
+}
@@ -0,0 +1,87 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.BitSet;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class OrdinalBitmapTest {
+
+  private final Random random = new Random(17);
+
+  @Test
+  public void testSparseAndDenseChunks() {
+    // Dense in the first chunk, sparse in the second, nothing in the third, dense in the fourth.
+    BitSet a = random(0, 1 << 16, 0.5);
+    a.or(random(1 << 16, 2 << 16, 0.01));
+    a.or(random(3 << 16, 4 << 16, 0.3));
+    BitSet b = random(0, 4 << 16, 0.05);
+    b.or(random(40000, 140000, 0.9));
+
+    OrdinalBitmap x = OrdinalBitmap.of(a.stream().toArray());
+    OrdinalBitmap y = OrdinalBitmap.of(b.stream().toArray());
+
+    assertEquals(a.cardinality(), x.cardinality());
+    assertArrayEquals(a.stream().toArray(), x.toArray());
+    assertArrayEquals(and(a, b).stream().toArray(), x.and(y).toArray());
+    assertArrayEquals(or(a, b).stream().toArray(), x.or(y).toArray());
+    assertArrayEquals(andNot(a, b).stream().toArray(), x.andNot(y).toArray());
+    assertArrayEquals(andNot(b, a).stream().toArray(), y.andNot(x).toArray());
+    assertEquals(and(a, b).cardinality(), y.and(x).cardinality());
+  }
+
+  @Test
+  public void testRange() {
+    OrdinalBitmap range = OrdinalBitmap.range(70000);
+
+    assertEquals(70000, range.cardinality());
+    assertTrue(range.contains(0));
+    assertTrue(range.contains(69999));
+    assertFalse(range.contains(70000));
+    assertFalse(range.contains(-1));
+    assertEquals(0, OrdinalBitmap.range(0).cardinality());
+  }
+
+  @Test
+  public void testEmptyResults() {
+    OrdinalBitmap bitmap = OrdinalBitmap.of(new int[] {1, 5, 70000});
+
+    assertEquals(0, bitmap.andNot(bitmap).cardinality());
+    assertEquals(0, bitmap.and(OrdinalBitmap.of(new int[] {2, 70001})).cardinality());
+    assertArrayEquals(new int[] {1, 5, 70000}, bitmap.or(OrdinalBitmap.EMPTY).toArray());
+    assertArrayEquals(new int[] {5}, bitmap.and(OrdinalBitmap.range(10)).andNot(
+        OrdinalBitmap.of(new int[] {1})).toArray());
+  }
+
+  private BitSet random(int from, int to, double density) {
+    BitSet bits = new BitSet();
+    for (int i = from; i < to; i++) {
+      if (random.nextDouble() < density) {
+        bits.set(i);
+      }
+    }
+    return bits;
+  }
+
+  private static BitSet and(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.and(b);
+    return result;
+  }
+
+  private static BitSet or(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.or(b);
+    return result;
+  }
+
+  private static BitSet andNot(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.andNot(b);
+    return result;
+  }
+}
@@ -41,6 +41,37 @@ public class Part1Test extends TestBase {
         containsString("Video about nothing (nothing_video_id) []"));
   }
 
+  @Test
+  public void testShowAllVideosPaged() {
+    videoPlayer.showAllVideos(2, null);
+
+    String[] lines = getOutputLines();
+    assertEquals(4, lines.length, outputStream.toString());
+    assertThat(lines[1], containsString("Amazing Cats (amazing_cats_video_id)"));
+    assertThat(lines[2], containsString("Another Cat Video (another_cat_video_id)"));
+    assertThat(lines[3], containsString("More videos available, next page token: "));
+    String token = lines[3].substring(lines[3].lastIndexOf(' ') + 1);
+
+    outputStream.reset();
+    videoPlayer.showAllVideos(3, token);
+
+    lines = getOutputLines();
+    assertEquals(4, lines.length, outputStream.toString());
+    assertThat(lines[1], containsString("Funny Dogs (funny_dogs_video_id)"));
+    assertThat(lines[3], containsString("Video about nothing (nothing_video_id)"));
+  }
+
+  @Test
+  public void testShowAllVideosInvalidPage() {
+    videoPlayer.showAllVideos(0, null);
+    videoPlayer.showAllVideos(2, "not a token");
+
+    String[] lines = getOutputLines();
+    assertEquals(2, lines.length, outputStream.toString());
+    assertThat(lines[0], containsString("Cannot show videos: Page size must be a positive number"));
+    assertThat(lines[1], containsString("Cannot show videos: Invalid page token"));
+  }
+
   @Test
   public void testPlayVideo() {
     videoPlayer.playVideo("amazing_cats_video_id");
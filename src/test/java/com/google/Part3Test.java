@@ -47,6 +47,18 @@ public class Part3Test extends TestBase {
     assertThat(lines[5], containsString("Playing video: Another Cat Video"));
   }
 
+  @Test
+  public void testSearchVideosAnswersComeFromOneReader() {
+    setInput("2\r\n1");
+
+    videoPlayer.searchVideos("cat");
+    videoPlayer.searchVideos("dog");
+
+    String output = outputStream.toString();
+    assertThat(output, containsString("Playing video: Another Cat Video"));
+    assertThat(output, containsString("Playing video: Funny Dogs"));
+  }
+
   @Test
   public void testSearchVideosAnswerOutOfBounds() {
     setInput("5");
@@ -92,6 +104,26 @@ public class Part3Test extends TestBase {
     assertThat(outputStream.toString(), containsString("No search results for blah"));
   }
 
+  @Test
+  public void testSearchVideosFuzzyAndPlayAnswer() {
+    setInput("1");
+
+    videoPlayer.searchVideosFuzzy("amazng cts");
+
+    var lines = getOutputLines();
+    assertEquals(5, lines.length, outputStream.toString());
+    assertThat(lines[0], containsString("Here are the results for amazng cts:"));
+    assertThat(lines[1], containsString("1) Amazing Cats (amazing_cats_video_id) [#cat #animal]"));
+    assertThat(lines[4], containsString("Playing video: Amazing Cats"));
+  }
+
+  @Test
+  public void testSearchVideosFuzzyNoResults() {
+    videoPlayer.searchVideosFuzzy("amazing dgs");
+    assertEquals(1, getOutputLines().length);
+    assertThat(outputStream.toString(), containsString("No search results for amazing dgs"));
+  }
+
   @Test
   public void testSearchVideosWithTagNoAnswer() {
     setInput("no");
@@ -155,4 +187,71 @@ public class Part3Test extends TestBase {
     assertEquals(1, getOutputLines().length);
     assertThat(outputStream.toString(), containsString("No search results for #blah"));
   }
+
+  @Test
+  public void testSearchVideosWithTagsNoAnswer() {
+    setInput("no");
+
+    videoPlayer.searchVideosWithTags("#animal NOT #cat OR #google");
+
+    var lines = getOutputLines();
+    assertEquals(5, lines.length, outputStream.toString());
+    assertThat(lines[0], containsString("Here are the results for #animal NOT #cat OR #google:"));
+    assertThat(lines[1], containsString("1) Funny Dogs (funny_dogs_video_id) [#dog #animal]"));
+    assertThat(lines[2],
+        containsString("2) Life at Google (life_at_google_video_id) [#google #career]"));
+  }
+
+  @Test
+  public void testSearchVideosWithTagsInvalidQuery() {
+    videoPlayer.searchVideosWithTags("#cat AND");
+    assertEquals(1, getOutputLines().length);
+    assertThat(outputStream.toString(), containsString("Cannot search videos: Missing tag"));
+  }
+
+  @Test
+  public void testSearchVideosRankedPages() {
+    setInput("no");
+
+    videoPlayer.searchVideosRanked("a", 2, null);
+
+    var lines = getOutputLines();
+    assertEquals(6, lines.length, outputStream.toString());
+    assertThat(lines[0], containsString("Here are the results for a:"));
+    assertThat(lines[1], containsString("1) Amazing Cats (amazing_cats_video_id) [#cat #animal]"));
+    assertThat(lines[2],
+        containsString("2) Another Cat Video (another_cat_video_id) [#cat #animal]"));
+    assertThat(lines[3], containsString("More results available, next page token: "));
+    String token = lines[3].substring(lines[3].lastIndexOf(' ') + 1);
+
+    outputStream.reset();
+    setInput("no");
+    videoPlayer.searchVideosRanked("a", 2, token);
+
+    lines = getOutputLines();
+    assertEquals(5, lines.length, outputStream.toString());
+    assertThat(lines[1], containsString("1) Life at Google (life_at_google_video_id)"));
+    assertThat(lines[2], containsString("2) Video about nothing (nothing_video_id)"));
+  }
+
+  @Test
+  public void testSearchVideosRankedInvalidToken() {
+    videoPlayer.searchVideosRanked("a", 2, "bogus");
+    assertThat(outputStream.toString(), containsString("Cannot search videos: Invalid page token"));
+  }
+
+  @Test
+  public void testAutocomplete() {
+    videoPlayer.autocomplete("#A");
+    videoPlayer.autocomplete("an");
+    videoPlayer.autocomplete("xyz");
+
+    var lines = getOutputLines();
+    assertEquals(5, lines.length, outputStream.toString());
+    assertThat(lines[0], containsString("Suggestions for #A:"));
+    assertThat(lines[1], containsString("#animal"));
+    assertThat(lines[2], containsString("Suggestions for an:"));
+    assertThat(lines[3], containsString("Another Cat Video"));
+    assertThat(lines[4], containsString("No suggestions for xyz"));
+  }
 }
@@ -4,7 +4,10 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class Part4Test extends TestBase {
 
@@ -278,4 +281,42 @@ public class Part4Test extends TestBase {
     assertThat(lines[7],
         containsString("Amazing Cats (amazing_cats_video_id) [#cat #animal]"));
   }
+
+  @Test
+  public void testFlagManyVideos(@TempDir Path tempDir) throws Exception {
+    Path takedowns = tempDir.resolve("takedowns.txt");
+    Files.writeString(takedowns, "amazing_cats_video_id dont like cats\n\n"
+        + "funny_dogs_video_id\nno_such_video_id spam\n");
+    videoPlayer.playVideo("funny_dogs_video_id");
+    videoPlayer.flagVideos(takedowns.toString());
+    assertEquals(3, getOutputLines().length);
+    assertThat(outputStream.toString(), containsString("Stopping video: Funny Dogs"));
+    assertThat(outputStream.toString(),
+        containsString("Flagged 2 of 3 videos (0 already flagged, 1 not found)"));
+    videoPlayer.showAllVideos();
+    assertThat(outputStream.toString(), containsString(
+        "Amazing Cats (amazing_cats_video_id) [#cat #animal] - FLAGGED (reason: dont like cats)"));
+    assertThat(outputStream.toString(), containsString(
+        "Funny Dogs (funny_dogs_video_id) [#dog #animal] - FLAGGED (reason: Not supplied)"));
+
+    Path allowed = tempDir.resolve("allowed.txt");
+    Files.writeString(allowed, "amazing_cats_video_id\nlife_at_google_video_id\n");
+    videoPlayer.allowVideos(allowed.toString());
+    assertThat(outputStream.toString(),
+        containsString("Removed flag from 1 of 2 videos (1 not flagged, 0 not found)"));
+  }
+
+  @Test
+  public void testFlagManyVideosMissingFile(@TempDir Path tempDir) {
+    videoPlayer.flagVideos(tempDir.resolve("missing.txt").toString());
+    assertThat(outputStream.toString(), containsString("Cannot flag videos: Couldn't read"));
+  }
+
+  @Test
+  public void testAllowManyVideosInvalidPath() {
+    // No file system allows a NUL in a file name.
+    videoPlayer.allowVideos("allowed\u0000.txt");
+    assertThat(outputStream.toString(),
+        containsString("Cannot remove flags from videos: Couldn't read"));
+  }
 }
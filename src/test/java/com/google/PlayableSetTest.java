@@ -0,0 +1,76 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class PlayableSetTest {
+
+  private final Video[] videos = {
+      new Video("a", "a_id", List.of()),
+      new Video("b", "b_id", List.of()),
+      new Video("c", "c_id", List.of()),
+  };
+
+  @Test
+  public void testFlaggedVideosAreNotPlayable() {
+    videos[1].flag("Not supplied");
+    var set = new PlayableSet(List.of(videos));
+
+    assertEquals(2, set.size());
+    assertFalse(set.contains(1));
+    for (int i = 0; i < 100; i++) {
+      assertFalse(set.random() == videos[1]);
+    }
+  }
+
+  @Test
+  public void testFlaggedOrdinalsAreNotPlayable() {
+    var set = new PlayableSet(List.of(videos), new int[] {0, 2});
+
+    assertEquals(1, set.size());
+    assertTrue(set.contains(1));
+    assertFalse(set.contains(2));
+    assertSame(videos[1], set.random());
+    set.add(0);
+    assertEquals(2, set.size());
+    assertTrue(set.contains(0));
+  }
+
+  @Test
+  public void testRemoveAndAdd() {
+    var set = new PlayableSet(List.of(videos));
+    set.remove(0);
+    set.remove(0);
+    set.remove(2);
+
+    assertEquals(1, set.size());
+    assertSame(videos[1], set.random());
+
+    set.add(2);
+    set.add(2);
+    set.remove(1);
+    assertEquals(1, set.size());
+    assertSame(videos[2], set.random());
+
+    set.remove(2);
+    assertNull(set.random());
+  }
+
+  @Test
+  public void testRandomReachesEveryVideo() {
+    var set = new PlayableSet(List.of(videos));
+    Set<Video> seen = new HashSet<>();
+    for (int i = 0; i < 1000 && seen.size() < videos.length; i++) {
+      seen.add(set.random());
+    }
+    assertTrue(seen.containsAll(List.of(videos)));
+  }
+}
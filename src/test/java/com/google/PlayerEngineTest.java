@@ -0,0 +1,183 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PlayerEngineTest {
+
+  private static final int THREADS = 8;
+  private static final int VIDEOS_PER_THREAD = 500;
+
+  @TempDir
+  Path tempDir;
+
+  private PlayerEngine engine;
+  private ExecutorService executor;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    var catalog = new StringBuilder();
+    for (int i = 0; i < THREADS * VIDEOS_PER_THREAD; i++) {
+      catalog.append("Video ").append(i).append(" | ").append(id(i)).append(" | #tag\n");
+    }
+    Path path = tempDir.resolve("videos.txt");
+    Files.writeString(path, catalog);
+    engine = new PlayerEngine(new VideoLibrary(path));
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    executor.shutdownNow();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testConcurrentPlaylistEditsAreNotLost() throws Exception {
+    engine.openSession(discard()).createPlaylist("shared");
+
+    runConcurrently(thread -> {
+      VideoPlayer player = engine.openSession(discard());
+      player.createPlaylist("Thread_" + thread);
+      for (int i = 0; i < VIDEOS_PER_THREAD; i++) {
+        String videoId = id(thread * VIDEOS_PER_THREAD + i);
+        player.addVideoToPlaylist("SHARED", videoId);
+        player.addVideoToPlaylist("thread_" + thread, videoId);
+        // Every other video is removed again from the shared playlist.
+        if (i % 2 == 1) {
+          player.removeFromPlaylist("shared", videoId);
+        }
+      }
+    });
+
+    PlaylistStore playlists = engine.getPlaylists();
+    assertEquals(THREADS * VIDEOS_PER_THREAD / 2, playlists.get("shared").size());
+    assertEquals(THREADS + 1, playlists.getNames().size());
+    for (int thread = 0; thread < THREADS; thread++) {
+      assertEquals(VIDEOS_PER_THREAD, playlists.get("thread_" + thread).size());
+    }
+  }
+
+  @Test
+  public void testConcurrentCreateOnlyOneWins() throws Exception {
+    AtomicInteger created = new AtomicInteger();
+    runConcurrently(thread -> {
+      for (int i = 0; i < 100; i++) {
+        if (engine.getPlaylists().create("Playlist_" + i) != null) {
+          created.incrementAndGet();
+        }
+      }
+    });
+    assertEquals(100, created.get());
+  }
+
+  @Test
+  public void testConcurrentFlagsAndRandomPlay() throws Exception {
+    VideoLibrary library = engine.getVideoLibrary();
+    AtomicInteger flagged = new AtomicInteger();
+
+    runConcurrently(thread -> {
+      VideoPlayer player = engine.openSession(discard());
+      for (int i = 0; i < THREADS * VIDEOS_PER_THREAD; i++) {
+        // All threads race to flag every video, only one may succeed per video.
+        if (library.flagVideo(library.getVideo(id(i)), "thread " + thread)) {
+          flagged.incrementAndGet();
+        }
+        player.playRandomVideo();
+      }
+    });
+
+    assertEquals(THREADS * VIDEOS_PER_THREAD, flagged.get());
+    assertEquals(null, library.getRandomPlayableVideo());
+
+    runConcurrently(thread -> {
+      for (int i = thread; i < THREADS * VIDEOS_PER_THREAD; i += THREADS) {
+        assertTrue(library.allowVideo(library.getVideo(id(i))));
+        assertFalse(library.allowVideo(library.getVideo(id(i))));
+      }
+    });
+    var seen = new HashSet<Video>();
+    for (int i = 0; i < 100; i++) {
+      Video video = library.getRandomPlayableVideo();
+      assertNotNull(video);
+      assertFalse(video.getIsFlagged());
+      seen.add(video);
+    }
+    assertTrue(seen.size() > 1);
+  }
+
+  @Test
+  public void testSessionsKeepTheirOwnPlayback() throws Exception {
+    List<VideoPlayer> players = new ArrayList<>();
+    List<StringWriter> outputs = new ArrayList<>();
+    for (int thread = 0; thread < THREADS; thread++) {
+      outputs.add(new StringWriter());
+      players.add(engine.openSession(new BufferedOutput(outputs.get(thread))));
+    }
+
+    runConcurrently(thread -> {
+      VideoPlayer player = players.get(thread);
+      for (int i = 0; i < VIDEOS_PER_THREAD; i++) {
+        player.playVideo(id(thread * VIDEOS_PER_THREAD + i));
+        player.pauseVideo();
+      }
+    });
+
+    for (int thread = 0; thread < THREADS; thread++) {
+      outputs.get(thread).getBuffer().setLength(0);
+      players.get(thread).showPlaying();
+      int last = (thread + 1) * VIDEOS_PER_THREAD - 1;
+      assertEquals("Currently playing: Video " + last + " (" + id(last) + ") [#tag] - PAUSED"
+          + System.lineSeparator(), outputs.get(thread).toString());
+    }
+  }
+
+  private interface ThreadBody {
+    void run(int thread) throws Exception;
+  }
+
+  private void runConcurrently(ThreadBody body) throws Exception {
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int thread = 0; thread < THREADS; thread++) {
+      final int index = thread;
+      futures.add(executor.submit(() -> {
+        start.await();
+        body.run(index);
+        return null;
+      }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get(60, TimeUnit.SECONDS);
+    }
+  }
+
+  private static Output discard() {
+    return new BufferedOutput(Writer.nullWriter());
+  }
+
+  private static String id(int i) {
+    return "video_" + i + "_id";
+  }
+}
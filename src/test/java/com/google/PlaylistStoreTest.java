@@ -0,0 +1,203 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PlaylistStoreTest {
+
+  @TempDir
+  Path tempDir;
+
+  private VideoLibrary library;
+  private Path directory;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    var catalog = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      catalog.append("Video ").append(i).append(" | v").append(i).append(" | #tag\n");
+    }
+    Path path = tempDir.resolve("videos.txt");
+    Files.writeString(path, catalog);
+    library = new VideoLibrary(path);
+    directory = tempDir.resolve("playlists");
+  }
+
+  @Test
+  public void testChangesAreRecovered() throws Exception {
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      VideoPlaylist favourites = store.create("Favourites");
+      store.add(favourites, library.getVideo("v1"));
+      store.add(favourites, library.getVideo("v2"));
+      store.add(favourites, library.getVideo("v3"));
+      store.remove(favourites, "v2");
+      VideoPlaylist later = store.create("later");
+      store.add(later, library.getVideo("v4"));
+      store.clear(later);
+      store.add(later, library.getVideo("v5"));
+      store.create("gone");
+      store.delete("GONE");
+    }
+
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of("Favourites", "later"), store.getNames());
+      assertEquals(List.of("v1", "v3"), ids(store.get("favourites")));
+      assertEquals(List.of("v5"), ids(store.get("LATER")));
+      assertNull(store.get("gone"));
+    }
+  }
+
+  @Test
+  public void testTornRecordIsDropped() throws Exception {
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      VideoPlaylist playlist = store.create("list");
+      store.add(playlist, library.getVideo("v1"));
+      store.add(playlist, library.getVideo("v2"));
+    }
+    // Cut the last record in half, as a crash in the middle of a write would.
+    Path segment = directory.resolve("playlists.1.log");
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of("v1"), ids(store.get("list")));
+      store.add(store.get("list"), library.getVideo("v7"));
+    }
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of("v1", "v7"), ids(store.get("list")));
+    }
+  }
+
+  @Test
+  public void testTornRecordBeforeTheLastSegmentIsCorruption() throws Exception {
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      VideoPlaylist playlist = store.create("list");
+      store.add(playlist, library.getVideo("v1"));
+    }
+    // A later segment means the torn record was not the last write before a crash.
+    Path first = directory.resolve("playlists.1.log");
+    Files.copy(first, directory.resolve("playlists.2.log"));
+    try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+      channel.truncate(channel.size() - 3);
+    }
+
+    assertThrows(IOException.class, () -> PlaylistStore.open(directory, library));
+    assertTrue(Files.exists(directory.resolve("playlists.2.log")));
+  }
+
+  @Test
+  public void testLongNamesAreRecovered() throws Exception {
+    // Longer than the 64KB DataOutput.writeUTF can encode, and not only ASCII.
+    String name = "L\u00e9on ".repeat(20_000);
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      store.add(store.create(name), library.getVideo("v1"));
+    }
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of(name), store.getNames());
+      assertEquals(List.of("v1"), ids(store.get(name)));
+    }
+  }
+
+  @Test
+  public void testLastSegmentIsReused() throws Exception {
+    for (int run = 0; run < 3; run++) {
+      try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+        VideoPlaylist playlist = run == 0 ? store.create("list") : store.get("list");
+        store.add(playlist, library.getVideo("v" + run));
+      }
+    }
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of("v0", "v1", "v2"), ids(store.get("list")));
+    }
+    try (var files = Files.list(directory)) {
+      assertEquals(List.of(directory.resolve("playlists.1.log")), files.toList());
+    }
+  }
+
+  @Test
+  public void testRecoveredSegmentsAreCompacted() throws Exception {
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      store.add(store.create("list"), library.getVideo("v0"));
+    }
+    // As a crash right after starting the next segment would leave them.
+    Files.createFile(directory.resolve("playlists.2.log"));
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      store.add(store.get("list"), library.getVideo("v1"));
+    }
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      assertEquals(List.of("v0", "v1"), ids(store.get("list")));
+    }
+    assertNotNull(Files.readAllBytes(directory.resolve("playlists.snapshot")));
+    try (var files = Files.list(directory)) {
+      // The snapshot and the segment appended to since.
+      assertEquals(2, files.count());
+    }
+  }
+
+  @Test
+  public void testFailedWriteIsReported() throws Exception {
+    PlaylistStore store = PlaylistStore.open(directory, library);
+    store.create("saved");
+    assertNull(store.getFailure());
+    store.close();
+
+    // The playlists keep working in memory.
+    assertNotNull(store.create("unsaved"));
+    assertNotNull(store.getFailure());
+    assertEquals(List.of("saved", "unsaved"), store.getNames());
+  }
+
+  @Test
+  public void testConcurrentChangesAreAllRecovered() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        int thread = t;
+        futures.add(executor.submit(() -> {
+          VideoPlaylist playlist = store.create("list" + thread);
+          for (int i = 0; i < 25; i++) {
+            store.add(playlist, library.getVideo("v" + (thread * 25 + i)));
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    try (PlaylistStore store = PlaylistStore.open(directory, library)) {
+      for (int thread = 0; thread < 4; thread++) {
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+          expected.add("v" + (thread * 25 + i));
+        }
+        assertEquals(expected, ids(store.get("list" + thread)));
+      }
+    }
+  }
+
+  private static List<String> ids(VideoPlaylist playlist) {
+    return playlist.getVideoIds();
+  }
+}
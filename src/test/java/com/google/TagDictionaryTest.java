@@ -0,0 +1,58 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class TagDictionaryTest {
+
+  private final TagDictionary dictionary = new TagDictionary();
+
+  @Test
+  public void testTagsDifferingInCaseShareAKey() {
+    int upper = dictionary.idOf("#Animal");
+    int lower = dictionary.idOf("#animal");
+
+    assertNotEquals(upper, lower);
+    assertEquals(upper, dictionary.idOf("#Animal"));
+    assertEquals(lower, dictionary.key(upper));
+    assertEquals(lower, dictionary.key(lower));
+    assertEquals(lower, dictionary.keyOf(" #ANIMAL "));
+    assertEquals(-1, dictionary.keyOf("#unknown"));
+    assertEquals(-1, dictionary.lookup("#unknown"));
+  }
+
+  @Test
+  public void testDictionaryGrows() {
+    List<String> tags = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      tags.add("#tag" + i);
+    }
+
+    int[] ids = dictionary.idsOf(tags);
+
+    assertEquals(1000, dictionary.size());
+    assertEquals(tags, dictionary.asTags(ids));
+    assertEquals("#tag999", dictionary.tag(ids[999]));
+  }
+
+  @Test
+  public void testLoadedVideosShareTagStrings() throws Exception {
+    var loader = new CatalogLoader();
+    byte[] first = "Cats | cats_id | #cat, #animal".getBytes();
+    byte[] second = "Dogs | dogs_id | #dog,#animal ".getBytes();
+
+    Video cats = loader.parseVideo(first, 0, first.length);
+    Video dogs = loader.parseVideo(second, 0, second.length);
+
+    assertEquals(cats.getTagIds()[1], dogs.getTagIds()[1]);
+    assertSame(cats.getTags().get(1), dogs.getTags().get(1));
+    assertArrayEquals(TagDictionary.global().idsOf(List.of("#dog", "#animal")),
+        dogs.getTagIds());
+  }
+}
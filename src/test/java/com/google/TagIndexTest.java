@@ -0,0 +1,84 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class TagIndexTest {
+
+  private final TagIndex index = new TagIndex(List.of(
+      new Video("Funny Dogs", "dogs_id", List.of("#dog", "#animal")),
+      new Video("Amazing Cats", "cats_id", List.of("#cat", "#Animal", "#animal")),
+      new Video("Video about nothing", "nothing_id", List.of()),
+      new Video("Another Cat Video", "another_id", List.of("#cat"))
+  ));
+
+  @Test
+  public void testPostingsAreSortedAndDistinct() {
+    assertArrayEquals(new int[] {0, 1}, index.postings("#animal"));
+    assertArrayEquals(new int[] {1, 3}, index.postings("#cat"));
+  }
+
+  @Test
+  public void testSearchIgnoresCase() {
+    assertEquals(2, index.search(" #ANIMAL ").size());
+    assertEquals("dogs_id", index.search("#Dog").get(0).getVideoId());
+  }
+
+  @Test
+  public void testSymbolsTellTagsApart() {
+    TagIndex languages = new TagIndex(List.of(
+        new Video("C", "c_id", List.of("#c")),
+        new Video("C++", "cpp_id", List.of("#C++")),
+        new Video("C#", "csharp_id", List.of("#c#"))
+    ));
+
+    assertEquals("cpp_id", languages.search("#c++").get(0).getVideoId());
+    assertEquals("csharp_id", languages.search("#C#").get(0).getVideoId());
+    assertEquals(1, languages.search("#c").size());
+  }
+
+  @Test
+  public void testSearchUnknownTag() {
+    assertTrue(index.search("#blah").isEmpty());
+    assertTrue(index.search("ca").isEmpty());
+  }
+
+  @Test
+  public void testSearchNormalizesTags() {
+    assertEquals(2, index.search("cat").size());
+    assertEquals(2, index.search("##Cat").size());
+    assertEquals(2, index.search("#c\u00e1t").size());
+    assertArrayEquals(new int[] {1, 3}, query("cat AND NOT #D\u00d3G"));
+  }
+
+  @Test
+  public void testBooleanQueries() {
+    assertArrayEquals(new int[] {1}, query("#cat AND #animal"));
+    assertArrayEquals(new int[] {1}, query("#cat #ANIMAL"));
+    assertArrayEquals(new int[] {1, 3}, query("#cat"));
+    assertArrayEquals(new int[] {3}, query("#cat NOT #animal"));
+    assertArrayEquals(new int[] {0, 1, 3}, query("#dog OR #cat"));
+    assertArrayEquals(new int[] {2}, query("NOT (#dog or #cat)"));
+    assertArrayEquals(new int[] {0, 3}, query("#dog OR #cat AND NOT #animal"));
+    assertArrayEquals(new int[] {0}, query("(#dog OR #cat) AND NOT NOT #dog"));
+    assertArrayEquals(new int[] {}, query("#blah AND #cat"));
+  }
+
+  @Test
+  public void testInvalidQueries() {
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse(""));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("#cat AND"));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("OR #cat"));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("(#cat OR #dog"));
+    assertThrows(IllegalArgumentException.class, () -> TagQuery.parse("#cat)"));
+  }
+
+  private int[] query(String query) {
+    return TagQuery.parse(query).evaluate(index).toArray();
+  }
+}
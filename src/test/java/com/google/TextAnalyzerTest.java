@@ -0,0 +1,56 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class TextAnalyzerTest {
+
+  @Test
+  public void testKeysFoldCaseAndAccents() {
+    assertEquals("cafe creme", TextAnalyzer.key("Caf\u00e9 CR\u00c8ME"));
+    assertEquals("strasse", TextAnalyzer.key("Stra\u00dfe"));
+    assertEquals("office", TextAnalyzer.key("O\ufb03ce"));
+    assertEquals("istanbul", TextAnalyzer.key("\u0130stanbul"));
+  }
+
+  @Test
+  public void testKeysSeparateWordsBySingleSpaces() {
+    assertEquals("life at google", TextAnalyzer.key("  Life -- at_Google! "));
+    assertEquals("dont stop", TextAnalyzer.key("Don't stop"));
+    assertEquals("dont stop", TextAnalyzer.key("Don\u2019t stop"));
+    assertEquals("top 10 cats", TextAnalyzer.key("Top 10: cats"));
+    assertEquals("", TextAnalyzer.key("?!"));
+  }
+
+  @Test
+  public void testAppendKeyAddsToTheText() {
+    StringBuilder text = new StringBuilder("cats");
+    TextAnalyzer.appendKey(" Dogs ", text);
+    assertEquals("catsdogs", text.toString());
+  }
+
+  @Test
+  public void testTagsHaveOneHash() {
+    assertEquals("#cat", TextAnalyzer.tag(" #Cat "));
+    assertEquals("#cat", TextAnalyzer.tag("cat"));
+    assertEquals("#cat", TextAnalyzer.tag("##CAT"));
+    assertEquals("#ete", TextAnalyzer.tag("#\u00c9t\u00e9"));
+  }
+
+  @Test
+  public void testTagsKeepSymbols() {
+    assertEquals("#c++", TextAnalyzer.tag("#C++"));
+    assertEquals("#c#", TextAnalyzer.tag("#c#"));
+    assertEquals("#c", TextAnalyzer.tag("#C"));
+    assertEquals("#cafe-creme", TextAnalyzer.tag("#Caf\u00e9-Cr\u00e8me"));
+  }
+
+  @Test
+  public void testFoldKeepsOneChar() {
+    assertEquals('e', TextAnalyzer.fold('\u00c9'));
+    assertEquals('a', TextAnalyzer.fold('A'));
+    assertEquals('\u00df', TextAnalyzer.fold('\u00df'));
+    assertEquals('\u03c9', TextAnalyzer.fold('\u03a9'));
+  }
+}
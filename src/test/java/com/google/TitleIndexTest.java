@@ -0,0 +1,153 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class TitleIndexTest {
+
+  private final TitleIndex index = new TitleIndex(List.of(
+      new Video("Amazing Cats", "cats_id", List.of()),
+      new Video("Another Cat Video", "another_id", List.of()),
+      new Video("aaaa", "aaaa_id", List.of()),
+      new Video("Life at Google", "google_id", List.of())
+  ));
+
+  @Test
+  public void testSearchUsesTrigrams() {
+    assertEquals(List.of("cats_id", "another_id"), ids(index.search("CAT")));
+    assertEquals(List.of("another_id"), ids(index.search("cat vid")));
+    assertEquals(List.of("google_id"), ids(index.search("at goo")));
+  }
+
+  @Test
+  public void testSearchShortTerms() {
+    assertEquals(List.of("cats_id", "another_id", "google_id"), ids(index.search("at")));
+  }
+
+  @Test
+  public void testSearchWithoutWordsMatchesNothing() {
+    assertTrue(index.search("").isEmpty());
+    assertTrue(index.search("!!!").isEmpty());
+    assertTrue(index.search("-").isEmpty());
+    assertTrue(index.rank("!!!", null, 10, ordinal -> true).isEmpty());
+  }
+
+  @Test
+  public void testSearchIgnoresAccentsAndPunctuation() {
+    TitleIndex analyzed = new TitleIndex(List.of(
+        new Video("Caf\u00e9 M\u00fcller: Live!", "cafe_id", List.of()),
+        new Video("Don't  stop", "dont_id", List.of()),
+        new Video("STRASSE", "strasse_id", List.of())
+    ));
+
+    assertEquals(List.of("cafe_id"), ids(analyzed.search("CAFE MULLER")));
+    assertEquals(List.of("cafe_id"), ids(analyzed.search("m\u00fcller - live")));
+    assertEquals(List.of("dont_id"), ids(analyzed.search("dont stop")));
+    assertEquals(List.of("strasse_id"), ids(analyzed.search("Stra\u00dfe")));
+    assertEquals(List.of("cafe_id"), ids(analyzed.rank("caf\u00c9", null, 10, ordinal -> true)));
+    assertEquals(TitleIndex.score("cafe muller live", "Caf\u00e9 M\u00fcller: Live!"),
+        TitleIndex.score("Caf\u00e9 M\u00fcller: Live!", "cafe muller live"));
+  }
+
+  @Test
+  public void testSearchRepeatedTrigrams() {
+    assertEquals(List.of("aaaa_id"), ids(index.search("aaaa")));
+    assertTrue(index.search("aaaaa").isEmpty());
+  }
+
+  @Test
+  public void testSearchVerifiesCandidates() {
+    // Every trigram of "cat cats" is in "Amazing Cats", the term itself is not.
+    assertTrue(index.search("cats cat").isEmpty());
+    assertTrue(index.search("dog").isEmpty());
+  }
+
+  @Test
+  public void testRankPrefersWholeTitlesPrefixesAndWords() {
+    TitleIndex ranked = new TitleIndex(List.of(
+        new Video("Bobcat", "bobcat_id", List.of()),
+        new Video("Cat", "cat_id", List.of()),
+        new Video("Cat Videos", "videos_id", List.of()),
+        new Video("Fat cat cat", "fat_id", List.of()),
+        new Video("My cat", "my_id", List.of()),
+        new Video("Old cat cow", "old_id", List.of())
+    ));
+
+    assertEquals(List.of("cat_id", "videos_id", "my_id", "fat_id", "old_id", "bobcat_id"),
+        ids(ranked.rank("CAT", null, 10, ordinal -> true)));
+    assertEquals(List.of("cat_id", "videos_id", "my_id"),
+        ids(ranked.rank("cat", null, 3, ordinal -> ordinal != 3)));
+    assertTrue(ranked.rank("dog", null, 3, ordinal -> true).isEmpty());
+  }
+
+  @Test
+  public void testRankContinuesAfterCursor() {
+    List<Video> first = index.rank("a", null, 2, ordinal -> true);
+    PageCursor cursor = PageCursor.decode(PageCursor.after(first.get(1), "a").encode());
+    List<Video> second = index.rank("a", cursor, 10, ordinal -> true);
+
+    assertEquals(List.of("aaaa_id", "cats_id"), ids(first));
+    assertEquals(List.of("another_id", "google_id"), ids(second));
+  }
+
+  @Test
+  public void testMatchesDoNotSpanTitles() {
+    TitleIndex packed = new TitleIndex(List.of(
+        new Video("", "empty_id", List.of()),
+        new Video("xa", "xa_id", List.of()),
+        new Video("", "empty2_id", List.of()),
+        new Video("ab", "ab_id", List.of()),
+        new Video("bc cab", "bc_id", List.of())
+    ));
+
+    // "xa" followed by "ab" reads "xaab" in the packed keys.
+    assertEquals(List.of("ab_id", "bc_id"), ids(packed.search("ab")));
+    assertTrue(packed.search("aa").isEmpty());
+    assertTrue(packed.search("abbc").isEmpty());
+    assertEquals(List.of("bc_id"), ids(packed.search("cab")));
+    assertEquals(List.of("ab_id", "bc_id"), ids(packed.rank("ab", null, 10, ordinal -> true)));
+  }
+
+  @Test
+  public void testMappedKeysMatchLikeStrings() throws Exception {
+    Random random = new Random(7);
+    List<Video> videos = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      StringBuilder title = new StringBuilder();
+      for (int length = random.nextInt(12); length > 0; length--) {
+        title.append("aAb c".charAt(random.nextInt(5)));
+      }
+      videos.add(new Video(title.toString(), "id" + i, List.of()));
+    }
+    TitleIndex packed = new TitleIndex(videos);
+    // Keys outside a string and written postings, like the ones mapped from a compiled catalog.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    packed.writeTo(new DataOutputStream(bytes));
+    assertEquals(packed.byteSize(), bytes.size());
+    TitleIndex mapped = new TitleIndex(videos, CharBuffer.wrap(packed.getKeyText()),
+        packed.getKeyStarts(), ByteBuffer.wrap(bytes.toByteArray()));
+    for (String term : List.of("a", "ab", "ba", "a b", "aab", "b c a", "cc", "abab")) {
+      List<String> expected = videos.stream()
+          .filter(video -> TextAnalyzer.key(video.getTitle()).contains(TextAnalyzer.key(term)))
+          .map(Video::getVideoId).collect(Collectors.toList());
+      assertEquals(expected, ids(packed.search(term)), term);
+      assertEquals(expected, ids(mapped.search(term)), term);
+      assertEquals(ids(packed.rank(term, null, 20, ordinal -> true)),
+          ids(mapped.rank(term, null, 20, ordinal -> true)), term);
+    }
+  }
+
+  private static List<String> ids(List<Video> videos) {
+    return videos.stream().map(Video::getVideoId).collect(Collectors.toList());
+  }
+}
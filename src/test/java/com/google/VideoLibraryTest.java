@@ -1,13 +1,25 @@
 package com.google;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 public class VideoLibraryTest {
 
@@ -42,4 +54,177 @@ public class VideoLibraryTest {
     assertEquals("nothing_video_id", video.getVideoId());
     assertTrue(video.getTags().isEmpty());
   }
+
+  @Test
+  public void testLibraryLoadsFromFilesystemPath(@TempDir Path tempDir) throws Exception {
+    Path catalog = tempDir.resolve("catalog.txt");
+    Files.writeString(catalog, "First | dup_id | #a\nSecond | dup_id | #b\nOther | other_id\n");
+
+    var library = new VideoLibrary(catalog);
+
+    assertEquals(2, library.getVideos().size());
+    assertEquals("Second", library.getVideo("dup_id").getTitle());
+    assertEquals(3, library.getLoadStats().getLineCount());
+  }
+
+  @Test
+  public void testVideosAreKeptInTitleOrder() {
+    videoLibrary.addVideo(new Video("Cat Parade", "parade_id", List.of("#cat")));
+    videoLibrary.removeVideo("life_at_google_video_id");
+    videoLibrary.addVideo(new Video("Zebra Crossing", "funny_dogs_video_id", List.of()));
+
+    assertEquals(List.of("Amazing Cats", "Another Cat Video", "Cat Parade",
+        "Video about nothing", "Zebra Crossing"), titles(videoLibrary.getVideos()));
+    assertEquals(List.of("Amazing Cats", "Another Cat Video", "Cat Parade"),
+        titles(videoLibrary.findByTitle("cat")));
+    assertEquals(List.of("Amazing Cats", "Another Cat Video", "Cat Parade"),
+        titles(videoLibrary.findByTag("#cat")));
+    assertTrue(videoLibrary.findByTag("#dog").isEmpty());
+  }
+
+  @Test
+  public void testSnapshotsAreNotChangedByEdits() {
+    CatalogSnapshot before = videoLibrary.getSnapshot();
+    List<Video> view = videoLibrary.getVideos();
+
+    videoLibrary.addVideo(new Video("Cat Parade", "parade_id", List.of("#cat")));
+    videoLibrary.removeVideo("amazing_cats_video_id");
+
+    assertEquals(5, view.size());
+    assertEquals(2, before.findByTitle("cat").size());
+    assertNotNull(before.getVideo("amazing_cats_video_id"));
+    assertNull(before.getVideo("parade_id"));
+    assertEquals(before.getVersion() + 2, videoLibrary.getSnapshot().getVersion());
+    assertEquals(List.of("Another Cat Video", "Cat Parade"),
+        titles(videoLibrary.findByTitle("cat")));
+    assertThrows(UnsupportedOperationException.class, () -> view.remove(0));
+  }
+
+  @Test
+  public void testManyEditsAreMergedInTheBackground() throws Exception {
+    List<Video> added = new ArrayList<>();
+    for (int i = 0; i <= CatalogSnapshot.MAX_CHANGES + 100; i++) {
+      Video video = new Video("Cat Parade " + i, "parade_" + i, List.of("#cat"));
+      videoLibrary.addVideo(video);
+      added.add(video);
+      if (i % 100 == 0) {
+        videoLibrary.flagVideo(video, "spam");
+      }
+    }
+    videoLibrary.removeVideo("parade_7");
+    videoLibrary.awaitMerge();
+
+    assertFalse(videoLibrary.getSnapshot().needsMerge());
+    assertEquals(5 + added.size() - 1, videoLibrary.getVideos().size());
+    assertEquals(2 + added.size() - 1, videoLibrary.findByTag("#cat").size());
+    assertSame(added.get(500), videoLibrary.getVideo("parade_500"));
+    assertNull(videoLibrary.getVideo("parade_7"));
+    assertEquals(5 + added.size() - 1 - 12, videoLibrary.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testFlagsFollowReplacedVideos() {
+    Video original = videoLibrary.getVideo("amazing_cats_video_id");
+    videoLibrary.addVideo(new Video("Amazing Cats", "amazing_cats_video_id", List.of()));
+
+    // The replaced video is no longer in the catalog, so it must not hide its successor.
+    assertTrue(videoLibrary.flagVideo(original, "stale"));
+    assertEquals(5, videoLibrary.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testReloadKeepsUnchangedVideosAndFlags(@TempDir Path tempDir) throws Exception {
+    Path catalog = tempDir.resolve("catalog.txt");
+    Files.writeString(catalog, "Cats | cats_id | #cat\nDogs | dogs_id | #dog\n");
+    var library = new VideoLibrary(catalog);
+    Video cats = library.getVideo("cats_id");
+    library.flagVideo(library.getVideo("dogs_id"), "dont_like_dogs");
+
+    assertFalse(library.reload());
+    Files.writeString(catalog, "Birds | birds_id | #bird\n", StandardOpenOption.APPEND);
+    assertTrue(library.reload());
+
+    assertSame(cats, library.getVideo("cats_id"));
+    assertEquals(List.of("Birds"), titles(library.findByTag("#bird")));
+    assertEquals(List.of("Birds"), titles(library.getSnapshot().findByTitle("bird")));
+
+    Files.writeString(catalog, "Cats | cats_id | #cat\nMore Dogs | dogs_id | #dog\n");
+    assertTrue(library.reload());
+
+    assertSame(cats, library.getVideo("cats_id"));
+    assertNull(library.getVideo("birds_id"));
+    assertEquals("More Dogs", library.getVideo("dogs_id").getTitle());
+    assertEquals("dont_like_dogs", library.getVideo("dogs_id").getFlagReason());
+    assertEquals(1, library.getSnapshot().countPlayable());
+  }
+
+  @Test
+  public void testPlaylistsFollowReloadedVideos(@TempDir Path tempDir) throws Exception {
+    Path catalog = tempDir.resolve("catalog.txt");
+    Files.writeString(catalog, "Cats | cats_id | #cat\nDogs | dogs_id | #dog\n");
+    var library = new VideoLibrary(catalog);
+    StringBuilder output = new StringBuilder();
+    var player = new VideoPlayer(library, new BufferedOutput(output));
+    player.createPlaylist("list");
+    player.addVideoToPlaylist("list", "dogs_id");
+    player.addVideoToPlaylist("list", "cats_id");
+
+    // An appended line replaces a video which is in the playlist.
+    Files.writeString(catalog, "More Dogs | dogs_id | #dog\n", StandardOpenOption.APPEND);
+    assertTrue(library.reload());
+    assertEquals(List.of("More Dogs"), titles(library.getSnapshot().findByTitle("more")));
+    player.showPlaylist("list");
+    player.removeFromPlaylist("list", "dogs_id");
+
+    String shown = output.toString();
+    assertTrue(shown.contains("More Dogs (dogs_id) [#dog]"), shown);
+    assertTrue(shown.contains("Removed video from list: More Dogs"), shown);
+  }
+
+  @Test
+  public void testWatcherReloadsChangedCatalog(@TempDir Path tempDir) throws Exception {
+    Path catalog = tempDir.resolve("catalog.txt");
+    Files.writeString(catalog, "Cats | cats_id | #cat\n");
+    var library = new VideoLibrary(catalog);
+
+    CatalogWatcher watcher = new CatalogWatcher(library);
+    try {
+      Files.writeString(catalog, "Dogs | dogs_id | #dog\n", StandardOpenOption.APPEND);
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (library.getVideo("dogs_id") == null && System.nanoTime() < deadline) {
+        Thread.sleep(50);
+      }
+    } finally {
+      watcher.close();
+    }
+
+    assertNotNull(library.getVideo("dogs_id"));
+  }
+
+  @Test
+  public void testFlagAndAllowManyVideos() {
+    ModerationSummary flagged = videoLibrary.flagVideos(Stream.of(
+        Map.entry("amazing_cats_video_id", "spam"),
+        Map.entry("funny_dogs_video_id", "old"),
+        Map.entry("amazing_cats_video_id", "again"),
+        Map.entry("no_such_video_id", "spam")));
+    assertEquals(4, flagged.getRequested());
+    assertEquals(2, flagged.getChanged());
+    assertEquals(1, flagged.getUnchanged());
+    assertEquals(1, flagged.getMissing());
+    assertEquals("spam", videoLibrary.getVideo("amazing_cats_video_id").getFlagReason());
+    assertEquals(3, videoLibrary.getSnapshot().countPlayable());
+
+    ModerationSummary allowed = videoLibrary.allowVideos(
+        Stream.of("amazing_cats_video_id", "another_cat_video_id", "no_such_video_id"));
+    assertEquals(1, allowed.getChanged());
+    assertEquals(1, allowed.getUnchanged());
+    assertEquals(1, allowed.getMissing());
+    assertFalse(videoLibrary.getVideo("amazing_cats_video_id").getIsFlagged());
+    assertEquals(4, videoLibrary.getSnapshot().countPlayable());
+  }
+
+  private static List<String> titles(List<Video> videos) {
+    return videos.stream().map(Video::getTitle).collect(Collectors.toList());
+  }
 }
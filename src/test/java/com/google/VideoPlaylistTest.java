@@ -0,0 +1,39 @@
+package com.google;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class VideoPlaylistTest {
+
+  @Test
+  public void testKeepsInsertionOrder() {
+    var playlist = new VideoPlaylist("My_Playlist");
+    assertTrue(playlist.add("google_id"));
+    assertTrue(playlist.add("cats_id"));
+    assertFalse(playlist.add("google_id"));
+    assertTrue(playlist.add("dogs_id"));
+
+    assertEquals("My_Playlist", playlist.getName());
+    assertEquals(List.of("google_id", "cats_id", "dogs_id"), playlist.getVideoIds());
+  }
+
+  @Test
+  public void testRemoveAndReAdd() {
+    var playlist = new VideoPlaylist("list");
+    playlist.add("cats_id");
+    playlist.add("dogs_id");
+
+    assertTrue(playlist.remove("cats_id"));
+    assertFalse(playlist.remove("cats_id"));
+    assertFalse(playlist.contains("cats_id"));
+    playlist.add("cats_id");
+
+    assertEquals(List.of("dogs_id", "cats_id"), playlist.getVideoIds());
+    playlist.clear();
+    assertEquals(0, playlist.size());
+  }
+}